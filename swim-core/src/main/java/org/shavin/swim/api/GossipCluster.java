@@ -2,8 +2,10 @@ package org.shavin.swim.api;
 
 import org.shavin.swim.api.event.ClusterEventListener;
 import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.api.member.MembershipSnapshot;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a Gossip Cluster that implements the Gossip protocol for
@@ -34,10 +36,36 @@ public interface GossipCluster {
 
     /**
      * Get the list of members in the cluster.
+     * The list is a live view, its members and their statuses may change while it is iterated.
+     * Use {@link #getMembershipSnapshot()} for a consistent view of the membership.
      * @return List of members.
      */
     List<MemberNode> getMembers();
 
+    /**
+     * Get an immutable snapshot of the current membership. The snapshot is shared by all the callers until the
+     * membership changes, so this is cheap to call for every request.
+     * @return the snapshot of the current membership epoch.
+     */
+    MembershipSnapshot getMembershipSnapshot();
+
+    /**
+     * Wait until the membership changes after the given epoch.
+     * @param sinceEpoch epoch of the last snapshot seen by the caller.
+     * @param timeout maximum time to wait.
+     * @param unit unit of the timeout.
+     * @return the snapshot of a newer epoch, or the current snapshot if the timeout elapsed without a change.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    MembershipSnapshot awaitMembershipChange(long sinceEpoch, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Get the Lifeguard local health multiplier of this node, a measure of how slow this node itself currently is.
+     * The probe interval and the probe timeouts are scaled by the multiplier plus one.
+     * @return zero for a healthy node, up to the configured limit for a node missing many acks.
+     */
+    int getLocalHealthMultiplier();
+
     /**
      * Add a listener to receive cluster events.
      * @param listener Listener to add.
@@ -45,13 +73,20 @@ public interface GossipCluster {
     void addListener(ClusterEventListener listener);
 
     /**
-     * Sends data to the cluster.
+     * Sends data to the cluster. Data larger than a fragment is split into fragments, and the listeners of the other
+     * nodes receive the whole data once all its fragments arrived.
      *
      * @param data the data to be sent; must be a non-null byte array containing the information
-     *             to be transmitted to the cluster.
+     *             to be transmitted to the cluster, no larger than the max data size of the cluster.
+     * @throws IllegalArgumentException if the data is larger than the max data size
      */
     void sendData(byte[] data);
 
+    /**
+     * @return the key-value map replicated to every node of the cluster
+     */
+    ReplicatedMap replicatedMap();
+
     /** * Simulation Only: Force this node to stop responding to simulate a crash.
      * In a real app, you would just kill the process.
      */
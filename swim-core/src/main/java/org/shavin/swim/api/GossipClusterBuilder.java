@@ -1,13 +1,17 @@
 package org.shavin.swim.api;
 
+import org.shavin.swim.impl.CustomDataManager;
 import org.shavin.swim.impl.StandardGossipClusterImpl;
 import org.shavin.swim.member.MemberSelection;
+import org.shavin.swim.member.MembershipTable;
+import org.shavin.swim.member.OffHeapMemberStore;
 import org.shavin.swim.transport.NettyUdpTransportLayer;
 import org.shavin.swim.api.transport.TransportLayer;
 import org.shavin.swim.transport.UDPTransportConfig;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
@@ -26,10 +30,13 @@ public class GossipClusterBuilder {
     private final static int DEFAULT_PING_INTERVAL_MS = 1000;
     private final static int DEFAULT_TIMEOUT_MS = 1000;
     private final static int DEFAULT_INDIRECT_PING_REQUEST_TIMEOUT_MS = 2500;
+    public final static int DEFAULT_INDIRECT_PROBE_COUNT = 3;
+    public final static int DEFAULT_LOCAL_HEALTH_MULTIPLIER_LIMIT = 8;
 
     public static enum NextMemberSelectionStrategy {
         RANDOM_MEMBER_SELECTION_STRATEGY,
-        ROUND_ROBIN_SELECTION_STRATEGY;
+        ROUND_ROBIN_SELECTION_STRATEGY,
+        RANDOMIZED_ROUND_ROBIN_SELECTION_STRATEGY;
     }
 
     private int nodeId = -1;
@@ -37,11 +44,21 @@ public class GossipClusterBuilder {
     private int pingIntervalInMs;
     private int pingTimeoutInMs;
     private int indirectPingRequestTimeoutInMs;
+    private int indirectProbeCount;
+    private int localHealthMultiplierLimit = DEFAULT_LOCAL_HEALTH_MULTIPLIER_LIMIT;
+    private int maxDataSizeInBytes;
     private  List<String> seedNodes = new ArrayList<>();
     private ThreadFactory threadFactory;
     private TransportLayer transportLayer;
     private MemberSelection memberSelection;
-    private NextMemberSelectionStrategy nextMemberSelectionStrategy = NextMemberSelectionStrategy.ROUND_ROBIN_SELECTION_STRATEGY;
+    private NextMemberSelectionStrategy nextMemberSelectionStrategy = NextMemberSelectionStrategy.RANDOMIZED_ROUND_ROBIN_SELECTION_STRATEGY;
+    private UDPTransportConfig.DispatchMode dispatchMode;
+    private Executor dispatchExecutor;
+    private int maxConcurrentDispatches;
+    private double sourceRateLimit;
+    private int sourceRateLimitBurst;
+    private int offHeapMemberCapacity;
+    private GossipClusterHost host;
 
     /**
      * Sets the unique identifier for this node.
@@ -116,6 +133,89 @@ public class GossipClusterBuilder {
         return this;
     }
 
+    /**
+     * Handles every received message of the default UDP transport on its own virtual thread (Java 21 or later),
+     * so that listeners blocking on membership events do not hold up the processing of the other messages.
+     * On older runtimes a cached pool of platform threads is used instead.
+     *
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withVirtualThreadDispatch() {
+        this.dispatchMode = UDPTransportConfig.DispatchMode.VIRTUAL_THREAD;
+        return this;
+    }
+
+    /**
+     * Sets the executor on which the default UDP transport handles the received messages. The executor is
+     * owned by the caller and is not shut down with the cluster.
+     *
+     * @param dispatchExecutor the executor to handle the received messages on
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withDispatchExecutor(Executor dispatchExecutor) {
+        this.dispatchExecutor = dispatchExecutor;
+        this.dispatchMode = UDPTransportConfig.DispatchMode.EXECUTOR;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of messages handled at the same time when the messages are dispatched to virtual
+     * threads or to a caller supplied executor. Messages received beyond that limit are dropped and counted
+     * as rejected by the transport layer. The limit only applies together with {@link #withVirtualThreadDispatch()}
+     * or {@link #withDispatchExecutor(Executor)}, the worker pool and the event loops have no such limit, so
+     * {@link #build()} rejects it otherwise.
+     *
+     * @param maxConcurrentDispatches the concurrency limit, must be a positive integer
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withMaxConcurrentDispatches(int maxConcurrentDispatches) {
+        this.maxConcurrentDispatches = maxConcurrentDispatches;
+        return this;
+    }
+
+    /**
+     * Limits the packets the default UDP transport accepts from every source address, which protects the probe
+     * path of seed nodes when many nodes restart and ping them at the same time. Packets over the limit are
+     * dropped before they are deserialized.
+     *
+     * @param packetsPerSecond the sustained packet rate accepted per source, must be a positive number
+     * @param burst the number of packets a source may send in a burst, must be a positive integer
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withSourceRateLimit(double packetsPerSecond, int burst) {
+        this.sourceRateLimit = packetsPerSecond;
+        this.sourceRateLimitBurst = burst;
+        return this;
+    }
+
+    /**
+     * Keeps the state of the members off-heap instead of a member node object per member, which reduces the heap
+     * footprint and the GC work of very large clusters. The member nodes handed to the listeners and returned by
+     * {@link GossipCluster#getMembers()} are views of the off-heap state, created on demand, so they are equal but not
+     * necessarily the same instance for the same member. The view of a removed member reports the LEAVED status, and
+     * has no address unless it was read before the removal.
+     *
+     * @param expectedMembers the number of members the store is sized for initially, it grows on demand
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withOffHeapMemberStore(int expectedMembers) {
+        this.offHeapMemberCapacity = expectedMembers;
+        return this;
+    }
+
+    /**
+     * Runs the node on the shared event loops, timers and buffers of a host, together with the other nodes of the
+     * host, instead of threads of its own. The received messages of the default UDP transport are handled on the event
+     * loops of the host unless another dispatch mode is set, and the node binds a single socket.
+     *
+     * @param host the host of the node, which must be shut down after the node
+     * @return the updated GossipClusterBuilder instance to allow for method chaining
+     */
+    public GossipClusterBuilder withHost(GossipClusterHost host) {
+        this.host = host;
+        return this;
+    }
+
     /**
      * Sets the member selection strategy for determining the next member to ping in the cluster.
      *
@@ -167,6 +267,45 @@ public class GossipClusterBuilder {
         return this;
     }
 
+    /**
+     * Sets the number of members asked to probe a suspected member indirectly, the k of the SWIM paper. The members
+     * are picked at random from the healthy members. Defaults to 3.
+     *
+     * @param indirectProbeCount the number of members sent a PING REQUEST for a suspected member. Must be a positive integer.
+     * @return the updated GossipClusterBuilder instance to allow chaining of additional configuration methods.
+     */
+    public GossipClusterBuilder withIndirectProbeCount(int indirectProbeCount) {
+        this.indirectProbeCount = indirectProbeCount;
+        return this;
+    }
+
+    /**
+     * Sets the limit of the Lifeguard local health multiplier. The multiplier rises when this node misses acks or
+     * learns that it was declared failed, falls with every successful probe, and scales the probe interval and the
+     * probe timeouts by up to {@code limit + 1}, so that a node slowed down by CPU starvation or GC pauses does not
+     * declare healthy members failed. Defaults to 8, zero disables the adaptation.
+     *
+     * @param localHealthMultiplierLimit the highest value of the local health multiplier. Must not be negative.
+     * @return the updated GossipClusterBuilder instance to allow chaining of additional configuration methods.
+     */
+    public GossipClusterBuilder withLocalHealthMultiplierLimit(int localHealthMultiplierLimit) {
+        this.localHealthMultiplierLimit = localHealthMultiplierLimit;
+        return this;
+    }
+
+    /**
+     * Sets the largest custom data which can be sent with {@link GossipCluster#sendData(byte[])}. Data larger than a
+     * fragment of 1 KB is split into fragments, which are disseminated independently and reassembled by the receivers,
+     * so every node of the cluster should use the same limit. Defaults to 64 KB.
+     *
+     * @param maxDataSizeInBytes the largest custom data in bytes. Must be a positive integer up to about 64 MB.
+     * @return the updated GossipClusterBuilder instance to allow chaining of additional configuration methods.
+     */
+    public GossipClusterBuilder withMaxDataSizeInBytes(int maxDataSizeInBytes) {
+        this.maxDataSizeInBytes = maxDataSizeInBytes;
+        return this;
+    }
+
     /**
      * Builds and returns an instance of {@code GossipCluster} with the specified configuration.
      * This method validates the configuration parameters, including that a valid node ID
@@ -176,7 +315,8 @@ public class GossipClusterBuilder {
      * @return a fully constructed {@code GossipCluster} instance with the configured
      *         properties such as node ID, port, seed nodes, transport layer, thread factory,
      *         and member selection strategy.
-     * @throws IllegalArgumentException if the node ID is not specified.
+     * @throws IllegalArgumentException if the node ID is not specified, if transport options are combined with a custom transport layer,
+     *         or if the concurrency limit is set without the virtual thread or executor dispatch.
      */
     public GossipCluster build() {
         if (nodeId == -1) {
@@ -187,8 +327,18 @@ public class GossipClusterBuilder {
             threadFactory = Executors.defaultThreadFactory();
         }
 
-        if (transportLayer == null) {
-            this.transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        if (maxConcurrentDispatches != 0 && dispatchMode != UDPTransportConfig.DispatchMode.VIRTUAL_THREAD
+                && dispatchMode != UDPTransportConfig.DispatchMode.EXECUTOR) {
+            // the limit would be silently ignored by the worker pool and the event loop dispatch
+            throw new IllegalArgumentException("Max concurrent dispatches only applies to the virtual thread and executor dispatch.");
+        }
+
+        if (transportLayer == null && host != null) {
+            this.transportLayer = new NettyUdpTransportLayer(buildTransportConfig(), host.eventLoopGroup(), host.allocator());
+        } else if (transportLayer == null) {
+            this.transportLayer = new NettyUdpTransportLayer(buildTransportConfig());
+        } else if (dispatchMode != null || maxConcurrentDispatches != 0 || sourceRateLimit != 0) {
+            throw new IllegalArgumentException("Dispatch and rate limit options only apply to the default transport layer.");
         }
 
         if (pingIntervalInMs == 0) {
@@ -203,6 +353,22 @@ public class GossipClusterBuilder {
             this.indirectPingRequestTimeoutInMs = DEFAULT_INDIRECT_PING_REQUEST_TIMEOUT_MS;
         }
 
+        if (indirectProbeCount < 0) {
+            throw new IllegalArgumentException("Indirect probe count must not be negative.");
+        } else if (indirectProbeCount == 0) {
+            this.indirectProbeCount = DEFAULT_INDIRECT_PROBE_COUNT;
+        }
+
+        if (localHealthMultiplierLimit < 0) {
+            throw new IllegalArgumentException("Local health multiplier limit must not be negative.");
+        }
+
+        if (maxDataSizeInBytes < 0 || maxDataSizeInBytes > CustomDataManager.MAX_DATA_SIZE_IN_BYTES) {
+            throw new IllegalArgumentException("Max data size must be a positive integer up to " + CustomDataManager.MAX_DATA_SIZE_IN_BYTES + " bytes.");
+        } else if (maxDataSizeInBytes == 0) {
+            this.maxDataSizeInBytes = CustomDataManager.DEFAULT_MAX_DATA_SIZE_IN_BYTES;
+        }
+
         // convert the seed nodes list to an array for easier use in the cluster implementation
         String[] seedNodesArray;
         if (seedNodes.isEmpty()) {
@@ -210,9 +376,39 @@ public class GossipClusterBuilder {
         } else {
             seedNodesArray = seedNodes.toArray(new String[0]);
         }
+        if (offHeapMemberCapacity < 0) {
+            throw new IllegalArgumentException("Expected number of members must not be negative.");
+        }
+        MembershipTable membershipTable = offHeapMemberCapacity == 0
+                ? new MembershipTable(nodeId)
+                : new MembershipTable(nodeId, new OffHeapMemberStore(offHeapMemberCapacity));
+
+        if (host != null) {
+            return new StandardGossipClusterImpl(nodeId, port, seedNodesArray, transportLayer, threadFactory, nextMemberSelectionStrategy,
+                    membershipTable, pingIntervalInMs, pingTimeoutInMs, indirectPingRequestTimeoutInMs, indirectProbeCount,
+                    localHealthMultiplierLimit, maxDataSizeInBytes, host.timingWheel(), host.eventLoopGroup(), host.allocator());
+        }
         return new StandardGossipClusterImpl(nodeId, port, seedNodesArray, transportLayer, threadFactory, nextMemberSelectionStrategy,
-                pingIntervalInMs, pingTimeoutInMs, indirectPingRequestTimeoutInMs);
+                membershipTable, pingIntervalInMs, pingTimeoutInMs, indirectPingRequestTimeoutInMs, indirectProbeCount,
+                localHealthMultiplierLimit, maxDataSizeInBytes, null, null, null);
     }
 
-
+    private UDPTransportConfig buildTransportConfig() {
+        UDPTransportConfig.Builder builder = UDPTransportConfig.builder();
+        if (dispatchExecutor != null) {
+            builder.withDispatchExecutor(dispatchExecutor);
+        } else if (dispatchMode != null) {
+            builder.withDispatchMode(dispatchMode);
+        } else if (host != null) {
+            // a hosted node handles its messages on the event loops of the host, without a worker pool of its own
+            builder.withDispatchMode(UDPTransportConfig.DispatchMode.EVENT_LOOP);
+        }
+        if (maxConcurrentDispatches != 0) {
+            builder.withMaxConcurrentDispatches(maxConcurrentDispatches);
+        }
+        if (sourceRateLimit != 0) {
+            builder.withSourceRateLimit(sourceRateLimit, sourceRateLimitBurst);
+        }
+        return builder.build();
+    }
 }
@@ -0,0 +1,97 @@
+package org.shavin.swim.api;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.impl.StandardGossipClusterImpl;
+import org.shavin.swim.util.TimingWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host of many {@link GossipCluster} nodes in one JVM, e.g. one logical node per tenant or a test harness running
+ * hundreds of nodes in one process.
+ *
+ * The nodes built with {@link GossipClusterBuilder#withHost(GossipClusterHost)} share the event loop group of the
+ * host, on which their datagrams are received and handled and their protocol rounds run, one timing wheel for all
+ * their protocol timeouts, and one pool of buffers. A hosted node therefore owns no threads of its own, and the
+ * number of threads of the process does not grow with the number of nodes. The protocol state of the nodes, e.g.
+ * their members and their membership events, is never shared.
+ *
+ * The timing wheel is advanced on one event loop, which hands every expired timeout over to the event loop of its
+ * node, so the timeouts of a node run on the same thread as its packet handling and protocol rounds.
+ *
+ * The host must be shut down after the nodes it hosts.
+ * @author shavin
+ */
+public class GossipClusterHost {
+    private final static Logger log = LoggerFactory.getLogger(GossipClusterHost.class);
+
+    private final EventLoopGroup eventLoopGroup;
+    private final TimingWheel<MemberNode> timingWheel;
+    private final ByteBufAllocator allocator;
+    private final ScheduledFuture<?> timingWheelTask;
+
+    /**
+     * Create a host with one event loop thread per available processor.
+     */
+    public GossipClusterHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param eventLoopThreadsCount the number of event loop threads shared by the hosted nodes, must be positive
+     */
+    public GossipClusterHost(int eventLoopThreadsCount) {
+        if (eventLoopThreadsCount <= 0) {
+            throw new IllegalArgumentException("Event loop threads count must be a positive integer.");
+        }
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("gossip-host", true);
+        // the native transport when the platform supports it, as the default transport mode of a single node
+        this.eventLoopGroup = Epoll.isAvailable()
+                ? new EpollEventLoopGroup(eventLoopThreadsCount, threadFactory)
+                : new NioEventLoopGroup(eventLoopThreadsCount, threadFactory);
+        this.allocator = PooledByteBufAllocator.DEFAULT;
+        this.timingWheel = StandardGossipClusterImpl.newTimeoutWheel();
+        // a single task drives the timeouts of all the hosted nodes, each node handles its expired timeouts on its
+        // own event loop
+        this.timingWheelTask = eventLoopGroup.next().scheduleAtFixedRate(timingWheel::advance,
+                StandardGossipClusterImpl.TIMEOUT_TICK_MS, StandardGossipClusterImpl.TIMEOUT_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    EventLoopGroup eventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    TimingWheel<MemberNode> timingWheel() {
+        return timingWheel;
+    }
+
+    ByteBufAllocator allocator() {
+        return allocator;
+    }
+
+    /**
+     * @return the number of protocol timeouts of all the hosted nodes which are currently scheduled
+     */
+    public int scheduledTimeouts() {
+        return timingWheel.size();
+    }
+
+    /**
+     * Stop the shared event loops and timers. The hosted nodes must be shut down before.
+     */
+    public void shutdown() {
+        timingWheelTask.cancel(false);
+        eventLoopGroup.shutdownGracefully().awaitUninterruptibly();
+        log.info("Gossip cluster host stopped");
+    }
+}
@@ -0,0 +1,54 @@
+package org.shavin.swim.api;
+
+import org.shavin.swim.api.event.ReplicatedMapListener;
+
+import java.util.Map;
+
+/**
+ * Key-value map replicated to every node of the cluster, for small cluster-wide state like configuration.
+ *
+ * The map is eventually consistent: a write is applied locally right away and disseminated to the other nodes, and
+ * concurrent writes of the same key are resolved by the last writer wins rule, so every node converges to the same
+ * value of a key. Nodes joining later, or which missed a write, are repaired by the periodic anti-entropy of the map.
+ * @author shavin
+ */
+public interface ReplicatedMap {
+
+    /**
+     * @return the value of the key, or null if the map has no value for the key
+     */
+    byte[] get(String key);
+
+    /**
+     * Set the value of a key in the whole cluster.
+     *
+     * @throws IllegalArgumentException if the key and the value together are larger than a replicated entry can be
+     */
+    void put(String key, byte[] value);
+
+    /**
+     * Remove a key from the whole cluster.
+     */
+    void remove(String key);
+
+    /**
+     * @return a copy of the current content of the map
+     */
+    Map<String, byte[]> snapshot();
+
+    /**
+     * @return the number of keys with a value
+     */
+    int size();
+
+    /**
+     * Add a listener of the changes of every key.
+     */
+    void addListener(ReplicatedMapListener listener);
+
+    /**
+     * Add a listener of the changes of a single key.
+     */
+    void addListener(String key, ReplicatedMapListener listener);
+
+}
@@ -0,0 +1,17 @@
+package org.shavin.swim.api.event;
+
+/**
+ * Listener of the changes of the replicated map of the cluster, both the local writes and the writes of other nodes.
+ * The changes are passed in the order in which they were applied to the map, while the map is locked, so a listener
+ * must return quickly.
+ * @author shavin
+ */
+public interface ReplicatedMapListener {
+
+    /**
+     * @param key the changed key
+     * @param value the new value of the key, null if the key was removed
+     */
+    void onChange(String key, byte[] value);
+
+}
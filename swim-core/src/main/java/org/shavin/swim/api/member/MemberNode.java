@@ -1,5 +1,7 @@
 package org.shavin.swim.api.member;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.InetSocketAddress;
 import java.util.Objects;
 
@@ -10,36 +12,83 @@ import java.util.Objects;
  * status fields represent the status of the node in the cluster which will be UP, DOWN, or SUSPICIOUS.
  * the last update time is the time when the node last updated its status.
  * the incarnation number is an integer incremented every time the node is updated.
- * This class is immutable.
+ *
+ * The status and the incarnation number are packed into a single long state word, the incarnation number in the
+ * upper and the status in the lower 32 bits, so that both are always read and changed together. Changes are
+ * compare-and-set loops on the state word, and {@link #transition(MemberStatus, int)} applies the SWIM precedence
+ * rules, so that concurrent updates are never lost and every transition is applied by exactly one caller.
  * @author shavin
  */
 public class MemberNode {
 
+    /**
+     * Status of a member. For the same incarnation number, a status declared later overrides the statuses declared
+     * before it, e.g. a suspected or failed member overrides an alive one. A member which left stays left.
+     */
     public enum MemberStatus {
         UNKNOWN, UP, SUSPICIOUS, DOWN, LEAVED
     }
 
+    private final static MemberStatus[] STATUSES = MemberStatus.values();
+    private final static VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(MemberNode.class, "state", long.class);
+        } catch (ReflectiveOperationException exception) {
+            throw new ExceptionInInitializerError(exception);
+        }
+    }
+
     private final int id;
     private final InetSocketAddress address;
     private long lastUpdateTime;
-    private volatile int incarnationNumber;
 
-    private volatile MemberStatus status;
-    
+    // incarnation number in the upper and the status ordinal in the lower 32 bits
+    private volatile long state;
+
     public MemberNode(int id, InetSocketAddress address) {
         this.id = id;
         this.address = address;
         this.lastUpdateTime = 0;
-        this.status = MemberStatus.UNKNOWN;
-        incarnationNumber = 0;
+        this.state = packState(MemberStatus.UNKNOWN, 0);
     }
 
     public MemberNode(int id, InetSocketAddress address, MemberStatus status) {
         this.id = id;
         this.address = address;
-        this.status = status;
         this.lastUpdateTime = System.currentTimeMillis();
-        this.incarnationNumber = 0;
+        this.state = packState(status, 0);
+    }
+
+    /**
+     * Pack a status and an incarnation number into a state word.
+     */
+    public static long packState(MemberStatus status, int incarnationNumber) {
+        return ((long) incarnationNumber << 32) | status.ordinal();
+    }
+
+    public static MemberStatus statusOf(long state) {
+        return STATUSES[(int) state];
+    }
+
+    public static int incarnationNumberOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    /**
+     * Check whether a status with an incarnation number overrides the given state according to the SWIM precedence
+     * rules: a higher incarnation number always wins, for the same incarnation number a suspected or failed member
+     * overrides an alive one. Nothing overrides a member which left.
+     */
+    public static boolean overrides(MemberStatus status, int incarnationNumber, long state) {
+        MemberStatus currentStatus = statusOf(state);
+        if (currentStatus == MemberStatus.LEAVED) {
+            return false;
+        }
+        int currentIncarnationNumber = incarnationNumberOf(state);
+        return incarnationNumber > currentIncarnationNumber
+                || (incarnationNumber == currentIncarnationNumber && status.ordinal() > currentStatus.ordinal());
     }
 
     //  publicly exposed getter methods for id, address, status, last update time, and incarnation number
@@ -54,7 +103,8 @@ public class MemberNode {
 
     /**
      * Get the address of the member node..
-     * @return InetSocketAddress of the member node.
+     * @return InetSocketAddress of the member node, or null for a view of an off-heap member store whose member was
+     *         removed before its address was read.
      */
     public InetSocketAddress address() {
         return address;
@@ -65,7 +115,7 @@ public class MemberNode {
      * @return the current status of the member node which can be UP, DOWN, or SUSPICIOUS, or UNKNOWN if the status is not known yet, e.g., when the node is joining the cluster for the first time.
      */
     public MemberStatus status() {
-        return status;
+        return statusOf(state());
     }
 
     /**
@@ -73,7 +123,7 @@ public class MemberNode {
      * @return boolean indicating whether the node is healthy or not. True if the node is UP, false otherwise.
      */
     public boolean isHealthy() {
-        return status == MemberStatus.UP;
+        return status() == MemberStatus.UP;
     }
 
     /**
@@ -81,13 +131,50 @@ public class MemberNode {
      * @return the incarnation number of the member node.
      */
     public int incarnationNumber() {
-        return this.incarnationNumber;
+        return incarnationNumberOf(state());
+    }
+
+    /**
+     * Get the status and the incarnation number of the member node as a single state word.
+     * @return the packed state, see {@link #packState(MemberStatus, int)}.
+     */
+    public long state() {
+        return state;
+    }
+
+    /**
+     * Atomically replace the state word if it still has the expected value.
+     * @return true if the state was replaced.
+     */
+    protected boolean compareAndSetState(long expectedState, long newState) {
+        return STATE.compareAndSet(this, expectedState, newState);
+    }
+
+    /**
+     * Move the member to a status declared with the given incarnation number, if it overrides the current state
+     * according to the SWIM precedence rules. Of all the concurrent callers declaring the same transition exactly one
+     * succeeds, so the transition is reported only once.
+     * @param status the declared status.
+     * @param incarnationNumber the incarnation number the status was declared with.
+     * @return the status replaced by the transition, or null if the current state takes precedence.
+     */
+    public MemberStatus transition(MemberStatus status, int incarnationNumber) {
+        long newState = packState(status, incarnationNumber);
+        while (true) {
+            long currentState = state();
+            if (!overrides(status, incarnationNumber, currentState)) {
+                return null;
+            }
+            if (compareAndSetState(currentState, newState)) {
+                return statusOf(currentState);
+            }
+        }
     }
 
     @Override
     public boolean equals(Object o) {
-        if (o == null || getClass() != o.getClass()) return false;
-        MemberNode that = (MemberNode) o;
+        // members are equal by their id, including the views of a member store which extend this class
+        if (!(o instanceof MemberNode that)) return false;
         return id == that.id;
     }
 
@@ -102,16 +189,38 @@ public class MemberNode {
 
         stringBuilder.append("MemberNode[id=").append(id)
                 .append(", address=").append(address)
-                .append(", status=").append(status)
+                .append(", status=").append(status())
                 .append(", lastUpdateTime=").append(lastUpdateTime)
-                .append(", incarnationNumber=").append(incarnationNumber)
+                .append(", incarnationNumber=").append(incarnationNumber())
                 .append("]");
 
         return stringBuilder.toString();
     }
 
+    /**
+     * Mark the member as left, keeping its incarnation number. A member which left never changes its status again.
+     * @return the status before the member left, LEAVED if it already left.
+     */
+    public MemberStatus leave() {
+        while (true) {
+            long currentState = state();
+            if (statusOf(currentState) == MemberStatus.LEAVED) {
+                return MemberStatus.LEAVED;
+            }
+            if (compareAndSetState(currentState, packState(MemberStatus.LEAVED, incarnationNumberOf(currentState)))) {
+                return statusOf(currentState);
+            }
+        }
+    }
+
+    /**
+     * Set the status regardless of the precedence rules, keeping the incarnation number.
+     */
     public void setStatus(MemberStatus status) {
-        this.status = status;
+        long currentState;
+        do {
+            currentState = state();
+        } while (!compareAndSetState(currentState, packState(status, incarnationNumberOf(currentState))));
     }
 
     public void updateLastUpdateTime() {
@@ -119,6 +228,9 @@ public class MemberNode {
     }
 
     public void increaseIncarnationNumber() {
-        this.incarnationNumber++;
+        long currentState;
+        do {
+            currentState = state();
+        } while (!compareAndSetState(currentState, packState(statusOf(currentState), incarnationNumberOf(currentState) + 1)));
     }
 }
@@ -0,0 +1,71 @@
+package org.shavin.swim.api.member;
+
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * State of a member node as seen at the epoch of a {@link MembershipSnapshot}.
+ * Unlike a {@link MemberNode}, the status and the incarnation number of a member state never change.
+ * This class is immutable.
+ * @author shavin
+ */
+public final class MemberState {
+
+    private final int id;
+    private final InetSocketAddress address;
+    private final MemberNode.MemberStatus status;
+    private final int incarnationNumber;
+
+    public MemberState(int id, InetSocketAddress address, MemberNode.MemberStatus status, int incarnationNumber) {
+        this.id = id;
+        this.address = address;
+        this.status = status;
+        this.incarnationNumber = incarnationNumber;
+    }
+
+    /**
+     * Capture the current state of a member node.
+     */
+    public static MemberState of(MemberNode memberNode) {
+        return new MemberState(memberNode.id(), memberNode.address(), memberNode.status(), memberNode.incarnationNumber());
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public InetSocketAddress address() {
+        return address;
+    }
+
+    public MemberNode.MemberStatus status() {
+        return status;
+    }
+
+    public boolean isHealthy() {
+        return status == MemberNode.MemberStatus.UP;
+    }
+
+    public int incarnationNumber() {
+        return incarnationNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MemberState that = (MemberState) o;
+        return id == that.id && incarnationNumber == that.incarnationNumber && status == that.status
+                && Objects.equals(address, that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, address, status, incarnationNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "MemberState[id=" + id + ", address=" + address + ", status=" + status + ", incarnationNumber=" + incarnationNumber + "]";
+    }
+}
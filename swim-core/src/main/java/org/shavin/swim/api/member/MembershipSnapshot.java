@@ -0,0 +1,169 @@
+package org.shavin.swim.api.member;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable view of the membership of a cluster node at a given epoch. The epoch is increased by every change of
+ * the membership, i.e. a member joining, leaving or changing its status, so two snapshots with the same epoch are
+ * equal.
+ *
+ * Reading a snapshot never locks and never allocates: the members are kept sorted by node id and found with a
+ * binary search, and {@link #members()} returns the same list on every call. The snapshots taken at two epochs
+ * can be compared with {@link #diff(MembershipSnapshot)}.
+ * @author shavin
+ */
+public final class MembershipSnapshot {
+
+    public static final MembershipSnapshot EMPTY = new MembershipSnapshot(0L, new MemberState[0]);
+
+    private final long epoch;
+    private final int[] ids;
+    private final MemberState[] states;
+    private final List<MemberState> members;
+
+    private MembershipSnapshot(long epoch, MemberState[] sortedStates) {
+        this.epoch = epoch;
+        this.states = sortedStates;
+        this.ids = new int[sortedStates.length];
+        for (int i = 0; i < sortedStates.length; i++) {
+            ids[i] = sortedStates[i].id();
+        }
+        this.members = Collections.unmodifiableList(Arrays.asList(sortedStates));
+    }
+
+    /**
+     * Create a snapshot of the given member states.
+     *
+     * @param epoch the epoch of the membership the states were captured at
+     * @param states the member states, with unique node ids
+     */
+    public static MembershipSnapshot of(long epoch, MemberState[] states) {
+        MemberState[] sortedStates = states.clone();
+        Arrays.sort(sortedStates, Comparator.comparingInt(MemberState::id));
+        return new MembershipSnapshot(epoch, sortedStates);
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     * @return the members of the snapshot sorted by node id
+     */
+    public List<MemberState> members() {
+        return members;
+    }
+
+    /**
+     * @return the state of the member with the given id, or null if it is not a member at this epoch
+     */
+    public MemberState get(int nodeId) {
+        int index = Arrays.binarySearch(ids, nodeId);
+        return index < 0 ? null : states[index];
+    }
+
+    /**
+     * @return the number of members with the given status at this epoch
+     */
+    public int count(MemberNode.MemberStatus status) {
+        int count = 0;
+        for (MemberState state : states) {
+            if (state.status() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the changes from an older snapshot to this snapshot with a single pass over both sorted member arrays.
+     *
+     * @param previous the older snapshot of the same cluster node
+     * @return the members added, removed and changed since the previous snapshot
+     */
+    public Diff diff(MembershipSnapshot previous) {
+        List<MemberState> added = new ArrayList<>();
+        List<MemberState> removed = new ArrayList<>();
+        List<MemberState> changed = new ArrayList<>();
+
+        int i = 0;
+        int j = 0;
+        while (i < states.length || j < previous.states.length) {
+            if (j == previous.states.length || (i < states.length && ids[i] < previous.ids[j])) {
+                added.add(states[i++]);
+            } else if (i == states.length || previous.ids[j] < ids[i]) {
+                removed.add(previous.states[j++]);
+            } else {
+                if (!states[i].equals(previous.states[j])) {
+                    changed.add(states[i]);
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return new Diff(previous.epoch, epoch, added, removed, changed);
+    }
+
+    @Override
+    public String toString() {
+        return "MembershipSnapshot[epoch=" + epoch + ", members=" + members + "]";
+    }
+
+    /**
+     * Changes of the membership between two epochs. Removed members are reported with their last known state,
+     * added and changed members with their state at the newer epoch.
+     */
+    public static final class Diff {
+        private final long fromEpoch;
+        private final long toEpoch;
+        private final List<MemberState> added;
+        private final List<MemberState> removed;
+        private final List<MemberState> changed;
+
+        private Diff(long fromEpoch, long toEpoch, List<MemberState> added, List<MemberState> removed, List<MemberState> changed) {
+            this.fromEpoch = fromEpoch;
+            this.toEpoch = toEpoch;
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+        }
+
+        public long fromEpoch() {
+            return fromEpoch;
+        }
+
+        public long toEpoch() {
+            return toEpoch;
+        }
+
+        public List<MemberState> added() {
+            return added;
+        }
+
+        public List<MemberState> removed() {
+            return removed;
+        }
+
+        public List<MemberState> changed() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Diff[fromEpoch=" + fromEpoch + ", toEpoch=" + toEpoch + ", added=" + added + ", removed=" + removed + ", changed=" + changed + "]";
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.shavin.swim.api.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.net.InetSocketAddress;
+
+/**
+ * A {@link MessageHandler} which consumes incoming messages directly from reference-counted netty buffers.
+ *
+ * Transport layers that receive datagrams into a {@code ByteBuf} hand the buffer over without copying it,
+ * so the message can be deserialized straight from the receive buffer. Transport layers which only deal with
+ * byte arrays still work with this handler, because {@link #handle(byte[], InetSocketAddress)} wraps the
+ * array into a buffer without copying.
+ *
+ * The buffer passed to {@link #handle(ByteBuf, InetSocketAddress)} is owned by the caller and is released
+ * once the call returns. Implementations that keep a reference to it must {@code retain()} it.
+ *
+ * @author shavin
+ */
+@FunctionalInterface
+public interface ByteBufMessageHandler extends MessageHandler {
+
+    /**
+     * Handles the incoming message held in the given buffer.
+     *
+     * @param data the buffer holding the message data, only valid for the duration of this call.
+     * @param sender the {@code InetSocketAddress} representing the sender's address.
+     */
+    @Override
+    void handle(ByteBuf data, InetSocketAddress sender);
+
+    @Override
+    default void handle(byte[] data, InetSocketAddress sender) {
+        ByteBuf buffer = Unpooled.wrappedBuffer(data);
+        try {
+            handle(buffer, sender);
+        } finally {
+            buffer.release();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.shavin.swim.api.transport;
 
+import io.netty.buffer.ByteBuf;
+
 import java.net.InetSocketAddress;
 
 /**
@@ -17,6 +19,8 @@ import java.net.InetSocketAddress;
  *
  * Implementations should ensure thread-safety if the handler is expected to
  * be invoked concurrently by multiple threads.
+ *
+ * @see ByteBufMessageHandler for a handler that consumes the reference-counted buffers directly
  */
 @FunctionalInterface
 public interface MessageHandler {
@@ -29,4 +33,22 @@ public interface MessageHandler {
      */
     void handle(byte[] data, InetSocketAddress sender);
 
+    /**
+     * Handles the incoming message data as a netty buffer. Transport layers which already hold the
+     * datagram in a {@code ByteBuf} should call this method instead of {@link #handle(byte[], InetSocketAddress)}.
+     *
+     * The buffer is owned by the caller: it is only valid for the duration of this call and the caller
+     * releases it afterward. Implementations that need the data after returning must {@code retain()} it.
+     * The default implementation copies the readable bytes into a byte array and delegates to
+     * {@link #handle(byte[], InetSocketAddress)}.
+     *
+     * @param data the buffer holding the message data, positioned at the first byte of the message.
+     * @param sender the {@code InetSocketAddress} representing the sender's address.
+     */
+    default void handle(ByteBuf data, InetSocketAddress sender) {
+        byte[] bytes = new byte[data.readableBytes()];
+        data.getBytes(data.readerIndex(), bytes);
+        handle(bytes, sender);
+    }
+
 }
@@ -1,7 +1,10 @@
 package org.shavin.swim.api.transport;
 
+import io.netty.buffer.ByteBuf;
+
 import java.net.InetSocketAddress;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Represents a transport layer for network communication. This interface provides methods to
@@ -32,6 +35,42 @@ public interface TransportLayer {
      */
     void send(InetSocketAddress address, byte[] data);
 
+    /**
+     * Sends a message held in a reference-counted netty buffer to the specified network address.
+     *
+     * Ownership of the buffer is transferred to the transport layer, which releases it once the message
+     * is written or dropped. Callers must not use the buffer after this call returns.
+     * The default implementation copies the readable bytes into a byte array and delegates to
+     * {@link #send(InetSocketAddress, byte[])}.
+     *
+     * @param address the destination address to which the message should be sent.
+     * @param data the buffer holding the message data to be sent.
+     */
+    default void send(InetSocketAddress address, ByteBuf data) {
+        byte[] bytes;
+        try {
+            bytes = new byte[data.readableBytes()];
+            data.getBytes(data.readerIndex(), bytes);
+        } finally {
+            data.release();
+        }
+        send(address, bytes);
+    }
+
+    /**
+     * Returns the single thread executor on which the transport invokes the message handler, if the transport
+     * handles all the incoming messages on one thread. Users of the transport can schedule their own timers on it,
+     * so that their state is only ever touched by that thread and needs no further synchronization.
+     *
+     * The executor is owned by the transport layer and must not be shut down by the caller. It is only available
+     * once the transport layer is started.
+     *
+     * @return the executor running the message handler, or {@code null} if messages are handled on several threads
+     */
+    default ScheduledExecutorService protocolExecutor() {
+        return null;
+    }
+
     /**
      * Stops the transport layer from listening for incoming messages and releases any resources
      * associated with the transport layer. This method should be called to gracefully shut down
@@ -7,10 +7,14 @@ import org.shavin.swim.util.HashUtil;
 import org.shavin.swim.util.SimpleTimeCache;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
 
 /**
  * CustomDataManager handles the dissemination, retrieval, and processing of custom data
@@ -22,26 +26,65 @@ import java.util.concurrent.ScheduledExecutorService;
  * seen data and adheres to a dissemination threshold algorithm for controlling data
  * spread within the cluster. Listeners can register to receive notifications about
  * custom data reception.
+ *
+ * Data larger than a fragment is split into fragments which fit into a packet next to a few membership events. Every
+ * fragment is disseminated on its own, the least disseminated fragments first, and the receivers reassemble the data
+ * within a bounded memory budget and a timeout before the listeners are called once with the whole data.
  */
 public class CustomDataManager {
 
     private final static int CACHE_PRUNE_INTERVAL_MS = 2500;
     private final static int MIN_EFFECTIVE_CLUSTER_SIZE = 10;
-    private final static int MAX_SIZE_PER_MESSAGE_IN_BYTES = 256;
-    private final static int SAFE_MTU = 1400;
+    // data of a fragment, a fragment and about a dozen membership events fit into one packet
+    public final static int FRAGMENT_SIZE_IN_BYTES = 1024;
+    public final static int DEFAULT_MAX_DATA_SIZE_IN_BYTES = 64 * 1024;
+    // the fragment count is an unsigned short on the wire
+    public final static int MAX_DATA_SIZE_IN_BYTES = 0xFFFF * FRAGMENT_SIZE_IN_BYTES;
+    // the fragments of a large data are disseminated for minutes, the data is reassembled and recognized as seen
+    // for as long
+    private final static int REASSEMBLY_TIMEOUT_MS = 120_000;
+    // the incomplete data buffered at the same time, in units of the largest data
+    private final static int REASSEMBLY_BUDGET_IN_MESSAGES = 16;
 
     private final ConcurrentHashMap<Long, CustomUserData> outgoingData = new ConcurrentHashMap<>();
-    private final SimpleTimeCache<Long> seenCache = new SimpleTimeCache<>(10000);
+    private final SimpleTimeCache<Long> seenCache = new SimpleTimeCache<>(REASSEMBLY_TIMEOUT_MS);
+    private final FragmentReassembler reassembler;
     private final List<ClusterEventListener> listeners;
+    // handlers of the data the cluster disseminates for itself, by channel
+    private final Map<Integer, Consumer<byte[]>> channelHandlers = new ConcurrentHashMap<>();
     private final List<MemberNode> members;
+    private final int maxDataSizeInBytes;
 
     public CustomDataManager(List<ClusterEventListener> listeners, List<MemberNode> members) {
+        this(listeners, members, DEFAULT_MAX_DATA_SIZE_IN_BYTES);
+    }
+
+    /**
+     * @param maxDataSizeInBytes the largest data sent or reassembled, at most {@link #MAX_DATA_SIZE_IN_BYTES}
+     */
+    public CustomDataManager(List<ClusterEventListener> listeners, List<MemberNode> members, int maxDataSizeInBytes) {
+        if (maxDataSizeInBytes <= 0 || maxDataSizeInBytes > MAX_DATA_SIZE_IN_BYTES) {
+            throw new IllegalArgumentException("Max data size must be a positive integer up to " + MAX_DATA_SIZE_IN_BYTES + " bytes.");
+        }
         this.listeners = listeners;
         this.members = members;
+        this.maxDataSizeInBytes = maxDataSizeInBytes;
+        int maxFragmentCount = (maxDataSizeInBytes + FRAGMENT_SIZE_IN_BYTES - 1) / FRAGMENT_SIZE_IN_BYTES;
+        this.reassembler = new FragmentReassembler(FRAGMENT_SIZE_IN_BYTES, maxDataSizeInBytes,
+                (long) REASSEMBLY_BUDGET_IN_MESSAGES * maxFragmentCount * FRAGMENT_SIZE_IN_BYTES, REASSEMBLY_TIMEOUT_MS);
     }
 
-    public void start(ScheduledExecutorService executorService) {
-        executorService.scheduleAtFixedRate(seenCache::prune, CACHE_PRUNE_INTERVAL_MS, CACHE_PRUNE_INTERVAL_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+    /**
+     * @return the periodic pruning of the seen cache, which is cancelled when the executor is shut down or the
+     *         returned future is cancelled
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService executorService) {
+        return executorService.scheduleAtFixedRate(this::prune, CACHE_PRUNE_INTERVAL_MS, CACHE_PRUNE_INTERVAL_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+    }
+
+    private void prune() {
+        seenCache.prune();
+        reassembler.prune();
     }
 
     private int calculateThreshold() {
@@ -54,27 +97,51 @@ public class CustomDataManager {
         return thresholdValue;
     }
 
+    /**
+     * Handle the data received on a channel other than the user data channel with the given handler.
+     */
+    public void setChannelHandler(int channel, Consumer<byte[]> handler) {
+        channelHandlers.put(channel, handler);
+    }
+
     public void broadcastData(byte[] data) {
-        if (data.length > MAX_SIZE_PER_MESSAGE_IN_BYTES) {
+        broadcastData(CustomUserData.CHANNEL_USER_DATA, data);
+    }
+
+    public void broadcastData(int channel, byte[] data) {
+        if (data.length > maxDataSizeInBytes) {
             throw new IllegalArgumentException("Data size exceeds max allowed size");
         }
 
-        // otherwise add to the outgoing data map
-        outgoingData.put(HashUtil.hash64(data), new CustomUserData(data));
+        // otherwise split the data into fragments and add them to the outgoing data map
+        long messageId = HashUtil.hash64(data);
+        int fragmentCount = Math.max(1, (data.length + FRAGMENT_SIZE_IN_BYTES - 1) / FRAGMENT_SIZE_IN_BYTES);
+        for (int i = 0; i < fragmentCount; i++) {
+            byte[] fragmentData = fragmentCount == 1 ? data
+                    : Arrays.copyOfRange(data, i * FRAGMENT_SIZE_IN_BYTES, Math.min(data.length, (i + 1) * FRAGMENT_SIZE_IN_BYTES));
+            CustomUserData fragment = new CustomUserData(channel, messageId, i, fragmentCount, fragmentData);
+            // the own data is not received back from the other nodes
+            seenCache.put(fragment.key());
+            outgoingData.put(fragment.key(), fragment);
+        }
     }
 
-    public List<CustomUserData> getDataToSend() {
+    /**
+     * @param bytesAvailable the number of bytes left in the packet for the custom user data
+     */
+    public List<CustomUserData> getDataToSend(int bytesAvailable) {
         List<CustomUserData> dataToBeSend = new ArrayList<>();
         int bytesToSend = 0;
 
-        // get the value iterator of the outgoing data buffer
-        Iterator<CustomUserData> iterator = outgoingData.values().iterator();
+        // the least disseminated data first, so the fragments of a large data are disseminated side by side
+        List<CustomUserData> outgoing = new ArrayList<>(outgoingData.values());
+        outgoing.sort(Comparator.comparingInt(CustomUserData::disseminationCount));
 
-        while (iterator.hasNext())  {
-            CustomUserData userData = iterator.next();
+        for (CustomUserData userData : outgoing) {
 
-            if (bytesToSend + userData.getData().length + 4 >= SAFE_MTU - 42) {
-                break;
+            if (bytesToSend + userData.serializedSize() > bytesAvailable) {
+                // smaller data may still fit
+                continue;
             }
 
             dataToBeSend.add(userData);
@@ -82,24 +149,37 @@ public class CustomDataManager {
             userData.incrementDissemationCount();
 
             if (userData.disseminationCount() >= calculateThreshold()) { // if the dissemination count is greater than or equal to THRESHOLD, remove the entry from the buffer
-                iterator.remove();
+                outgoingData.remove(userData.key());
             }
 
-            seenCache.put(HashUtil.hash64(userData.getData()));
-            bytesToSend += userData.getData().length + 4;
+            seenCache.put(userData.key());
+            bytesToSend += userData.serializedSize();
         }
 
         return dataToBeSend;
     }
 
-    private void receiveUserData(byte[] data) {
-        // calculate the hash
-        long hash = HashUtil.hash64(data);
-        if (!seenCache.contains(hash)) {
+    private void receiveUserData(CustomUserData userData) {
+        long key = userData.key();
+        if (!seenCache.contains(key)) {
             // add to the seen cache
-            seenCache.put(hash);
-            // add to the outgoing data buffer
-            outgoingData.put(hash, new CustomUserData(data));
+            seenCache.put(key);
+            // add to the outgoing data buffer, every fragment is disseminated further on its own
+            outgoingData.put(key, userData);
+
+            // a fragment is only passed on with the last missing fragment of its data
+            byte[] data = userData.isFragment() ? reassembler.add(userData) : userData.getData();
+            if (data == null) {
+                return;
+            }
+
+            if (userData.channel() != CustomUserData.CHANNEL_USER_DATA) {
+                Consumer<byte[]> handler = channelHandlers.get(userData.channel());
+                if (handler != null) {
+                    handler.accept(data);
+                }
+                return;
+            }
 
             // notify the protocol layer of the new data
             listeners.forEach(listener -> {
@@ -109,9 +189,14 @@ public class CustomDataManager {
     }
 
     public void onReceive(List<CustomUserData> customUserDataList) {
-        customUserDataList.forEach(userData -> {
-            receiveUserData(userData.getData());
-        });
+        customUserDataList.forEach(this::receiveUserData);
+    }
+
+    /**
+     * @return the reassembly of the fragmented data received by this node
+     */
+    public FragmentReassembler reassembler() {
+        return reassembler;
     }
 
 }
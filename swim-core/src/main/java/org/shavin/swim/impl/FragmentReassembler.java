@@ -0,0 +1,167 @@
+package org.shavin.swim.impl;
+
+import org.shavin.swim.messages.CustomUserData;
+import org.shavin.swim.util.HashUtil;
+import org.shavin.swim.util.SimpleTimeCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reassembles the custom user data which was split into fragments by the sending node.
+ *
+ * The fragments of a payload are collected in a buffer of the payload until all of them arrived, in any order and
+ * from any node. The buffers share a memory budget: a fragment which does not fit into the budget evicts the oldest
+ * incomplete payloads. An incomplete payload is dropped as well when its timeout passed since its first fragment.
+ * A completed payload is remembered until the same timeout, so fragments still circulating in the cluster do not
+ * start a new buffer for it.
+ * @author shavin
+ */
+public class FragmentReassembler {
+    private final static Logger log = LoggerFactory.getLogger(FragmentReassembler.class);
+
+    private final int maxFragmentSize;
+    private final int maxFragmentCount;
+    private final long budgetInBytes;
+    private final long timeoutInMs;
+
+    // incomplete payloads by id in the order of their first fragment, the oldest first
+    private final LinkedHashMap<Long, PartialMessage> partialMessages = new LinkedHashMap<>();
+    private final SimpleTimeCache<Long> completedMessages;
+    private long bufferedBytes = 0;
+
+    /**
+     * @param maxFragmentSize the largest data of a fragment
+     * @param maxMessageSize the largest payload which is reassembled
+     * @param budgetInBytes the bytes which the incomplete payloads may buffer in total
+     * @param timeoutInMs the time an incomplete payload waits for its missing fragments
+     */
+    public FragmentReassembler(int maxFragmentSize, int maxMessageSize, long budgetInBytes, long timeoutInMs) {
+        this.maxFragmentSize = maxFragmentSize;
+        this.maxFragmentCount = (maxMessageSize + maxFragmentSize - 1) / maxFragmentSize;
+        if (budgetInBytes < (long) maxFragmentCount * maxFragmentSize) {
+            throw new IllegalArgumentException("Reassembly budget must hold at least one message.");
+        }
+        this.budgetInBytes = budgetInBytes;
+        this.timeoutInMs = timeoutInMs;
+        this.completedMessages = new SimpleTimeCache<>(timeoutInMs);
+    }
+
+    /**
+     * Add a received fragment.
+     *
+     * @return the whole payload if the fragment was its last missing one, null otherwise
+     */
+    public synchronized byte[] add(CustomUserData fragment) {
+        long messageId = fragment.messageId();
+        int fragmentCount = fragment.fragmentCount();
+        int fragmentIndex = fragment.fragmentIndex();
+        int fragmentSize = fragment.getData().length;
+        if (fragmentIndex >= fragmentCount || fragmentCount > maxFragmentCount || fragmentSize > maxFragmentSize) {
+            log.debug("Dropped the invalid fragment {}/{} of the message {}", fragmentIndex, fragmentCount, messageId);
+            return null;
+        }
+        if (completedMessages.contains(messageId)) {
+            return null;
+        }
+
+        PartialMessage partialMessage = partialMessages.get(messageId);
+        if (partialMessage == null) {
+            partialMessage = new PartialMessage(fragmentCount);
+            partialMessages.put(messageId, partialMessage);
+        } else if (partialMessage.fragments.length != fragmentCount) {
+            log.debug("Dropped the fragment {}/{} of the message {} with another fragment count", fragmentIndex, fragmentCount, messageId);
+            return null;
+        }
+        if (partialMessage.fragments[fragmentIndex] != null) {
+            return null;
+        }
+
+        // make room for the fragment by dropping the oldest incomplete messages other than its own
+        Iterator<Map.Entry<Long, PartialMessage>> iterator = partialMessages.entrySet().iterator();
+        while (bufferedBytes + fragmentSize > budgetInBytes && iterator.hasNext()) {
+            Map.Entry<Long, PartialMessage> entry = iterator.next();
+            if (entry.getValue() != partialMessage) {
+                iterator.remove();
+                bufferedBytes -= entry.getValue().bytes;
+                log.debug("Reassembly budget is exhausted, dropped the incomplete message {}", entry.getKey());
+            }
+        }
+
+        partialMessage.fragments[fragmentIndex] = fragment.getData();
+        partialMessage.received++;
+        partialMessage.bytes += fragmentSize;
+        bufferedBytes += fragmentSize;
+        if (partialMessage.received < fragmentCount) {
+            return null;
+        }
+
+        partialMessages.remove(messageId);
+        bufferedBytes -= partialMessage.bytes;
+        byte[] data = new byte[partialMessage.bytes];
+        int offset = 0;
+        for (byte[] fragmentData : partialMessage.fragments) {
+            System.arraycopy(fragmentData, 0, data, offset, fragmentData.length);
+            offset += fragmentData.length;
+        }
+        // the id of a message is the hash of the whole message
+        if (HashUtil.hash64(data) != messageId) {
+            log.debug("Dropped the reassembled message {} which does not match its hash", messageId);
+            return null;
+        }
+        completedMessages.put(messageId);
+        return data;
+    }
+
+    /**
+     * Drop the incomplete messages which timed out, and forget the completed messages after the same timeout.
+     *
+     * @return the number of incomplete messages dropped
+     */
+    public synchronized int prune() {
+        completedMessages.prune();
+        long now = System.nanoTime();
+        int removedCount = 0;
+        Iterator<PartialMessage> iterator = partialMessages.values().iterator();
+        while (iterator.hasNext()) {
+            PartialMessage partialMessage = iterator.next();
+            if (TimeUnit.NANOSECONDS.toMillis(now - partialMessage.startNanos) < timeoutInMs) {
+                // the rest of the messages started later
+                break;
+            }
+            iterator.remove();
+            bufferedBytes -= partialMessage.bytes;
+            removedCount++;
+        }
+        return removedCount;
+    }
+
+    /**
+     * @return the number of messages waiting for missing fragments
+     */
+    public synchronized int incompleteMessages() {
+        return partialMessages.size();
+    }
+
+    /**
+     * @return the bytes buffered for the incomplete messages
+     */
+    public synchronized long bufferedBytes() {
+        return bufferedBytes;
+    }
+
+    private static class PartialMessage {
+        private final byte[][] fragments;
+        private final long startNanos = System.nanoTime();
+        private int received = 0;
+        private int bytes = 0;
+
+        PartialMessage(int fragmentCount) {
+            this.fragments = new byte[fragmentCount][];
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.shavin.swim.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local Health Multiplier of the Lifeguard extension of SWIM.
+ *
+ * A node which is short of CPU, or pausing for garbage collection, handles the acks of its probes too late and would
+ * declare healthy members failed. The multiplier is a saturating counter which measures how much the node should
+ * distrust its own failure detection: it goes up on the evidence of a slow local node, i.e. a missed ack, having to
+ * refute a failure declared about the local node itself, or a missing nack of an indirect probe, and goes down with
+ * every successful probe. The probe interval and the probe timeouts are scaled by {@code multiplier + 1}, so a slow
+ * node probes less often and waits longer before it suspects anybody.
+ * @author shavin
+ */
+public class LocalHealthMultiplier {
+
+    private final int limit;
+    private final AtomicInteger value = new AtomicInteger(0);
+
+    /**
+     * @param limit the highest value of the multiplier, the timeouts are scaled by at most {@code limit + 1}
+     */
+    public LocalHealthMultiplier(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Local health multiplier limit must not be negative.");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * @return the current value of the multiplier, between zero for a healthy node and the limit
+     */
+    public int value() {
+        return value.get();
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    /**
+     * A probe was answered in time.
+     */
+    public void onProbeSucceeded() {
+        value.getAndUpdate(current -> current > 0 ? current - 1 : 0);
+    }
+
+    /**
+     * A probe was not answered in time.
+     */
+    public void onProbeFailed() {
+        increase();
+    }
+
+    /**
+     * The local node learned that another node declared it failed, which it has to refute.
+     */
+    public void onRefutation() {
+        increase();
+    }
+
+    /**
+     * A member asked to probe another member indirectly did not report back in time, so either the local node or the
+     * network is slow.
+     */
+    public void onMissedNack() {
+        increase();
+    }
+
+    /**
+     * Scale a probe interval or timeout by the current health of the local node.
+     *
+     * @param baseInMs the interval or timeout of a healthy node
+     * @return the interval or timeout to use now
+     */
+    public long scale(long baseInMs) {
+        return baseInMs * (value.get() + 1);
+    }
+
+    private void increase() {
+        value.getAndUpdate(current -> current < limit ? current + 1 : limit);
+    }
+}
@@ -0,0 +1,290 @@
+package org.shavin.swim.impl;
+
+import org.shavin.swim.api.ReplicatedMap;
+import org.shavin.swim.api.event.ReplicatedMapListener;
+import org.shavin.swim.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Replicated map with a last writer wins register per key.
+ *
+ * Every write is stamped with the time of the writing node, kept ahead of every timestamp the node has seen, and the
+ * id of the node, the write with the highest timestamp and node id wins. A removal is a write of a tombstone, which is
+ * kept for an hour so that the removal is not undone by a node which missed it. Every local write is handed to the
+ * delta sink as an encoded entry, which disseminates it to the other nodes.
+ *
+ * For the anti-entropy between two nodes the map keeps a digest of a fixed number of buckets, every bucket the XOR of
+ * the hashes of the entries of its keys, which is updated with every write. Two nodes compare their digests and only
+ * exchange the entries of the buckets which differ, so the digest stays the same size however large the map grows.
+ * @author shavin
+ */
+public class LwwReplicatedMap implements ReplicatedMap {
+    private final static Logger log = LoggerFactory.getLogger(LwwReplicatedMap.class);
+
+    // buckets of the digest, the digest of the whole map fits into one packet
+    public final static int DIGEST_BUCKETS = 64;
+    // the largest encoded entry, so that a delta is never fragmented and a packet holds at least one entry
+    public final static int MAX_ENTRY_SIZE = CustomDataManager.FRAGMENT_SIZE_IN_BYTES;
+    private final static long TOMBSTONE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+    // the key length, timestamp, node id and value length of an encoded entry
+    private final static int ENTRY_HEADER_SIZE = Short.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private final static int TOMBSTONE_LENGTH = -1;
+
+    private final int nodeId;
+    private final Consumer<byte[]> deltaSink;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final long[] digest = new long[DIGEST_BUCKETS];
+    private int liveEntries = 0;
+    // the timestamp of the last write, local or remote
+    private long clock = 0;
+
+    private final List<ReplicatedMapListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, List<ReplicatedMapListener>> keyListeners = new ConcurrentHashMap<>();
+
+    /**
+     * @param nodeId the id of the local node, which breaks the ties between writes with the same timestamp
+     * @param deltaSink disseminates the encoded entry of every local write
+     */
+    public LwwReplicatedMap(int nodeId, Consumer<byte[]> deltaSink) {
+        this.nodeId = nodeId;
+        this.deltaSink = deltaSink;
+    }
+
+    @Override
+    public synchronized byte[] get(String key) {
+        Entry entry = entries.get(key);
+        return entry == null || entry.isTombstone() ? null : entry.value.clone();
+    }
+
+    @Override
+    public void put(String key, byte[] value) {
+        write(key, Objects.requireNonNull(value, "value").clone());
+    }
+
+    @Override
+    public void remove(String key) {
+        write(key, null);
+    }
+
+    private void write(String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (ENTRY_HEADER_SIZE + keyBytes.length + (value == null ? 0 : value.length) > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Key and value exceed the max entry size of " + MAX_ENTRY_SIZE + " bytes");
+        }
+
+        Entry entry;
+        synchronized (this) {
+            clock = Math.max(clock + 1, System.currentTimeMillis());
+            entry = new Entry(key, keyBytes, value, clock, nodeId);
+            apply(entry);
+        }
+        deltaSink.accept(entry.encode());
+    }
+
+    /**
+     * Merge an entry received from another node.
+     *
+     * @return true if the entry was newer than the local entry of its key
+     */
+    public boolean merge(byte[] encodedEntry) {
+        Entry entry;
+        try {
+            entry = Entry.decode(encodedEntry);
+        } catch (BufferUnderflowException | IllegalArgumentException exception) {
+            log.debug("Dropped a malformed replicated map entry", exception);
+            return false;
+        }
+
+        synchronized (this) {
+            if (entry.isTombstone() && isExpired(entry, System.currentTimeMillis())) {
+                return false;
+            }
+            Entry localEntry = entries.get(entry.key);
+            if (localEntry != null && !entry.isNewerThan(localEntry)) {
+                return false;
+            }
+            // later local writes win over every write seen so far
+            clock = Math.max(clock, entry.timestamp);
+            apply(entry);
+        }
+        return true;
+    }
+
+    private void apply(Entry entry) {
+        Entry oldEntry = entries.put(entry.key, entry);
+        int bucket = entry.bucket;
+        if (oldEntry != null) {
+            digest[bucket] ^= oldEntry.hash;
+            if (!oldEntry.isTombstone()) {
+                liveEntries--;
+            }
+        }
+        digest[bucket] ^= entry.hash;
+        if (!entry.isTombstone()) {
+            liveEntries++;
+        }
+        // the listeners are called while the map is locked, so they see the changes of a key in the order they were
+        // applied even when writes of the key are merged on several threads
+        notifyListeners(entry);
+    }
+
+    /**
+     * @return a copy of the digest of the map
+     */
+    public synchronized long[] digest() {
+        return digest.clone();
+    }
+
+    /**
+     * @return the encoded entries of the buckets in which the map differs from the given digest of another node
+     */
+    public synchronized List<byte[]> entriesDifferingFrom(long[] remoteDigest) {
+        List<byte[]> differingEntries = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            int bucket = entry.bucket;
+            if (remoteDigest.length != DIGEST_BUCKETS || remoteDigest[bucket] != digest[bucket]) {
+                differingEntries.add(entry.encode());
+            }
+        }
+        return differingEntries;
+    }
+
+    /**
+     * Forget the tombstones older than their time to live.
+     *
+     * @return the number of tombstones dropped
+     */
+    public synchronized int prune() {
+        long now = System.currentTimeMillis();
+        int removedCount = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isTombstone() && isExpired(entry, now)) {
+                iterator.remove();
+                digest[entry.bucket] ^= entry.hash;
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    private static boolean isExpired(Entry tombstone, long now) {
+        return now - tombstone.timestamp > TOMBSTONE_TTL_MS;
+    }
+
+    @Override
+    public synchronized Map<String, byte[]> snapshot() {
+        Map<String, byte[]> snapshot = new HashMap<>();
+        for (Entry entry : entries.values()) {
+            if (!entry.isTombstone()) {
+                snapshot.put(entry.key, entry.value.clone());
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public synchronized int size() {
+        return liveEntries;
+    }
+
+    @Override
+    public void addListener(ReplicatedMapListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void addListener(String key, ReplicatedMapListener listener) {
+        keyListeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private void notifyListeners(Entry entry) {
+        byte[] value = entry.isTombstone() ? null : entry.value.clone();
+        listeners.forEach(listener -> listener.onChange(entry.key, value));
+        List<ReplicatedMapListener> listenersOfKey = keyListeners.get(entry.key);
+        if (listenersOfKey != null) {
+            listenersOfKey.forEach(listener -> listener.onChange(entry.key, value));
+        }
+    }
+
+    /**
+     * A write of a key, a tombstone if its value is null.
+     */
+    private static class Entry {
+        private final String key;
+        private final byte[] keyBytes;
+        private final byte[] value;
+        private final long timestamp;
+        private final int nodeId;
+        // the hash of the write in the digest, and the digest bucket of the key
+        private final long hash;
+        private final int bucket;
+
+        Entry(String key, byte[] keyBytes, byte[] value, long timestamp, int nodeId) {
+            this.key = key;
+            this.keyBytes = keyBytes;
+            this.value = value;
+            this.timestamp = timestamp;
+            this.nodeId = nodeId;
+            long keyHash = HashUtil.hash64(keyBytes);
+            this.hash = (keyHash * 31 + timestamp) * 31 + nodeId;
+            this.bucket = (int) Long.remainderUnsigned(keyHash, DIGEST_BUCKETS);
+        }
+
+        boolean isTombstone() {
+            return value == null;
+        }
+
+        boolean isNewerThan(Entry other) {
+            return timestamp != other.timestamp ? timestamp > other.timestamp : nodeId > other.nodeId;
+        }
+
+        byte[] encode() {
+            ByteBuffer buffer = ByteBuffer.allocate(ENTRY_HEADER_SIZE + keyBytes.length + (value == null ? 0 : value.length));
+            buffer.putShort((short) keyBytes.length);
+            buffer.put(keyBytes);
+            buffer.putLong(timestamp);
+            buffer.putInt(nodeId);
+            buffer.putInt(value == null ? TOMBSTONE_LENGTH : value.length);
+            if (value != null) {
+                buffer.put(value);
+            }
+            return buffer.array();
+        }
+
+        static Entry decode(byte[] encodedEntry) {
+            ByteBuffer buffer = ByteBuffer.wrap(encodedEntry);
+            byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(keyBytes);
+            long timestamp = buffer.getLong();
+            int nodeId = buffer.getInt();
+            int valueLength = buffer.getInt();
+            byte[] value = null;
+            if (valueLength != TOMBSTONE_LENGTH) {
+                if (valueLength < 0 || valueLength > buffer.remaining()) {
+                    throw new IllegalArgumentException("Invalid value length " + valueLength);
+                }
+                value = new byte[valueLength];
+                buffer.get(value);
+            }
+            return new Entry(new String(keyBytes, StandardCharsets.UTF_8), keyBytes, value, timestamp, nodeId);
+        }
+    }
+}
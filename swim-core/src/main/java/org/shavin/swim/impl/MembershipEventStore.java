@@ -6,14 +6,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.*;
+import java.util.TreeSet;
 
 /**
  * Store for keep the membership events in a buffer.
  * Supported operations including enqueue events according to merge rules and dequeue events according to dissemination rules.
+ *
+ * The buffer is a transmit limited queue: the events are taken in the order of their transmit count, and the newest
+ * first among the events transmitted equally often, so every event gets its turn even when more events are buffered
+ * than fit into one message. An event is dropped after it was transmitted the threshold number of times, an event of
+ * a member replaces the buffered event of the same member it takes precedence over. Taking and requeueing an event
+ * costs O(log n). Every node owns its own store, the nodes hosted by the same JVM never share their events.
  * @author shavin
  */
 public class MembershipEventStore {
@@ -21,35 +28,40 @@ public class MembershipEventStore {
 
     private final int maxEventsToKeep = 1000;
     private final int MIN_EFFECTIVE_CLUSTER_SIZE = 10;
-    private final int SAFE_MTU = 1400;
 
-    private final Map<Integer, MembershipEvent> membershipEventMap = new ConcurrentHashMap<>();
-    private final List<MemberNode> members;
+    // the least transmitted first, the newest first among equally transmitted events
+    private final static Comparator<Entry> TRANSMIT_ORDER = Comparator.<Entry>comparingInt(entry -> entry.transmits)
+            .thenComparing(Comparator.<Entry>comparingLong(entry -> entry.id).reversed());
 
+    // the buffered event of every member, and the same entries in the transmit order
+    private final Map<Integer, Entry> membershipEventMap = new HashMap<>();
+    private final TreeSet<Entry> transmitQueue = new TreeSet<>(TRANSMIT_ORDER);
+    private final List<MemberNode> members;
+    private long nextEntryId = 0;
 
-    private static MembershipEventStore instance;
+    // the threshold is only calculated again when the cluster size changed
+    private int thresholdClusterSize = -1;
+    private int threshold;
 
-    // Singleton pattern to ensure only one instance of MembershipEventStore exists
-    public static MembershipEventStore getInstance(List<MemberNode> members, ThreadFactory threadFactory) {
-        if (instance == null) {
-            instance = new MembershipEventStore(members, threadFactory);
-        }
-        return instance;
-    }
-
-    private MembershipEventStore(List<MemberNode> members, ThreadFactory threadFactory) {
-        // a private constructor to prevent instantiation outside of this class
+    /**
+     * @param members the members of the node owning the store, the dissemination threshold follows their number
+     */
+    public MembershipEventStore(List<MemberNode> members) {
         this.members = members;
     }
 
     private int calculateThreshold() {
         int N = members.size();
+        if (N == thresholdClusterSize) {
+            return threshold;
+        }
 
         int effectiveSize = Math.max(MIN_EFFECTIVE_CLUSTER_SIZE, N);
 
         // calculate the threshold value according to K-Random Dissemination Rule
-        int thresholdValue = (int) Math.ceil(3 * Math.log(effectiveSize + 1));
-        return thresholdValue;
+        threshold = (int) Math.ceil(3 * Math.log(effectiveSize + 1));
+        thresholdClusterSize = N;
+        return threshold;
     }
 
     public void enqueueEvent(MembershipEvent.Type type, MemberNode node) {
@@ -59,46 +71,86 @@ public class MembershipEventStore {
         enqueueEvent(membershipEvent);
     }
 
-    public void enqueueEvent(MembershipEvent membershipEvent) {
-        // merge the events with the same node id, according to the merge logic below
-        membershipEventMap.merge(membershipEvent.nodeId(), membershipEvent, (oldEvent, event) -> {
-            // keep the event with the highest incarnation number
-            if (oldEvent.incarnationNumber() >= event.incarnationNumber()) {
-                return oldEvent;
-            } else {
-                return event;
+    public synchronized void enqueueEvent(MembershipEvent membershipEvent) {
+        Entry oldEntry = membershipEventMap.get(membershipEvent.nodeId());
+        // keep the event which takes precedence, a duplicate keeps the transmit count of the buffered event
+        // while a confirmation of a suspicion from another node is disseminated again
+        if (oldEntry != null) {
+            if (!membershipEvent.overrides(oldEntry.event) && !membershipEvent.confirms(oldEntry.event)) {
+                return;
             }
-        });
-    }
-
-    public List<MembershipEvent> getRecentEventsAndIncrement() {
-        List<MembershipEvent> eventBatch = new ArrayList<>();
-        int estimatedBytes = 0;
-
-        Iterator<MembershipEvent> eventIterator = membershipEventMap.values().iterator();
-
-        while (eventIterator.hasNext()) {
-            // get the next event to be attached
-            MembershipEvent membershipEvent = eventIterator.next();
+            // invalidate the older event of the member
+            transmitQueue.remove(oldEntry);
+        }
 
-            eventBatch.add(membershipEvent);
+        Entry entry = new Entry(membershipEvent, nextEntryId++);
+        membershipEventMap.put(membershipEvent.nodeId(), entry);
+        transmitQueue.add(entry);
 
-            // increase the dissemination number of the event
-            membershipEvent.incrementDisseminationCount();
+        if (transmitQueue.size() > maxEventsToKeep) {
+            // drop the most transmitted event
+            Entry droppedEntry = transmitQueue.pollLast();
+            membershipEventMap.remove(droppedEntry.event.nodeId());
+            log.debug("Membership event buffer is full, dropped the event {}", droppedEntry.event);
+        }
+    }
 
-            estimatedBytes += 12;
+    /**
+     * Take the events to transmit next which fit into the given number of bytes, and count their transmission.
+     *
+     * @param bytesAvailable the number of bytes left in the packet for the events
+     */
+    public synchronized List<MembershipEvent> getRecentEventsAndIncrement(int bytesAvailable) {
+        List<MembershipEvent> eventBatch = new ArrayList<>();
+        List<Entry> transmittedEntries = new ArrayList<>();
+        int threshold = calculateThreshold();
 
-            // remove the event from the buffer if its send enough times
-            if (membershipEvent.disseminationCount() >= calculateThreshold()) {
-                eventIterator.remove();
+        for (Entry entry : transmitQueue) {
+            if (bytesAvailable < MembershipEvent.SERIALIZED_SIZE) {
+                break;
+            }
+            int eventSize = entry.event.serializedSize();
+            if (eventSize > bytesAvailable) {
+                // a smaller event may still fit
+                continue;
             }
+            bytesAvailable -= eventSize;
+            eventBatch.add(entry.event);
+            transmittedEntries.add(entry);
+        }
 
-            if (estimatedBytes >= (SAFE_MTU - 42)) {
-                break;
+        for (Entry entry : transmittedEntries) {
+            // requeue the event with its new transmit count, or remove it from the buffer if its send enough times
+            transmitQueue.remove(entry);
+            entry.transmits++;
+            entry.event.incrementDisseminationCount();
+            if (entry.transmits >= threshold) {
+                membershipEventMap.remove(entry.event.nodeId());
+            } else {
+                transmitQueue.add(entry);
             }
         }
 
         return eventBatch;
 
     }
+
+    /**
+     * @return the number of buffered events
+     */
+    public synchronized int size() {
+        return transmitQueue.size();
+    }
+
+    private static class Entry {
+        private final MembershipEvent event;
+        // insertion order of the entry, a newer entry has a higher id
+        private final long id;
+        private int transmits = 0;
+
+        Entry(MembershipEvent event, long id) {
+            this.event = event;
+            this.id = id;
+        }
+    }
 }
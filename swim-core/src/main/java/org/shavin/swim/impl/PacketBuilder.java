@@ -0,0 +1,63 @@
+package org.shavin.swim.impl;
+
+import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.messages.CustomUserData;
+import org.shavin.swim.messages.Message;
+import org.shavin.swim.messages.PingAckMessage;
+import org.shavin.swim.messages.PingAckMessageBuilder;
+
+import java.util.List;
+
+/**
+ * Packs the piggybacked membership events and custom user data into the pings and acks, within the one byte budget
+ * of a datagram which is never fragmented on the way.
+ *
+ * The budget is what is left of {@link #MAX_PACKET_SIZE} after the exact serialized size of the message without its
+ * piggybacks. The membership events take precedence and are packed first, the custom user data of a ping gets the
+ * rest of the budget.
+ * @author shavin
+ */
+public class PacketBuilder {
+
+    // path MTU assumed for the cluster network, below the 1500 bytes of Ethernet to leave room for overlay networks
+    public final static int SAFE_MTU = 1400;
+    // the largest serialized message, the MTU less the IPv6 header of 40 bytes and the UDP header of 8 bytes, the MTU
+    // covers the IP packet only, and the IPv6 header is the larger one of the two IP versions
+    public final static int MAX_PACKET_SIZE = SAFE_MTU - 48;
+
+    private final MembershipEventStore eventStore;
+    private final CustomDataManager customDataManager;
+
+    public PacketBuilder(MembershipEventStore eventStore, CustomDataManager customDataManager) {
+        this.eventStore = eventStore;
+        this.customDataManager = customDataManager;
+    }
+
+    /**
+     * Build a ping disseminating as many membership events and custom user data as fit into the packet.
+     */
+    public Message pingMessage(int sourceNodeId, int destinationNodeId, long sequenceNumber) {
+        Message emptyPingMessage = PingAckMessageBuilder.pingMessageForNode(sourceNodeId, destinationNodeId, sequenceNumber, List.of(), List.of());
+        int bytesAvailable = MAX_PACKET_SIZE - (int) Message.Serializer.serializedSize(emptyPingMessage);
+
+        List<MembershipEvent> events = eventStore.getRecentEventsAndIncrement(bytesAvailable);
+        for (MembershipEvent event : events) {
+            bytesAvailable -= event.serializedSize();
+        }
+        List<CustomUserData> data = customDataManager.getDataToSend(bytesAvailable);
+
+        return PingAckMessageBuilder.pingMessageForNode(sourceNodeId, destinationNodeId, sequenceNumber, events, data);
+    }
+
+    /**
+     * Attach as many membership events as fit into the packet to an ack.
+     */
+    public Message ackMessage(Message ackMessage) {
+        int bytesAvailable = MAX_PACKET_SIZE - (int) Message.Serializer.serializedSize(ackMessage);
+        List<MembershipEvent> events = eventStore.getRecentEventsAndIncrement(bytesAvailable);
+        if (events.isEmpty()) {
+            return ackMessage;
+        }
+        return PingAckMessageBuilder.attachPiggybacks((PingAckMessage) ackMessage.payload(), events);
+    }
+}
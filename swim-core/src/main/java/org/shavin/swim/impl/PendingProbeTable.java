@@ -0,0 +1,213 @@
+package org.shavin.swim.impl;
+
+import org.shavin.swim.util.TimingWheel;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bookkeeping of the probes waiting for their ack, e.g. the pings waiting for an ACK or the ping requests waiting for
+ * an INDIRECT_ACK, in a fixed ring of slots indexed by {@code sequenceNumber & mask}.
+ *
+ * Every slot holds the sequence number of its probe, the id of the probed member, the send time in nanoseconds and
+ * the handle of the timeout of the probe, in parallel arrays, so registering and completing a probe neither boxes nor
+ * allocates. The sequence number column is also the state of the slot: zero for a free slot, the sequence number of
+ * the probe while it is pending. The probe is completed, expired or removed by the one thread which moves the slot from
+ * its sequence number back to zero, so a late, duplicate or wrapped ack carrying another sequence number is rejected.
+ *
+ * A ping request probe can also count the NACKs of its intermediaries, which report that the target did not answer
+ * them in time, against the number of NACKs it expects.
+ *
+ * The sequence numbers must be positive and increasing. A probe still pending after as many newer probes as the table
+ * has slots loses its slot to the newest one, so the capacity must exceed the number of probes pending at a time.
+ * @author shavin
+ */
+public class PendingProbeTable {
+
+    private final static long FREE = 0L;
+    // marks a slot while its columns are written, never a sequence number
+    private final static long WRITING = -1L;
+
+    private final int mask;
+    private final AtomicLongArray sequenceNumbers;
+    private final int[] targetIds;
+    private final long[] sendTimes;
+    private final long[] timeouts;
+    private final int[] expectedNacks;
+    private final AtomicIntegerArray nacks;
+    private final TimingWheel<?> timingWheel;
+
+    // round trip time statistics of the completed probes
+    private volatile long lastRoundTripTime = -1L;
+    private volatile long smoothedRoundTripTime = -1L;
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of two
+     * @param timingWheel the timing wheel the timeouts of the probes are scheduled on, a timeout is cancelled when its
+     *                    probe is completed or removed
+     */
+    public PendingProbeTable(int capacity, TimingWheel<?> timingWheel) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.sequenceNumbers = new AtomicLongArray(size);
+        this.targetIds = new int[size];
+        this.sendTimes = new long[size];
+        this.timeouts = new long[size];
+        this.expectedNacks = new int[size];
+        this.nacks = new AtomicIntegerArray(size);
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Register a probe which was sent, or is about to be sent, now.
+     *
+     * @param sequenceNumber the positive sequence number of the probe
+     * @param targetId the id of the probed member
+     * @param timeout the handle of the timeout of the probe
+     */
+    public void register(long sequenceNumber, int targetId, long timeout) {
+        register(sequenceNumber, targetId, timeout, 0);
+    }
+
+    /**
+     * Register a probe which expects a NACK from each of its intermediaries if the target does not answer them.
+     *
+     * @param expectedNacks the number of intermediaries the probe was sent through
+     */
+    public void register(long sequenceNumber, int targetId, long timeout, int expectedNacks) {
+        int slot = (int) (sequenceNumber & mask);
+        // take the slot away from a concurrent completion of the probe it held before
+        sequenceNumbers.set(slot, WRITING);
+        targetIds[slot] = targetId;
+        sendTimes[slot] = System.nanoTime();
+        timeouts[slot] = timeout;
+        this.expectedNacks[slot] = expectedNacks;
+        nacks.set(slot, 0);
+        sequenceNumbers.set(slot, sequenceNumber);
+    }
+
+    /**
+     * Count a NACK of a pending probe.
+     *
+     * @param sequenceNumber the sequence number carried by the NACK
+     * @param targetId the id of the member the NACK reports about
+     * @return true if the NACK belongs to a pending probe
+     */
+    public boolean nack(long sequenceNumber, int targetId) {
+        int slot = (int) (sequenceNumber & mask);
+        if (!isPending(sequenceNumber) || targetIds[slot] != targetId) {
+            return false;
+        }
+        nacks.incrementAndGet(slot);
+        return true;
+    }
+
+    /**
+     * @return the number of NACKs a pending probe expects but did not receive so far, zero if the probe is not pending
+     */
+    public int missedNacks(long sequenceNumber) {
+        int slot = (int) (sequenceNumber & mask);
+        int missed = expectedNacks[slot] - nacks.get(slot);
+        return isPending(sequenceNumber) ? Math.max(missed, 0) : 0;
+    }
+
+    /**
+     * Complete a pending probe with its ack, cancel its timeout and record its round trip time.
+     *
+     * @param sequenceNumber the sequence number carried by the ack
+     * @param targetId the id of the member the ack came from
+     * @return the round trip time of the probe in nanoseconds, or -1 if the ack does not belong to a pending probe,
+     *         e.g. a late, duplicate or wrapped ack
+     */
+    public long complete(long sequenceNumber, int targetId) {
+        int slot = (int) (sequenceNumber & mask);
+        if (sequenceNumber <= FREE || sequenceNumbers.get(slot) != sequenceNumber) {
+            return -1L;
+        }
+        // read the columns before claiming the slot, a new probe can take it right after the claim
+        int slotTargetId = targetIds[slot];
+        long sendTime = sendTimes[slot];
+        long timeout = timeouts[slot];
+        if (slotTargetId != targetId || !sequenceNumbers.compareAndSet(slot, sequenceNumber, FREE)) {
+            return -1L;
+        }
+
+        timingWheel.cancel(timeout);
+        long roundTripTime = System.nanoTime() - sendTime;
+        recordRoundTripTime(roundTripTime);
+        return roundTripTime;
+    }
+
+    /**
+     * Expire a pending probe when its timeout fired.
+     *
+     * @return true if the probe was still pending, false if it was completed or removed meanwhile
+     */
+    public boolean expire(long sequenceNumber) {
+        return sequenceNumber > FREE && sequenceNumbers.compareAndSet((int) (sequenceNumber & mask), sequenceNumber, FREE);
+    }
+
+    /**
+     * Remove a pending probe without an ack, e.g. when it could not be sent, and cancel its timeout.
+     *
+     * @return true if the probe was still pending
+     */
+    public boolean remove(long sequenceNumber) {
+        int slot = (int) (sequenceNumber & mask);
+        long timeout = timeouts[slot];
+        if (!expire(sequenceNumber)) {
+            return false;
+        }
+        timingWheel.cancel(timeout);
+        return true;
+    }
+
+    /**
+     * Remove all the pending probes and cancel their timeouts, e.g. when the node is shut down and its timeouts must
+     * not fire on a timing wheel which outlives it.
+     *
+     * @return the number of probes removed
+     */
+    public int removeAll() {
+        int removedCount = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            long sequenceNumber = sequenceNumbers.get(slot);
+            if (sequenceNumber > FREE && remove(sequenceNumber)) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * @return true if the probe with the given sequence number is pending
+     */
+    public boolean isPending(long sequenceNumber) {
+        return sequenceNumber > FREE && sequenceNumbers.get((int) (sequenceNumber & mask)) == sequenceNumber;
+    }
+
+    /**
+     * @return the round trip time of the last completed probe in nanoseconds, or -1 if no probe was completed yet
+     */
+    public long lastRoundTripTime() {
+        return lastRoundTripTime;
+    }
+
+    /**
+     * @return the smoothed round trip time of the completed probes in nanoseconds, or -1 if no probe was completed yet
+     */
+    public long smoothedRoundTripTime() {
+        return smoothedRoundTripTime;
+    }
+
+    private void recordRoundTripTime(long roundTripTime) {
+        lastRoundTripTime = roundTripTime;
+        long smoothed = smoothedRoundTripTime;
+        // exponentially weighted moving average with a weight of 1/8 for the new sample, as TCP does, racing updates
+        // only lose a sample
+        smoothedRoundTripTime = smoothed < 0 ? roundTripTime : smoothed + ((roundTripTime - smoothed) >> 3);
+    }
+}
@@ -0,0 +1,108 @@
+package org.shavin.swim.impl;
+
+import io.netty.util.NetUtil;
+import org.shavin.swim.member.AddressCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parses the configured seed list once and keeps the resolved socket addresses of the seeds, so that the protocol
+ * loop never splits the seed strings or asks the name service for an address while it is seeding.
+ *
+ * Seeds given as literal IP addresses are resolved once and never change. Seeds given as host names are resolved
+ * again by {@link #refreshAsync()} off the protocol threads, so a seed moving to a new address is picked up without
+ * blocking the protocol loop on a slow name service. A host name which fails to resolve keeps its last known address.
+ * @author shavin
+ */
+public class SeedResolver {
+    private final static Logger log = LoggerFactory.getLogger(SeedResolver.class);
+
+    private final String[] hosts;
+    private final int[] ports;
+    private final boolean hasHostNames;
+    private final AddressCache addressCache;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    // replaced as a whole after every resolution, unresolved seeds are null
+    private volatile InetSocketAddress[] addresses;
+
+    /**
+     * @param seeds the seed nodes in the {@code host:port} format
+     * @param addressCache the address cache of the cluster node, shared with the membership table
+     * @throws IllegalArgumentException if a seed is not in the {@code host:port} format
+     */
+    public SeedResolver(String[] seeds, AddressCache addressCache) {
+        this.hosts = new String[seeds.length];
+        this.ports = new int[seeds.length];
+        this.addressCache = addressCache;
+
+        boolean hasHostNames = false;
+        for (int i = 0; i < seeds.length; i++) {
+            // split at the last colon, so that IPv6 literals keep their own colons
+            int separator = seeds[i].lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Seed " + seeds[i] + " is not in the host:port format.");
+            }
+            hosts[i] = seeds[i].substring(0, separator);
+            try {
+                ports[i] = Integer.parseInt(seeds[i].substring(separator + 1));
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("Seed " + seeds[i] + " has an invalid port.", exception);
+            }
+            hasHostNames |= !NetUtil.isValidIpV4Address(hosts[i]) && !NetUtil.isValidIpV6Address(hosts[i]);
+        }
+        this.hasHostNames = hasHostNames;
+
+        this.addresses = resolve(new InetSocketAddress[seeds.length]);
+    }
+
+    /**
+     * @return the resolved addresses of the seeds in the configured order, null for a seed which was never resolved
+     */
+    public InetSocketAddress[] addresses() {
+        return addresses;
+    }
+
+    /**
+     * @return whether any of the seeds is given as a host name, which may resolve to a different address over time
+     */
+    public boolean hasHostNames() {
+        return hasHostNames;
+    }
+
+    /**
+     * Resolve the host name seeds again on a background thread. Does nothing if all the seeds are literal addresses
+     * or a previous refresh is still running.
+     */
+    public void refreshAsync() {
+        if (!hasHostNames || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        CompletableFuture.runAsync(() -> addresses = resolve(addresses))
+                .whenComplete((result, exception) -> {
+                    if (exception != null) {
+                        log.warn("Failed to refresh the seed addresses", exception);
+                    }
+                    refreshing.set(false);
+                });
+    }
+
+    private InetSocketAddress[] resolve(InetSocketAddress[] previous) {
+        InetSocketAddress[] resolved = new InetSocketAddress[hosts.length];
+        for (int i = 0; i < hosts.length; i++) {
+            InetSocketAddress address = new InetSocketAddress(hosts[i], ports[i]);
+            if (address.isUnresolved()) {
+                log.warn("Could not resolve the seed {}:{}, using its last known address", hosts[i], ports[i]);
+                resolved[i] = previous[i];
+            } else {
+                resolved[i] = addressCache.intern(address).socketAddress();
+            }
+        }
+        return resolved;
+    }
+}
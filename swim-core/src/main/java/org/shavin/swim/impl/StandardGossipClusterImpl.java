@@ -4,16 +4,24 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import org.shavin.swim.api.GossipCluster;
 import org.shavin.swim.api.GossipClusterBuilder;
+import org.shavin.swim.api.ReplicatedMap;
 import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.api.member.MembershipSnapshot;
 import org.shavin.swim.api.event.ClusterEventListener;
 import org.shavin.swim.messages.*;
+import org.shavin.swim.member.AddressCache;
 import org.shavin.swim.member.MemberSelection;
 import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.MembershipTable;
+import org.shavin.swim.member.NodeAddress;
 import org.shavin.swim.member.RandomMemberSelector;
+import org.shavin.swim.member.RandomizedRoundRobinMemberSelector;
 import org.shavin.swim.member.RoundRobinMemberSelector;
 import org.shavin.swim.transport.NettyUdpTransportLayer;
+import org.shavin.swim.api.transport.ByteBufMessageHandler;
 import org.shavin.swim.api.transport.TransportLayer;
 import org.shavin.swim.transport.UDPTransportConfig;
+import org.shavin.swim.util.TimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,6 +29,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -47,7 +56,24 @@ public class StandardGossipClusterImpl implements GossipCluster {
     private final static Logger log = LoggerFactory.getLogger(StandardGossipClusterImpl.class);
 
     private final static int PING_INITIAL_DELAY_MS = 5000;
-    private final static int SAFE_MTU = 1400;
+    private final static int MAX_CACHED_ADDRESSES = 4096;
+    private final static int SEED_REFRESH_INTERVAL_MS = 30_000;
+    // precision and size of the timing wheel of the ack timeouts, one turn of the wheel covers about five seconds
+    public final static int TIMEOUT_TICK_MS = 10;
+    private final static int TIMEOUT_WHEEL_TICKS = 512;
+    // probes pending at the same time, far more than a node sends within its timeouts
+    private final static int PENDING_PROBE_CAPACITY = 1024;
+    // the suspicion timeout is SUSPICION_MULTIPLIER * log10(n) probe intervals once all the expected confirmations
+    // arrived, and SUSPICION_MAX_TIMEOUT_MULTIPLIER times as long without any confirmation
+    private final static int SUSPICION_MULTIPLIER = 4;
+    private final static int SUSPICION_MAX_TIMEOUT_MULTIPLIER = 6;
+    // an intermediary sends a NACK after this fraction of the indirect ping request timeout, so that the NACK reaches
+    // the requester before its own timeout
+    private final static double NACK_TIMEOUT_FRACTION = 0.8;
+    // a node compares its replicated map with a random member every few probe intervals, and answers with at most a
+    // few packets of entries per comparison, the rest of the differences are repaired by the next comparisons
+    private final static int ANTI_ENTROPY_INTERVAL_MULTIPLIER = 5;
+    private final static int MAX_MAP_ENTRIES_PACKETS = 8;
 
     private static enum State {
         NOT_STARTED, STARTED, STOPPED, FAILED
@@ -55,52 +81,125 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
     private final int nodeId;
     private final int port;
-    private final String[] seeds;
+    private final SeedResolver seedResolver;
     private final int pingIntervalInMs;
     private final int pingTimeoutInMs;
     private final int indirectPingRequestTimeoutInMs;
+    private final int indirectProbeCount;
+    private final LocalHealthMultiplier localHealth;
 
-    private State state = State.NOT_STARTED;
+    // volatile, the timeout handlers read it on the thread advancing the timing wheel
+    private volatile State state = State.NOT_STARTED;
 
-    private final List<MemberNode> members = new CopyOnWriteArrayList<>();
-    private final Set<Integer> knownMemberIds = ConcurrentHashMap.newKeySet();
+    private final MembershipTable membershipTable;
+    private final AddressCache addressCache = new AddressCache(MAX_CACHED_ADDRESSES);
     private final List<ClusterEventListener> listeners = new CopyOnWriteArrayList<>();
     private final MembershipEventStore eventStore;
     private CustomDataManager customDataManager;
+    private final PacketBuilder packetBuilder;
+    private final LwwReplicatedMap replicatedMap;
 
     private final TransportLayer transportLayer;
     private final MemberSelection memberSelection;
     private final ThreadFactory threadFactory;
     private ScheduledExecutorService scheduledExecutorService;
+    private boolean ownsScheduledExecutorService;
+    // periodic tasks of this node, cancelled on shutdown when the scheduler outlives the node
+    private final List<ScheduledFuture<?>> periodicTasks = new CopyOnWriteArrayList<>();
+    // removed again on shutdown, otherwise every node started and shut down in the JVM would leak its hook
+    private volatile Thread shutdownHook;
     private final AtomicLong sequenceGenerator = new AtomicLong(0L);
     private final AtomicLong requestIdGenerator = new AtomicLong(0L);
-    private final ByteBufAllocator allocater = ByteBufAllocator.DEFAULT;
-
-    private final Map<Long, Long> pendingAcks = new ConcurrentHashMap<>();
-    private final Map<Long, Long> indirectPendingAcks = new ConcurrentHashMap<>();
+    private final ByteBufAllocator allocater;
+    // scheduler shared with other nodes hosted by the same JVM, used unless the transport runs the protocol itself
+    private final ScheduledExecutorService sharedScheduledExecutorService;
+
+    private final TimingWheel<MemberNode> ackTimeouts;
+    // whether the timing wheel belongs to this node alone, a shared timing wheel is advanced by its owner
+    private final boolean ownsAckTimeouts;
+    // pings waiting for their ack by sequence number, and ping requests waiting for their indirect ack by request id
+    private final PendingProbeTable pendingAcks;
+    private final PendingProbeTable indirectPendingAcks;
+    private final TimingWheel.Handler<MemberNode> ackTimeoutHandler;
+    private final TimingWheel.Handler<MemberNode> indirectAckTimeoutHandler;
+    // suspected members by id, every suspicion times out on the same timing wheel with the suspected incarnation as id
+    private final Map<Integer, Suspicion> suspicions = new ConcurrentHashMap<>();
+    private final TimingWheel.Handler<MemberNode> suspicionTimeoutHandler;
+    // indirect pings relayed for other nodes by requester id and request id, each with the timeout sending its NACK
+    private final Map<Long, RelayedProbe> relayedProbes = new ConcurrentHashMap<>();
+    private final TimingWheel.Handler<MemberNode> nackTimeoutHandler;
+    // incarnation number of the local node, increased to refute a suspicion or failure of the local node
+    private final AtomicInteger localIncarnationNumber = new AtomicInteger(0);
 
     public StandardGossipClusterImpl(int nodeId, int port, String[] seeds, TransportLayer transportLayer, ThreadFactory threadFactory, GossipClusterBuilder.NextMemberSelectionStrategy selectionStrategy,
                                      int pingIntervalInMs, int pingTimeoutInMs, int indirectPingRequestTimeoutInMs) {
+        this(nodeId, port, seeds, transportLayer, threadFactory, selectionStrategy, new MembershipTable(nodeId),
+                pingIntervalInMs, pingTimeoutInMs, indirectPingRequestTimeoutInMs, GossipClusterBuilder.DEFAULT_INDIRECT_PROBE_COUNT,
+                GossipClusterBuilder.DEFAULT_LOCAL_HEALTH_MULTIPLIER_LIMIT);
+    }
+
+    public StandardGossipClusterImpl(int nodeId, int port, String[] seeds, TransportLayer transportLayer, ThreadFactory threadFactory, GossipClusterBuilder.NextMemberSelectionStrategy selectionStrategy,
+                                     MembershipTable membershipTable, int pingIntervalInMs, int pingTimeoutInMs, int indirectPingRequestTimeoutInMs,
+                                     int indirectProbeCount, int localHealthMultiplierLimit) {
+        this(nodeId, port, seeds, transportLayer, threadFactory, selectionStrategy, membershipTable, pingIntervalInMs, pingTimeoutInMs,
+                indirectPingRequestTimeoutInMs, indirectProbeCount, localHealthMultiplierLimit, CustomDataManager.DEFAULT_MAX_DATA_SIZE_IN_BYTES,
+                null, null, null);
+    }
+
+    /**
+     * Create a node which shares its timers and buffers with other nodes hosted by the same JVM.
+     *
+     * @param maxDataSizeInBytes the largest custom data sent or received, larger data than a fragment is fragmented
+     * @param sharedAckTimeouts the timing wheel of the protocol timeouts, advanced by its owner, or null for a timing
+     *                          wheel of this node
+     * @param sharedScheduledExecutorService the scheduler of the protocol rounds, owned by the caller, or null for a
+     *                                       scheduler of this node unless the transport layer provides one
+     * @param allocator the allocator of the outgoing messages, or null for the default allocator
+     */
+    public StandardGossipClusterImpl(int nodeId, int port, String[] seeds, TransportLayer transportLayer, ThreadFactory threadFactory, GossipClusterBuilder.NextMemberSelectionStrategy selectionStrategy,
+                                     MembershipTable membershipTable, int pingIntervalInMs, int pingTimeoutInMs, int indirectPingRequestTimeoutInMs,
+                                     int indirectProbeCount, int localHealthMultiplierLimit, int maxDataSizeInBytes, TimingWheel<MemberNode> sharedAckTimeouts,
+                                     ScheduledExecutorService sharedScheduledExecutorService, ByteBufAllocator allocator) {
         this.nodeId = nodeId;
         this.port = port;
-        this.seeds = seeds;
+        this.membershipTable = membershipTable;
+        // parse and resolve the seeds once, the protocol loop only works with the resolved addresses
+        this.seedResolver = new SeedResolver(seeds, addressCache);
         this.threadFactory = threadFactory;
         this.transportLayer = transportLayer;
 
         this.pingIntervalInMs = pingIntervalInMs;
         this.pingTimeoutInMs = pingTimeoutInMs;
         this.indirectPingRequestTimeoutInMs = indirectPingRequestTimeoutInMs;
-
+        this.indirectProbeCount = indirectProbeCount;
+        this.localHealth = new LocalHealthMultiplier(localHealthMultiplierLimit);
+
+        this.ownsAckTimeouts = sharedAckTimeouts == null;
+        this.ackTimeouts = ownsAckTimeouts ? newTimeoutWheel() : sharedAckTimeouts;
+        this.pendingAcks = new PendingProbeTable(PENDING_PROBE_CAPACITY, ackTimeouts);
+        this.indirectPendingAcks = new PendingProbeTable(PENDING_PROBE_CAPACITY, ackTimeouts);
+        this.ackTimeoutHandler = onProtocolExecutor(this::checkAck);
+        this.indirectAckTimeoutHandler = onProtocolExecutor(this::checkIndirectAck);
+        this.suspicionTimeoutHandler = onProtocolExecutor(this::checkSuspicion);
+        this.nackTimeoutHandler = onProtocolExecutor(this::checkRelayedProbe);
+        this.sharedScheduledExecutorService = sharedScheduledExecutorService;
+        this.allocater = allocator == null ? ByteBufAllocator.DEFAULT : allocator;
+
+        List<MemberNode> members = membershipTable.members();
         if (selectionStrategy == GossipClusterBuilder.NextMemberSelectionStrategy.ROUND_ROBIN_SELECTION_STRATEGY) {
             this.memberSelection = new RoundRobinMemberSelector(members, nodeId);
         } else if (selectionStrategy == GossipClusterBuilder.NextMemberSelectionStrategy.RANDOM_MEMBER_SELECTION_STRATEGY) {
             this.memberSelection = new RandomMemberSelector(members, nodeId);
         } else {
-            this.memberSelection = new RoundRobinMemberSelector(members, nodeId);
+            this.memberSelection = new RandomizedRoundRobinMemberSelector(membershipTable, nodeId);
         }
 
-        this.eventStore = MembershipEventStore.getInstance(members, threadFactory);
-        this.customDataManager = new CustomDataManager(listeners, members);
+        this.eventStore = new MembershipEventStore(members);
+        this.customDataManager = new CustomDataManager(listeners, members, maxDataSizeInBytes);
+        this.packetBuilder = new PacketBuilder(eventStore, customDataManager);
+        // the writes of the replicated map are disseminated as custom data of their own channel
+        this.replicatedMap = new LwwReplicatedMap(nodeId, delta -> customDataManager.broadcastData(CustomUserData.CHANNEL_REPLICATED_MAP, delta));
+        customDataManager.setChannelHandler(CustomUserData.CHANNEL_REPLICATED_MAP, replicatedMap::merge);
     }
 
     public StandardGossipClusterImpl(int nodeId, int port, String[] seeds, TransportLayer transportLayer, int pingIntervalInMs, int pingTimeoutInMs, int indirectPingRequestTimeoutInMs) {
@@ -132,21 +231,42 @@ public class StandardGossipClusterImpl implements GossipCluster {
         }
 
         state =  State.STARTED;
-        // start the scheduler with two threads // one thread for message loop and another thread for timeouts handling
-        scheduledExecutorService = Executors.newScheduledThreadPool(2, threadFactory);
-        customDataManager.start(scheduledExecutorService); // start the custom data manager
 
         // start the transport layer
-        Future<Void> transportLayerFuture = this.transportLayer.start(this.port, this::handlePacket);
+        Future<Void> transportLayerFuture = this.transportLayer.start(this.port, (ByteBufMessageHandler) this::handlePacket);
         try {
             transportLayerFuture.get();
 
+            // when the transport handles every message on a single event loop, run the protocol timers on that same
+            // event loop, so that the packet handling, probe ticks and ack timeouts never run concurrently
+            scheduledExecutorService = transportLayer.protocolExecutor();
+            if (scheduledExecutorService == null) {
+                scheduledExecutorService = sharedScheduledExecutorService;
+            }
+            ownsScheduledExecutorService = scheduledExecutorService == null;
+            if (ownsScheduledExecutorService) {
+                // start the scheduler with two threads // one thread for message loop and another thread for timeouts handling
+                scheduledExecutorService = Executors.newScheduledThreadPool(2, threadFactory);
+            }
+            periodicTasks.add(customDataManager.start(scheduledExecutorService)); // start the custom data manager
+
             // start the seeding process
             seedNodes();
 
             log.info("Starting SWIM protocol execution");
-            // start the scheduler threads at a fixed rate
-            scheduledExecutorService.scheduleAtFixedRate(this::executeSWIMProtocol, PING_INITIAL_DELAY_MS, pingIntervalInMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            // start the protocol rounds, every round schedules the next one after the probe interval scaled by the
+            // local health
+            scheduleProtocolRound(PING_INITIAL_DELAY_MS);
+            // the ack timeouts of all the probes are handled by a single periodic task driving the timing wheel
+            if (ownsAckTimeouts) {
+                periodicTasks.add(scheduledExecutorService.scheduleAtFixedRate(ackTimeouts::advance, TIMEOUT_TICK_MS, TIMEOUT_TICK_MS, TimeUnit.MILLISECONDS));
+            }
+            long antiEntropyIntervalInMs = (long) ANTI_ENTROPY_INTERVAL_MULTIPLIER * pingIntervalInMs;
+            periodicTasks.add(scheduledExecutorService.scheduleWithFixedDelay(this::antiEntropyRound, antiEntropyIntervalInMs, antiEntropyIntervalInMs, TimeUnit.MILLISECONDS));
+            if (seedResolver.hasHostNames()) {
+                // pick up seeds moving to a new address, the lookups run in the background and never block the scheduler
+                periodicTasks.add(scheduledExecutorService.scheduleWithFixedDelay(seedResolver::refreshAsync, SEED_REFRESH_INTERVAL_MS, SEED_REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS));
+            }
 
             // register the shutdown hook
             registerShutdownHook();
@@ -159,29 +279,27 @@ public class StandardGossipClusterImpl implements GossipCluster {
     }
 
     private void seedNodes() {
-        for (String seed : seeds) {
-            String[] seedParts = seed.split(":");
-            InetSocketAddress seedAddress = new InetSocketAddress(seedParts[0], Integer.parseInt(seedParts[1]));
+        for (InetSocketAddress seedAddress : seedResolver.addresses()) {
+            if (seedAddress == null) {
+                // the seed was never resolved, it is retried after the next refresh
+                continue;
+            }
 
             // send a seed ping message to this seed node to bootstrap the cluster
             Message seedPingMessage = PingAckMessageBuilder.seedPingMessages(nodeId, sequenceGenerator.incrementAndGet());
             try {
-                byte[] bytes = messageToBytes(seedPingMessage);
-
-                transportLayer.send(seedAddress, bytes);
+                transportLayer.send(seedAddress, messageToBuffer(seedPingMessage));
             } catch (IOException exception) {
                 log.error(exception.getMessage(), exception);
             }
         }
     }
 
-    private void handlePacket(byte[] data, InetSocketAddress sender) {
-        ByteBuf buffer = null;
+    private void handlePacket(ByteBuf buffer, InetSocketAddress sender) {
+        // remember where the message starts, so that it can be forwarded without serializing it again
+        int messageStartIndex = buffer.readerIndex();
         try {
-            // parse the byte array as a bytebuffer
-            buffer = allocater.buffer(data.length);
-            buffer.writeBytes(data);
-            // deserialize the message
+            // deserialize the message straight from the received buffer
             Message message = Message.Serializer.deserialize(buffer);
 
             // based on the type of the message, execute the appropriate actions
@@ -195,6 +313,10 @@ public class StandardGossipClusterImpl implements GossipCluster {
                         List<CustomUserData> userData = pingMessage.getCustomUserData();
                         // handle the piggyback data using the custom data manager
                         customDataManager.onReceive(userData);
+                        // handle the membership events disseminated by the ping
+                        if (pingMessage.events() != null && !pingMessage.events().isEmpty()) {
+                            handlePiggybackData(pingMessage.events());
+                        }
                     }
                     sendAck(pingMessage, sender);
                     break;
@@ -209,11 +331,10 @@ public class StandardGossipClusterImpl implements GossipCluster {
                     List<MembershipEvent> events = ackPayload.events();
 
                     // check if the source node is known or not previous
-                    if (!knownMemberIds.contains(sourceNodeId)) {
+                    if (!membershipTable.contains(sourceNodeId)) {
                         // if not known, add it to the member list
                         MemberNode newMemberNode = new MemberNode(sourceNodeId, sender, MemberNode.MemberStatus.UP);
-                        members.add(newMemberNode);
-                        knownMemberIds.add(sourceNodeId);
+                        addMember(newMemberNode);
 
                         log.debug("Learned about a new member node with id: {} from the ACK message from {}:{}.", sourceNodeId, sender.getHostString(), sender.getPort());
 
@@ -222,8 +343,12 @@ public class StandardGossipClusterImpl implements GossipCluster {
                         // notify the listeners about the membership event
                         notifyEvents(new MembershipEvent(MembershipEvent.Type.JOIN, newMemberNode));
                     }
-                    // remove the ping message from the pending acks map if it exists
-                    pendingAcks.remove(sequenceNumber);
+                    // complete the pending ping of the ack if it exists, which also cancels its timeout
+                    long roundTripTime = pendingAcks.complete(sequenceNumber, sourceNodeId);
+                    if (roundTripTime >= 0) {
+                        localHealth.onProbeSucceeded();
+                        log.debug("ACK from {} for ping message with sequence number {} in {} us.", sourceNodeId, sequenceNumber, roundTripTime / 1000);
+                    }
 
                     // handle piggyback data if exists
                     if (hasPiggybackData) {
@@ -236,7 +361,7 @@ public class StandardGossipClusterImpl implements GossipCluster {
                     // extract the payload
                     PingRequestMessage pingRequestMessage = (PingRequestMessage) message.payload();
                     // get the target node which requires a ping request
-                    MemberNode targetNode = members.stream().filter(member -> member.id() == pingRequestMessage.targetNodeId()).findFirst().orElse(null);
+                    MemberNode targetNode = membershipTable.get(pingRequestMessage.targetNodeId());
                     if (targetNode == null) {
                         log.error("No member node found for the target node id: " + pingRequestMessage.targetNodeId());
                         return;
@@ -245,15 +370,22 @@ public class StandardGossipClusterImpl implements GossipCluster {
                     // build the indirect ping message with the target node
                     Message indirectPingMessage = IndirectPingAckMessageBuilder.indirectPingMessageFor(nodeId, targetNode.id(), pingRequestMessage.sourceNodeId(), pingRequestMessage.requestId());
 
-                    byte[] bytes = messageToBytes(indirectPingMessage);
-                    this.transportLayer.send(targetNode.address(), bytes);
+                    // send a NACK to the requester unless the target answers in time
+                    MemberNode requesterNode = membershipTable.get(pingRequestMessage.sourceNodeId());
+                    if (requesterNode != null) {
+                        long timeout = ackTimeouts.schedule(nackTimeoutHandler, requesterNode, pingRequestMessage.requestId(),
+                                (long) (indirectPingRequestTimeoutInMs * NACK_TIMEOUT_FRACTION), TimeUnit.MILLISECONDS);
+                        relayedProbes.put(relayKey(requesterNode.id(), pingRequestMessage.requestId()), new RelayedProbe(targetNode.id(), timeout));
+                    }
+
+                    sendToMember(targetNode, indirectPingMessage);
                 }
 
                 case INDIRECT_PING -> {
                     // extract the payload from the INDIRECT PING message
                     IndirectPingAckMessage indirectPingAckMessage = (IndirectPingAckMessage) message.payload();
                     // find the source node to send the ack message as a reply
-                    MemberNode sourceNode = members.stream().filter(member -> member.id() == indirectPingAckMessage.sourceNodeId()).findFirst().orElse(null);
+                    MemberNode sourceNode = membershipTable.get(indirectPingAckMessage.sourceNodeId());
                     if (sourceNode == null) {
                         log.error("No member node found for the source node id: {}", indirectPingAckMessage.sourceNodeId());
                         return;
@@ -261,8 +393,7 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
                     // build an ack from the ping message
                     Message indirectAckMessage = IndirectPingAckMessageBuilder.indirectPingAckMessageFor(indirectPingAckMessage);
-                    byte[] bytes = messageToBytes(indirectAckMessage);
-                    this.transportLayer.send(sourceNode.address(), bytes);
+                    sendToMember(sourceNode, indirectAckMessage);
                 }
 
                 case INDIRECT_ACK -> {
@@ -271,32 +402,56 @@ public class StandardGossipClusterImpl implements GossipCluster {
                     // check if the requestedNodeId is matched or not
                     if (indirectAckMessage.requestedNodeId() == nodeId) {
                         // this is the final destination of the ack message via indirect calling
-                        // remove the indirect ack message from the pending acks map
-                        indirectPendingAcks.remove(indirectAckMessage.requestId());
+                        // complete the pending ping request of the indirect ack, which also cancels its timeout
+                        if (indirectPendingAcks.complete(indirectAckMessage.requestId(), indirectAckMessage.sourceNodeId()) >= 0) {
+                            localHealth.onProbeSucceeded();
+                        }
                     } else {
                         // this is not the final target of the ack message, must be forwarded to the nect hop as it is
+                        // the target answered in time, no NACK is sent for it
+                        RelayedProbe relayedProbe = relayedProbes.remove(relayKey(indirectAckMessage.requestedNodeId(), indirectAckMessage.requestId()));
+                        if (relayedProbe != null) {
+                            ackTimeouts.cancel(relayedProbe.timeout);
+                        }
                         // get the network address of the target node (requested node)
-                        InetSocketAddress targetNodeAddress = members.stream().filter(member -> member.id() == indirectAckMessage.requestedNodeId()).findFirst().orElse(null).address();
-                        if (targetNodeAddress == null) {
+                        MemberNode targetNode = membershipTable.get(indirectAckMessage.requestedNodeId());
+                        if (targetNode == null) {
                             log.error("No member node found for the target node id: {}", indirectAckMessage.requestedNodeId());
                             return;
                         }
-                        // if target address found forward the ack message to the target node
-                        transportLayer.send(targetNodeAddress, messageToBytes(message));
+                        InetSocketAddress targetNodeAddress = targetNode.address();
+                        if (targetNodeAddress == null) {
+                            log.debug("Member node {} was removed, INDIRECT ACK not forwarded.", targetNode.id());
+                            return;
+                        }
+                        // if target address found forward the received ack message to the target node as it is
+                        ByteBuf forwardBuffer = buffer.retainedSlice(messageStartIndex, buffer.writerIndex() - messageStartIndex);
+                        transportLayer.send(targetNodeAddress, forwardBuffer);
                     }
                 }
 
+                case NACK -> {
+                    // an intermediary reports that the target of an indirect probe did not answer it in time
+                    IndirectPingAckMessage nackMessage = (IndirectPingAckMessage) message.payload();
+                    if (!indirectPendingAcks.nack(nackMessage.requestId(), nackMessage.requestedNodeId())) {
+                        log.debug("NACK from {} for request id {} without a pending indirect probe.", nackMessage.sourceNodeId(), nackMessage.requestId());
+                    }
+                    break;
+                }
+
                 case NODE_STATUS -> {
                     NodeStatusMessage nodeStatusMessage = (NodeStatusMessage) message.payload();
                     // find the member with the node if of the message
-                    MemberNode memberNode = members.stream().filter(members -> members.id() == nodeStatusMessage.getNodeId()).findFirst().orElse(null);
+                    MemberNode memberNode = membershipTable.get(nodeStatusMessage.getNodeId());
                     if (memberNode == null) {
                         log.warn("No member node found for the node id: {}, Thus ignore the processing message", nodeStatusMessage.getNodeId());
                         return;
                     }
 
-                    memberNode.setStatus(nodeStatusMessage.getMemberStatus().toMemberStatus());
-                    memberNode.increaseIncarnationNumber();
+                    if (!declareStatus(memberNode, nodeStatusMessage.getMemberStatus().toMemberStatus())) {
+                        // the status is already known, it was reported when it was applied
+                        return;
+                    }
                     // create a membership event of the node status event
                     MembershipEvent newMembershipEvent = new MembershipEvent(nodeStatusMessage.getMemberStatus().toMembershipEventType() ,memberNode);
                     eventStore.enqueueEvent(newMembershipEvent); // add a new event to the event store
@@ -304,6 +459,28 @@ public class StandardGossipClusterImpl implements GossipCluster {
                     break;
                 }
 
+                case MAP_DIGEST -> {
+                    // answer with the entries of the replicated map in which the maps differ
+                    ReplicatedMapMessage digestMessage = (ReplicatedMapMessage) message.payload();
+                    MemberNode sourceNode = membershipTable.get(digestMessage.sourceNodeId());
+                    if (sourceNode == null) {
+                        log.debug("MAP DIGEST from unknown node {}, drop the message", digestMessage.sourceNodeId());
+                        return;
+                    }
+                    sendMapEntries(sourceNode, replicatedMap.entriesDifferingFrom(digestMessage.digest()));
+                    break;
+                }
+
+                case MAP_ENTRIES -> {
+                    ReplicatedMapMessage entriesMessage = (ReplicatedMapMessage) message.payload();
+                    if (!membershipTable.contains(entriesMessage.sourceNodeId())) {
+                        log.debug("MAP ENTRIES from unknown node {}, drop the message", entriesMessage.sourceNodeId());
+                        return;
+                    }
+                    entriesMessage.entries().forEach(replicatedMap::merge);
+                    break;
+                }
+
                 default -> {
                     // invalid message format
                     // ignores the message
@@ -312,25 +489,213 @@ public class StandardGossipClusterImpl implements GossipCluster {
             }
         } catch (IOException exception) {
             log.error(exception.getMessage(), exception);
-        } finally {
-            buffer.release();
+        }
+    }
+
+    /**
+     * Send the digest of the replicated map to a random member, which answers with the entries in which the maps
+     * differ. A node which joined late or missed writes catches up this way.
+     */
+    private void antiEntropyRound() {
+        try {
+            replicatedMap.prune();
+            List<MemberNode> sample = membershipTable.sample(1, member -> member.status() == MemberNode.MemberStatus.UP);
+            if (sample.isEmpty()) {
+                return;
+            }
+            MemberNode member = sample.get(0);
+            Message digestMessage = ReplicatedMapMessage.Builder.digestMessageFor(nodeId, member.id(), replicatedMap.digest());
+            sendToMember(member, digestMessage);
+        } catch (IOException | RuntimeException exception) {
+            // never let an exception escape, otherwise the scheduler silently cancels the periodic task
+            log.error("Failed to execute the anti-entropy round", exception);
+        }
+    }
+
+    private void sendMapEntries(MemberNode member, List<byte[]> entries) throws IOException {
+        // a random part of the differences when they do not fit into the packets, so that every difference is repaired
+        // by one of the next rounds
+        Collections.shuffle(entries);
+        int packets = 0;
+        int index = 0;
+        while (index < entries.size() && packets < MAX_MAP_ENTRIES_PACKETS) {
+            List<byte[]> packetEntries = new ArrayList<>();
+            long packetSize = Message.Serializer.serializedSize(ReplicatedMapMessage.Builder.entriesMessageFor(nodeId, member.id(), packetEntries));
+            while (index < entries.size() && packetSize + Integer.BYTES + entries.get(index).length <= PacketBuilder.MAX_PACKET_SIZE) {
+                packetSize += Integer.BYTES + entries.get(index).length;
+                packetEntries.add(entries.get(index++));
+            }
+            if (packetEntries.isEmpty()) {
+                // an entry too large for a packet is never sent
+                index++;
+                continue;
+            }
+            if (!sendToMember(member, ReplicatedMapMessage.Builder.entriesMessageFor(nodeId, member.id(), packetEntries))) {
+                return;
+            }
+            packets++;
         }
     }
 
     private void checkIndirectAck(MemberNode targetNode, long requestId) {
-        if (indirectPendingAcks.containsKey(requestId)) {
-            // remove the ack from the pending acks
-            indirectPendingAcks.remove(requestId);
+        if (state != State.STARTED) {
+            return;
+        }
+        // an intermediary which did not even send a NACK hints at a slow local node or network rather than at a
+        // failed target
+        int missedNacks = indirectPendingAcks.missedNacks(requestId);
+        // remove the ack from the pending acks, unless it arrived meanwhile
+        if (indirectPendingAcks.expire(requestId)) {
+            for (int i = 0; i < missedNacks; i++) {
+                localHealth.onMissedNack();
+            }
 
-            log.info("No INDIRECT ACK received from {} for indirect ping message with request id {}. Marking the node as failed.", targetNode.id(), requestId);
+            log.info("No INDIRECT ACK received from {} for indirect ping message with request id {}. Suspecting the node.", targetNode.id(), requestId);
 
-            targetNode.setStatus(MemberNode.MemberStatus.DOWN);
-            // add a membership event to the event store
-            targetNode.increaseIncarnationNumber(); // increase the incarnation number of the target node
-            eventStore.enqueueEvent(MembershipEvent.Type.FAILURE, targetNode);
+            // suspect the target node, it is declared failed unless it refutes the suspicion in time
+            suspect(targetNode, targetNode.incarnationNumber(), nodeId);
+        }
+    }
+
+    /**
+     * Send a NACK to the requester of an indirect probe whose target did not answer this node in time.
+     */
+    private void checkRelayedProbe(MemberNode requesterNode, long requestId) {
+        if (state != State.STARTED) {
+            return;
+        }
+        RelayedProbe relayedProbe = relayedProbes.remove(relayKey(requesterNode.id(), requestId));
+        if (relayedProbe == null) {
+            // the target answered meanwhile
+            return;
+        }
+        try {
+            Message nackMessage = IndirectPingAckMessageBuilder.indirectPingNackMessageFor(nodeId, requesterNode.id(), relayedProbe.targetId, requestId);
+            // the timeout may outlive the requester, whose removed view then has no address
+            sendToMember(requesterNode, nackMessage);
+        } catch (IOException exception) {
+            log.error(exception.getMessage(), exception);
         }
     }
 
+    /**
+     * Run a timeout handler on the executor of the protocol of this node. A shared timing wheel is advanced on the
+     * thread of its owner, the expired timeouts are handed over to the executor, so that the packet handling, probe
+     * ticks and ack timeouts of the node still never run concurrently, and the timeouts of many nodes are handled on
+     * the threads of their nodes rather than on a single one.
+     */
+    private TimingWheel.Handler<MemberNode> onProtocolExecutor(TimingWheel.Handler<MemberNode> handler) {
+        if (ownsAckTimeouts) {
+            // the timing wheel of this node is already advanced on the executor
+            return handler;
+        }
+        return (member, id) -> {
+            try {
+                scheduledExecutorService.execute(() -> handler.expired(member, id));
+            } catch (RejectedExecutionException exception) {
+                log.debug("Timeout not handled, the executor is shut down");
+            }
+        };
+    }
+
+    private static long relayKey(int requesterId, long requestId) {
+        // the request ids of a requester only collide after 2^32 requests
+        return ((long) requesterId << 32) | (requestId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Suspect a member, or confirm the suspicion of a member if it is already suspected, on behalf of the origin node.
+     */
+    private void suspect(MemberNode member, int incarnationNumber, int originNodeId) {
+        InetSocketAddress address = member.address();
+        if (address == null) {
+            // the timeouts of a member may outlive it, a removed member is not suspected
+            return;
+        }
+        if (membershipTable.transition(member, MemberNode.MemberStatus.SUSPICIOUS, incarnationNumber)) {
+            log.info("Suspecting member node {} with incarnation number {} on behalf of {}.", member.id(), incarnationNumber, originNodeId);
+
+            // start the suspicion timeout, replacing the suspicion of an older incarnation if any
+            Suspicion suspicion = newSuspicion(incarnationNumber, originNodeId);
+            Suspicion previousSuspicion = suspicions.put(member.id(), suspicion);
+            if (previousSuspicion != null) {
+                ackTimeouts.cancel(previousSuspicion.timeout());
+            }
+            suspicion.setTimeout(ackTimeouts.schedule(suspicionTimeoutHandler, member, incarnationNumber, suspicion.timeoutInMs(), TimeUnit.MILLISECONDS));
+
+            eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.SUSPECT, member.id(), NodeAddress.of(address), incarnationNumber, originNodeId));
+            return;
+        }
+
+        // an independent confirmation of the current suspicion shortens its timeout
+        Suspicion suspicion = suspicions.get(member.id());
+        if (suspicion == null || suspicion.incarnationNumber() != incarnationNumber || !suspicion.confirm(originNodeId)) {
+            return;
+        }
+        // reschedule the timeout, unless it is already expiring
+        if (ackTimeouts.cancel(suspicion.timeout())) {
+            suspicion.setTimeout(ackTimeouts.schedule(suspicionTimeoutHandler, member, incarnationNumber, suspicion.remainingInMs(), TimeUnit.MILLISECONDS));
+        }
+        // disseminate the confirmation, so that the other nodes count it too
+        eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.SUSPECT, member.id(), NodeAddress.of(address), incarnationNumber, originNodeId));
+    }
+
+    private Suspicion newSuspicion(int incarnationNumber, int originNodeId) {
+        int memberCount = membershipTable.size() + 1;
+        // the confirmations come from the other nodes probing the member, at most the indirect probe count of them
+        int expectedConfirmations = Math.max(Math.min(indirectProbeCount, memberCount - 2), 0);
+        long minTimeoutInMs = (long) (SUSPICION_MULTIPLIER * Math.max(1.0, Math.log10(memberCount)) * pingIntervalInMs);
+        return new Suspicion(incarnationNumber, originNodeId, expectedConfirmations, minTimeoutInMs,
+                minTimeoutInMs * SUSPICION_MAX_TIMEOUT_MULTIPLIER);
+    }
+
+    private void checkSuspicion(MemberNode member, long incarnationNumber) {
+        if (state != State.STARTED) {
+            return;
+        }
+        // ignore the timeout of a suspicion which was refuted or replaced meanwhile
+        Suspicion suspicion = suspicions.get(member.id());
+        if (suspicion == null || suspicion.incarnationNumber() != incarnationNumber || !suspicions.remove(member.id(), suspicion)) {
+            return;
+        }
+
+        // mark the member as failed, unless it was refuted or already reported meanwhile, or removed, in which case its
+        // view has no address for the event
+        if (member.address() != null && membershipTable.transition(member, MemberNode.MemberStatus.DOWN, (int) incarnationNumber)) {
+            log.info("Suspicion of member node {} timed out after {} confirmations. Marking the node as failed.", member.id(), suspicion.confirmations());
+
+            MembershipEvent failureEvent = new MembershipEvent(MembershipEvent.Type.FAILURE, member);
+            eventStore.enqueueEvent(failureEvent);
+            notifyEvents(failureEvent);
+        }
+    }
+
+    private void clearSuspicion(int memberId) {
+        Suspicion suspicion = suspicions.remove(memberId);
+        if (suspicion != null) {
+            ackTimeouts.cancel(suspicion.timeout());
+        }
+    }
+
+    /**
+     * Refute a suspicion or failure of the local node with the given incarnation number, by disseminating that the
+     * local node is alive with a newer incarnation number.
+     */
+    private void refute(int incarnationNumber) {
+        if (incarnationNumber < localIncarnationNumber.get()) {
+            // already refuted
+            return;
+        }
+        // another node suspects or declared the local node failed, likely because the local node is too slow to
+        // answer its probes in time
+        localHealth.onRefutation();
+        int refutingIncarnationNumber = localIncarnationNumber.updateAndGet(current -> Math.max(current, incarnationNumber) + 1);
+        log.info("Refuting the suspicion of the local node with incarnation number {}.", refutingIncarnationNumber);
+
+        // the other nodes know the local node by its id, the local node does not know its own external address
+        eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.ALIVE, nodeId, NodeAddress.ofIPv4(0, port), refutingIncarnationNumber));
+    }
+
     private void sendAck(PingAckMessage pingMessage, InetSocketAddress senderAddress) {
         // create an appropriate ack message from the ping message
         Message replyAckMessage;
@@ -339,40 +704,37 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
             // Add the source member node to the member list
             MemberNode newMemberNode = new MemberNode(pingMessage.sourceNodeId(), senderAddress, MemberNode.MemberStatus.UP);
-            members.add(newMemberNode);
-            knownMemberIds.add(pingMessage.sourceNodeId());
+            addMember(newMemberNode);
 
             log.info("Learned about a new member node with id: " + pingMessage.sourceNodeId() + " from the seed ping message from " + senderAddress.getHostString() + ":" + senderAddress.getPort() + ".");
 
             eventStore.enqueueEvent(MembershipEvent.Type.JOIN, newMemberNode);
             notifyEvents(new MembershipEvent(MembershipEvent.Type.JOIN, newMemberNode));
         } else {
-            // check if the source node is dead previously
-            MemberNode sourceNode = members.stream().filter(member -> member.id() == pingMessage.sourceNodeId()).findFirst().orElse(null);
-            if (sourceNode != null && !sourceNode.isHealthy()) {
-                // then mark the source node as alive
-                sourceNode.setStatus(MemberNode.MemberStatus.UP);
-                sourceNode.increaseIncarnationNumber(); // increase the incarnation number of the source node
-                // create a membership event for propagate that information to the other nodes in the cluster
-                eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.RESTORE, sourceNode));
-                // notify the listeners about the membership event
-                notifyEvents(new MembershipEvent(MembershipEvent.Type.RESTORE, sourceNode));
+            // check if the source node is suspected or dead previously
+            MemberNode sourceNode = membershipTable.get(pingMessage.sourceNodeId());
+            if (sourceNode != null && sourceNode.address() != null) {
+                // only the source node itself may refute, remind it of its status with the ack, in case the event
+                // already left the buffer before reaching it
+                long sourceState = sourceNode.state();
+                int incarnationNumber = MemberNode.incarnationNumberOf(sourceState);
+                NodeAddress sourceAddress = NodeAddress.of(sourceNode.address());
+                if (MemberNode.statusOf(sourceState) == MemberNode.MemberStatus.SUSPICIOUS) {
+                    eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.SUSPECT, sourceNode.id(), sourceAddress, incarnationNumber, nodeId));
+                } else if (MemberNode.statusOf(sourceState) == MemberNode.MemberStatus.DOWN) {
+                    eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.FAILURE, sourceNode.id(), sourceAddress, incarnationNumber));
+                }
             }
             // create an ACK message for the ping message
             replyAckMessage = PingAckMessageBuilder.pingAckMessageForNode(pingMessage);
         }
 
-        List<MembershipEvent> eventsToPiggyback = eventStore.getRecentEventsAndIncrement();
-        if (!eventsToPiggyback.isEmpty()) {
-            replyAckMessage = PingAckMessageBuilder.attachPiggybacks((PingAckMessage) replyAckMessage.payload(), eventsToPiggyback);
-        }
+        // fill the rest of the packet with membership events
+        replyAckMessage = packetBuilder.ackMessage(replyAckMessage);
 
         try {
-            // serialize the message into a byte array
-            byte[] bytes = messageToBytes(replyAckMessage);
-
-            // send it to the transport
-            transportLayer.send(senderAddress, bytes);
+            // serialize the message and send it to the transport
+            transportLayer.send(senderAddress, messageToBuffer(replyAckMessage));
 
         } catch (IOException exception) {
             log.error(exception.getMessage(), exception);
@@ -384,9 +746,13 @@ public class StandardGossipClusterImpl implements GossipCluster {
             // update the memberlist according to the events received
             if (event.type() == MembershipEvent.Type.JOIN) {
                 // check of the member is in the local member list and add if its not
-                if (!knownMemberIds.contains(event.nodeId())) {
-                    members.add(new MemberNode(event.nodeId(), event.socketAddress(), MemberNode.MemberStatus.UP));
-                    knownMemberIds.add(event.nodeId());
+                if (!membershipTable.contains(event.nodeId())) {
+                    // share the address and its socket address with the other references to the same member
+                    NodeAddress address = addressCache.intern(event.address());
+                    if (!addMember(new MemberNode(event.nodeId(), address.socketAddress(), MemberNode.MemberStatus.UP))) {
+                        // the JOIN event of the local node itself
+                        return;
+                    }
 
                     // add to the event store
                     eventStore.enqueueEvent(event);
@@ -395,67 +761,119 @@ public class StandardGossipClusterImpl implements GossipCluster {
                 }
             } else if (event.type() == MembershipEvent.Type.LEAVE) {
                 // remove the member from the member list if exists
-                boolean removed = members.removeIf(member -> member.id() == event.nodeId());
-                // remove the member id from the known member ids set
-                knownMemberIds.remove(event.nodeId());
+                boolean removed = membershipTable.remove(event.nodeId()) != null;
+                addressCache.evict(event.address());
 
                 // notify the listeners if the member is removed from the member list
                  if (removed) {
+                     clearSuspicion(event.nodeId());
                      notifyEvents(event);
                      eventStore.enqueueEvent(event);
                  }
             } else if (event.type() == MembershipEvent.Type.FAILURE) {
+                if (event.nodeId() == nodeId) {
+                    // another node declared the local node failed
+                    refute(event.incarnationNumber());
+                    return;
+                }
                 // mark as node is failed if the node is in the local member list
-                members.stream().filter(member -> member.id() == event.nodeId()).findFirst()
+                Optional.ofNullable(membershipTable.get(event.nodeId()))
+                        // a member removed meanwhile has no address for the event
+                        .filter(member -> member.address() != null)
                         .ifPresent(member -> {
-                            if (member.status() == MemberNode.MemberStatus.DOWN) {
+                            if (!membershipTable.transition(member, MemberNode.MemberStatus.DOWN, event.incarnationNumber())) {
+                                // an outdated or duplicate event
                                 return;
                             }
-                            member.setStatus(MemberNode.MemberStatus.DOWN);
-                            member.increaseIncarnationNumber();
+                            clearSuspicion(member.id());
                             eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.FAILURE, member));
                             notifyEvents(event); // notify the listeners about the failure
                         });
             } else if (event.type() == MembershipEvent.Type.RESTORE) {
-                members.stream().filter(member -> member.id() == event.nodeId()).findFirst()
+                Optional.ofNullable(membershipTable.get(event.nodeId()))
+                        // a member removed meanwhile has no address for the event
+                        .filter(member -> member.address() != null)
                         .ifPresent(member -> {
-                            if (member.status() == MemberNode.MemberStatus.UP) {
+                            if (!membershipTable.transition(member, MemberNode.MemberStatus.UP, event.incarnationNumber())) {
                                 return;
                             }
-                            member.setStatus(MemberNode.MemberStatus.UP);
-                            member.increaseIncarnationNumber();
+                            clearSuspicion(member.id());
                             eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.RESTORE, member));
                             notifyEvents(event);
                         });
+            } else if (event.type() == MembershipEvent.Type.SUSPECT) {
+                if (event.nodeId() == nodeId) {
+                    // another node suspects the local node
+                    refute(event.incarnationNumber());
+                    return;
+                }
+                Optional.ofNullable(membershipTable.get(event.nodeId()))
+                        .ifPresent(member -> suspect(member, event.incarnationNumber(), event.originNodeId()));
+            } else if (event.type() == MembershipEvent.Type.ALIVE) {
+                if (event.nodeId() == nodeId) {
+                    // a newer incarnation of the local node, e.g. from before a restart, must be refuted from above it
+                    localIncarnationNumber.accumulateAndGet(event.incarnationNumber(), Math::max);
+                    return;
+                }
+                Optional.ofNullable(membershipTable.get(event.nodeId()))
+                        // a member removed meanwhile has no address for the event
+                        .filter(member -> member.address() != null)
+                        .ifPresent(member -> {
+                            boolean wasDown = member.status() == MemberNode.MemberStatus.DOWN;
+                            // the member refuted its suspicion or failure with a newer incarnation number
+                            if (!membershipTable.transition(member, MemberNode.MemberStatus.UP, event.incarnationNumber())) {
+                                return;
+                            }
+                            clearSuspicion(member.id());
+                            eventStore.enqueueEvent(event);
+                            if (wasDown) {
+                                notifyEvents(new MembershipEvent(MembershipEvent.Type.RESTORE, member));
+                            }
+                        });
             }
         });
     }
 
-    private byte[] messageToBytes(Message message) throws IOException {
-        ByteBuf buffer = null;
+    /**
+     * Send a message to a member. A view of a member removed from the off-heap member store has no address anymore,
+     * the message is not sent to it then.
+     *
+     * @return true if the message was sent, false if the member has no address
+     */
+    private boolean sendToMember(MemberNode memberNode, Message message) throws IOException {
+        InetSocketAddress address = memberNode.address();
+        if (address == null) {
+            log.debug("Member node {} was removed, {} message not sent.", memberNode.id(), message.header().type());
+            return false;
+        }
+        transportLayer.send(address, messageToBuffer(message));
+        return true;
+    }
+
+    /**
+     * Serialize the given message into a pooled io buffer. The ownership of the returned buffer is handed to the
+     * caller, which normally passes it straight to the transport layer that releases it after the write.
+     */
+    private ByteBuf messageToBuffer(Message message) throws IOException {
+        // allocate a new buffer for serialize the message
+        ByteBuf buffer = allocater.ioBuffer((int) Message.Serializer.serializedSize(message));
         try {
-            // allocate a new buffer for serialize the message
-            buffer = allocater.buffer((int) Message.Serializer.serializedSize(message));
             // serialize the message into the buffer
             Message.Serializer.serialize(message, buffer);
-            // get the byte array representation of the buffer
-            byte[] bytes;
-            bytes = new byte[buffer.readableBytes()];
-            buffer.getBytes(buffer.readerIndex(), bytes);
-            return bytes;
-        } finally {
-            if (buffer != null) {
-                buffer.release();
-            }
+            return buffer;
+        } catch (IOException | RuntimeException exception) {
+            buffer.release();
+            throw exception;
         }
     }
 
     private boolean isSeedingFinished() {
         // check whether all the nodes in the seed list are known or not
-        for (String seed : seeds) {
-            String[] seedParts = seed.split(":");
-            InetSocketAddress seedAddress = new InetSocketAddress(seedParts[0], Integer.parseInt(seedParts[1]));
-            MemberNode memberNode = members.stream().filter(member -> member.address().equals(seedAddress)).findFirst().orElse(null);
+        for (InetSocketAddress seedAddress : seedResolver.addresses()) {
+            if (seedAddress == null) {
+                return false;
+            }
+            MemberNode memberNode = membershipTable.getByAddress(seedAddress);
 
             if (memberNode == null) {
                 return false;
@@ -465,86 +883,152 @@ public class StandardGossipClusterImpl implements GossipCluster {
         return true;
     }
 
+    private void scheduleProtocolRound(long delayInMs) {
+        try {
+            scheduledExecutorService.schedule(this::runProtocolRound, delayInMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException exception) {
+            // the executor is shut down together with the cluster
+            log.debug("Protocol round not scheduled, the executor is shut down");
+        }
+    }
+
+    private void runProtocolRound() {
+        try {
+            executeSWIMProtocol();
+        } finally {
+            if (state == State.STARTED) {
+                scheduleProtocolRound(localHealth.scale(pingIntervalInMs));
+            }
+        }
+    }
+
     private void executeSWIMProtocol() {
         if (!(this.state == State.STARTED)) { // return if the cluster is not started
             return;
         }
 
-        if (members.isEmpty() || !isSeedingFinished()) {
+        if (membershipTable.isEmpty() || !isSeedingFinished()) {
             // again trigger a seeding process if the cluster is not started or the member list is empty
             seedNodes();
             return;
         }
-        // selects a member from the list of members based on the member selection strategy
-        MemberNode selectedNode = memberSelection.selectNext();
 
-        // get the next sequence number for the ping message
-        long sequenceNumber = sequenceGenerator.incrementAndGet();
-        // send a PING message to that member node
-        Message pingMessage = PingAckMessageBuilder.pingMessageForNode(nodeId, selectedNode.id(), sequenceNumber);
-        // add custom user data payloads if exists to the ping message
-        PingAckMessage payload = (PingAckMessage) pingMessage.payload();
-        pingMessage = PingAckMessageBuilder.attachCustomUserDataPiggyBacks(payload, customDataManager.getDataToSend());
-        payload = (PingAckMessage) pingMessage.payload();
+        if (membershipTable.count(MemberNode.MemberStatus.UP) + membershipTable.count(MemberNode.MemberStatus.SUSPICIOUS) == 0) {
+            // nothing to probe in this round, the member selection strategies expect at least one member to probe
+            return;
+        }
 
         try {
-            byte[] bytes = messageToBytes(pingMessage);
-
-            transportLayer.send(selectedNode.address(), bytes);
-            // put the sequence number of the ping message into the pending acks map so that we can track the ack message later
-            pendingAcks.put(payload.sequenceNumber(), System.currentTimeMillis());
-
-            // schedule an event to remove the ping message from the pending acks map after a timeout period
-            scheduledExecutorService.schedule(() -> checkAck(selectedNode, sequenceNumber), pingTimeoutInMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+            MemberNode selectedNode = memberSelection.selectNext();
+            if (selectedNode != null) {
+                probe(selectedNode);
+            }
+        } catch (RuntimeException exception) {
+            // never let an exception escape, otherwise the scheduler silently cancels the periodic protocol task
+            log.error("Failed to execute the SWIM protocol round", exception);
+        }
+    }
 
+    private void probe(MemberNode selectedNode) {
+        // get the next sequence number for the ping message
+        long sequenceNumber = sequenceGenerator.incrementAndGet();
+        // send a PING message to that member node, disseminating the membership events and the custom user data
+        Message pingMessage = packetBuilder.pingMessage(nodeId, selectedNode.id(), sequenceNumber);
+
+        // schedule the timeout and register the sequence number of the ping message as a pending ack before
+        // sending it, otherwise an ack handled on another thread before the put would leave a stale entry behind and
+        // the node would be suspected
+        long timeout = ackTimeouts.schedule(ackTimeoutHandler, selectedNode, sequenceNumber, localHealth.scale(pingTimeoutInMs), TimeUnit.MILLISECONDS);
+        pendingAcks.register(sequenceNumber, selectedNode.id(), timeout);
+        try {
+            if (!sendToMember(selectedNode, pingMessage)) {
+                pendingAcks.remove(sequenceNumber);
+            }
         } catch (IOException exception) {
+            pendingAcks.remove(sequenceNumber);
             log.error(exception.getMessage(), exception);
         }
     }
 
     private void checkAck(MemberNode targetNode, long sequenceNumber) {
-        if (pendingAcks.containsKey(sequenceNumber)) {
-            // remove the ack from the pending acks
-            pendingAcks.remove(sequenceNumber);
-
-            log.info("No ACK received from " + targetNode.id() + " for ping message with sequence number " + sequenceNumber + ". Marking the node as suspicious.");
+        if (state != State.STARTED) {
+            return;
+        }
+        // remove the ack from the pending acks, unless it arrived meanwhile
+        if (pendingAcks.expire(sequenceNumber)) {
+            localHealth.onProbeFailed();
 
-            // mark the targeted node as suspicious
-            targetNode.setStatus(MemberNode.MemberStatus.SUSPICIOUS);
+            log.info("No ACK received from " + targetNode.id() + " for ping message with sequence number " + sequenceNumber + ". Probing the node indirectly.");
 
-            // get another k nodes from the member list for PING REQUEST messages
-            List<MemberNode> selectedMemberNodesForPingRequests = getHealthyNodes(3);
+            // the node is only suspected when the indirect probes fail as well
+            // pick k other healthy nodes at random for PING REQUEST messages, so that the indirect probes are spread
+            // over the whole cluster
+            List<MemberNode> selectedMemberNodesForPingRequests = membershipTable.sample(indirectProbeCount,
+                    member -> member.isHealthy() && member.id() != targetNode.id() && member.id() != nodeId);
 
             // get the next request id for the ping request message
             long requestId = requestIdGenerator.incrementAndGet();
-            // add the indirect ping message to the indirect pending ack map for tracking
-            indirectPendingAcks.put(requestId, System.currentTimeMillis());
-            // send each node a PING REQUEST MESSAGE marking the targeted node as suspicious
+            // register the ping request as a pending indirect ack for tracking, together with the timeout
+            // which suspects the node if no indirect ack arrives in time, every intermediary is expected to answer
+            // with either an indirect ack or a NACK
+            long timeout = ackTimeouts.schedule(indirectAckTimeoutHandler, targetNode, requestId,
+                    localHealth.scale(indirectPingRequestTimeoutInMs), TimeUnit.MILLISECONDS);
+            indirectPendingAcks.register(requestId, targetNode.id(), timeout, selectedMemberNodesForPingRequests.size());
+            // send each node a PING REQUEST MESSAGE for the targeted node
             selectedMemberNodesForPingRequests.forEach(node -> {
                 this.sendPingRequestMessages(node, targetNode, requestId);
             });
+        }
+    }
 
-            // also create a scheduled task for remove the pending ack from the state if the timeout passes
-            scheduledExecutorService.schedule(() -> this.checkIndirectAck(targetNode, requestId),
-                    indirectPingRequestTimeoutInMs, java.util.concurrent.TimeUnit.MILLISECONDS);
+    /**
+     * @return a new timing wheel for the protocol timeouts of one node, or of all the nodes sharing it
+     */
+    public static TimingWheel<MemberNode> newTimeoutWheel() {
+        return new TimingWheel<>(TIMEOUT_TICK_MS, TimeUnit.MILLISECONDS, TIMEOUT_WHEEL_TICKS, 64);
+    }
+
+    /**
+     * Add a new member to the membership table and hand it to the member selection.
+     *
+     * @return true if the member was added, false if it is already known or is the local node
+     */
+    private boolean addMember(MemberNode memberNode) {
+        if (!membershipTable.add(memberNode)) {
+            return false;
+        }
+        // the table may keep a view of the member instead of the given member node
+        MemberNode addedMemberNode = membershipTable.get(memberNode.id());
+        if (addedMemberNode != null) {
+            memberSelection.memberAdded(addedMemberNode);
         }
+        return true;
     }
 
-    private List<MemberNode> getHealthyNodes(int count) {
-        // randomly get a number of healthy nodes from the member nodes
-        // filter out the healthy nodes
-        return members.stream().filter(memberNode -> {
-            return memberNode.isHealthy() && memberNode.id() != nodeId;
-        }).limit(count).toList();
+    /**
+     * Apply a status declared for a member by the member itself. A member declaring itself alive gets a new
+     * incarnation number, so that it overrides the suspicion or failure known for its current incarnation.
+     *
+     * @return true if the status was applied by this call and must be reported
+     */
+    private boolean declareStatus(MemberNode memberNode, MemberNode.MemberStatus status) {
+        long state = memberNode.state();
+        int incarnationNumber = MemberNode.incarnationNumberOf(state);
+        if (status == MemberNode.MemberStatus.UP) {
+            if (MemberNode.statusOf(state) == MemberNode.MemberStatus.UP) {
+                return false;
+            }
+            incarnationNumber++;
+        }
+        return membershipTable.transition(memberNode, status, incarnationNumber);
     }
 
     private void sendPingRequestMessages(MemberNode senderNode, MemberNode targetNode, long requestId) {
         try {
             // create a PING REQUEST message with the target node id and the request id
             Message pingRequestMessage = PingRequestMessage.Builder.pingRequestMessageFor(nodeId, senderNode.id(), targetNode.id(), requestId);
-            byte[] bytes = messageToBytes(pingRequestMessage);
             // send the PING REQUEST message to the sender node
-            transportLayer.send(senderNode.address(), bytes);
+            sendToMember(senderNode, pingRequestMessage);
         } catch (IOException exception) {
             log.error(exception.getMessage(), exception);
         }
@@ -552,7 +1036,7 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
     private void notifyEvents(MembershipEvent event) {
         // find the associated member node
-        MemberNode memberNode = members.stream().filter(member -> member.id() == event.nodeId()).findFirst().orElse(null);
+        MemberNode memberNode = membershipTable.get(event.nodeId());
         if (memberNode == null) {
             log.error("No member node found for the event with node id: " + event.nodeId());
         }
@@ -572,8 +1056,7 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
     private void sendNodeStatus(MemberNode memberNode, NodeStatusMessage.Status memberStatus) throws IOException {
         Message nodeStatusMessage = NodeStatusMessage.Builder.toNodeStatusMessage(nodeId, memberNode.id(), memberStatus);
-        byte[] bytes = messageToBytes(nodeStatusMessage);
-        this.transportLayer.send(memberNode.address(), bytes);
+        sendToMember(memberNode, nodeStatusMessage);
     }
 
     /**
@@ -583,14 +1066,14 @@ public class StandardGossipClusterImpl implements GossipCluster {
      * other nodes having to wait for the normal mechanism
      */
     private void registerShutdownHook() {
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            if (members.isEmpty()) {
+        shutdownHook = new Thread(() -> {
+            if (membershipTable.isEmpty()) {
                 this.shutdown();
                 return;
             }
 
             // select the members to send the LEAVE status
-            MemberNode memberToNotify = this.members.get(0);
+            MemberNode memberToNotify = membershipTable.members().get(0);
 
             try {
                 // send the LEAVE message to selected nodes
@@ -602,7 +1085,22 @@ public class StandardGossipClusterImpl implements GossipCluster {
                 this.shutdown();
             }
 
-        }));
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private void removeShutdownHook() {
+        Thread shutdownHook = this.shutdownHook;
+        // the hook can not remove itself while it runs
+        if (shutdownHook == null || Thread.currentThread() == shutdownHook) {
+            return;
+        }
+        this.shutdownHook = null;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException exception) {
+            // the JVM is already shutting down, the hook runs anyway
+        }
     }
 
     @Override
@@ -611,20 +1109,43 @@ public class StandardGossipClusterImpl implements GossipCluster {
         customDataManager.broadcastData(data);
     }
 
+    @Override
+    public ReplicatedMap replicatedMap() {
+        return replicatedMap;
+    }
+
     @Override
     public void shutdown() {
+        removeShutdownHook();
         // stop the scheduler service
         try {
-            scheduledExecutorService.shutdown();
+            // the executor of the transport layer is shut down by the transport layer itself, and a shared executor by
+            // its owner, which keeps running the other nodes
+            if (scheduledExecutorService != null && ownsScheduledExecutorService) {
+                scheduledExecutorService.shutdown();
+            }
+            periodicTasks.forEach(task -> task.cancel(false));
+            // the protocol rounds stop rescheduling themselves once the node is stopped
+            this.state = State.STOPPED;
             // stop the transport layer
             this.transportLayer.stop();
-            this.state = State.STOPPED;
+            // a shared timing wheel outlives the node, none of its timeouts may fire after the shutdown
+            cancelTimeouts();
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             this.state = State.FAILED;
         }
     }
 
+    private void cancelTimeouts() {
+        pendingAcks.removeAll();
+        indirectPendingAcks.removeAll();
+        suspicions.values().forEach(suspicion -> ackTimeouts.cancel(suspicion.timeout()));
+        suspicions.clear();
+        relayedProbes.values().forEach(relayedProbe -> ackTimeouts.cancel(relayedProbe.timeout));
+        relayedProbes.clear();
+    }
+
     @Override
     public int getNodeId() {
         return nodeId;
@@ -632,7 +1153,17 @@ public class StandardGossipClusterImpl implements GossipCluster {
 
     @Override
     public List<MemberNode> getMembers() {
-        return Collections.unmodifiableList(members);
+        return membershipTable.members();
+    }
+
+    @Override
+    public MembershipSnapshot getMembershipSnapshot() {
+        return membershipTable.snapshot();
+    }
+
+    @Override
+    public MembershipSnapshot awaitMembershipChange(long sinceEpoch, long timeout, TimeUnit unit) throws InterruptedException {
+        return membershipTable.awaitChange(sinceEpoch, timeout, unit);
     }
 
     @Override
@@ -640,8 +1171,26 @@ public class StandardGossipClusterImpl implements GossipCluster {
         listeners.add(listener);
     }
 
+    @Override
+    public int getLocalHealthMultiplier() {
+        return localHealth.value();
+    }
+
     @Override
     public void simulateCrash() {
         this.transportLayer.stop();
     }
+
+    /**
+     * An indirect ping relayed for another node, waiting for the ack of its target.
+     */
+    private static class RelayedProbe {
+        private final int targetId;
+        private final long timeout;
+
+        RelayedProbe(int targetId, long timeout) {
+            this.targetId = targetId;
+            this.timeout = timeout;
+        }
+    }
 }
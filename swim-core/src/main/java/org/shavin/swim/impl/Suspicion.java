@@ -0,0 +1,97 @@
+package org.shavin.swim.impl;
+
+import org.shavin.swim.util.TimingWheel;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suspicion of a member, which is declared failed unless it refutes the suspicion before the suspicion timeout.
+ *
+ * The timeout follows the Lifeguard extension of SWIM: it starts at a maximum and shrinks towards a minimum with every
+ * independent confirmation, i.e. a suspicion of the same incarnation of the member originating from another node,
+ * logarithmically in the number of confirmations up to the number of expected confirmations. A member suspected by a
+ * single node, maybe a slow one, therefore has plenty of time to refute, while a member suspected by many nodes is
+ * declared failed quickly.
+ * @author shavin
+ */
+public class Suspicion {
+
+    private final int incarnationNumber;
+    private final int expectedConfirmations;
+    private final long minTimeoutInMs;
+    private final long maxTimeoutInMs;
+    private final long startNanos;
+    // the nodes the suspicion originated from, the first one is not a confirmation
+    private final Set<Integer> originNodeIds = new HashSet<>();
+
+    private long timeout = TimingWheel.NO_TIMEOUT;
+
+    /**
+     * @param incarnationNumber the suspected incarnation of the member
+     * @param originNodeId the node the suspicion originated from
+     * @param expectedConfirmations the number of confirmations after which the timeout reaches its minimum
+     * @param minTimeoutInMs the timeout of a suspicion with all the expected confirmations
+     * @param maxTimeoutInMs the timeout of a suspicion without confirmations
+     */
+    public Suspicion(int incarnationNumber, int originNodeId, int expectedConfirmations, long minTimeoutInMs, long maxTimeoutInMs) {
+        this.incarnationNumber = incarnationNumber;
+        this.expectedConfirmations = Math.max(expectedConfirmations, 0);
+        this.minTimeoutInMs = minTimeoutInMs;
+        this.maxTimeoutInMs = Math.max(maxTimeoutInMs, minTimeoutInMs);
+        this.startNanos = System.nanoTime();
+        this.originNodeIds.add(originNodeId);
+    }
+
+    public int incarnationNumber() {
+        return incarnationNumber;
+    }
+
+    /**
+     * Record a suspicion of the same incarnation originating from a node.
+     *
+     * @return true if it is a new confirmation which shortened the timeout
+     */
+    public synchronized boolean confirm(int originNodeId) {
+        if (confirmations() >= expectedConfirmations) {
+            return false;
+        }
+        return originNodeIds.add(originNodeId);
+    }
+
+    public synchronized int confirmations() {
+        return originNodeIds.size() - 1;
+    }
+
+    /**
+     * @return the timeout of the suspicion from its start, for the confirmations received so far
+     */
+    public synchronized long timeoutInMs() {
+        if (expectedConfirmations == 0) {
+            return minTimeoutInMs;
+        }
+        double fraction = Math.log(confirmations() + 1) / Math.log(expectedConfirmations + 1);
+        long timeout = (long) (maxTimeoutInMs - fraction * (maxTimeoutInMs - minTimeoutInMs));
+        return Math.max(timeout, minTimeoutInMs);
+    }
+
+    /**
+     * @return the time left until the suspicion times out, zero if it is overdue
+     */
+    public long remainingInMs() {
+        long elapsedInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return Math.max(timeoutInMs() - elapsedInMs, 0);
+    }
+
+    /**
+     * @return the handle of the scheduled timeout of the suspicion
+     */
+    public synchronized long timeout() {
+        return timeout;
+    }
+
+    public synchronized void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+}
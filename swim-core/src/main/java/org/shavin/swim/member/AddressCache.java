@@ -0,0 +1,57 @@
+package org.shavin.swim.member;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache which interns the node addresses known to a cluster node, so that all the members and events
+ * referring to the same address share one {@link NodeAddress} instance and its cached socket address.
+ * Once the cache is full, new addresses are returned as they are without being interned.
+ * All the methods are thread-safe.
+ * @author shavin
+ */
+public class AddressCache {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<NodeAddress, NodeAddress> addresses = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize the maximum number of interned addresses
+     */
+    public AddressCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the interned instance equal to the given address
+     */
+    public NodeAddress intern(NodeAddress address) {
+        NodeAddress interned = addresses.get(address);
+        if (interned != null) {
+            return interned;
+        }
+        if (addresses.size() >= maxSize) {
+            return address;
+        }
+        interned = addresses.putIfAbsent(address, address);
+        return interned == null ? address : interned;
+    }
+
+    /**
+     * @return the interned node address of the given resolved socket address
+     */
+    public NodeAddress intern(InetSocketAddress socketAddress) {
+        return intern(NodeAddress.of(socketAddress));
+    }
+
+    /**
+     * Remove the address from the cache, e.g. once no member refers to it anymore.
+     */
+    public void evict(NodeAddress address) {
+        addresses.remove(address);
+    }
+
+    public int size() {
+        return addresses.size();
+    }
+}
@@ -0,0 +1,68 @@
+package org.shavin.swim.member;
+
+import org.shavin.swim.api.member.MemberNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Member Sampler
+ * Picks distinct members uniformly at random, e.g. the members asked to probe a suspected member indirectly, so that
+ * the indirect probes of the cluster are spread over all the members instead of the first ones of the member list.
+ *
+ * The sampler walks a random permutation of the member array which is generated lazily by a Fisher-Yates shuffle,
+ * only the swapped positions are remembered. Drawing k members therefore costs O(k) when most members are eligible,
+ * and never more than one look at every member when few of them are.
+ * @author shavin
+ */
+public class MemberSampler {
+
+    private MemberSampler() {
+    }
+
+    /**
+     * Pick up to {@code count} distinct eligible members uniformly at random.
+     *
+     * @param members  the members to sample from, which is not modified
+     * @param count    the number of members to pick
+     * @param eligible the condition the picked members must satisfy
+     * @return the picked members, fewer than {@code count} if there are not enough eligible members
+     */
+    public static List<MemberNode> sample(MemberNode[] members, int count, Predicate<MemberNode> eligible) {
+        return sample(Arrays.asList(members), count, eligible);
+    }
+
+    /**
+     * Pick up to {@code count} distinct eligible members of a random access list uniformly at random.
+     *
+     * @param members  the members to sample from, which must not change while they are sampled
+     */
+    public static List<MemberNode> sample(List<MemberNode> members, int count, Predicate<MemberNode> eligible) {
+        int size = members.size();
+        if (count <= 0 || size == 0) {
+            return List.of();
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<MemberNode> sample = new ArrayList<>(count);
+        // the positions of the virtual permutation which were swapped, all the others still hold their own index
+        Map<Integer, Integer> swapped = new HashMap<>();
+        for (int drawn = 0; drawn < size && sample.size() < count; drawn++) {
+            int position = random.nextInt(drawn, size);
+            int index = swapped.getOrDefault(position, position);
+            // the drawn position takes the index of the first undrawn position
+            swapped.put(position, swapped.getOrDefault(drawn, drawn));
+
+            MemberNode member = members.get(index);
+            if (eligible.test(member)) {
+                sample.add(member);
+            }
+        }
+        return sample;
+    }
+}
@@ -11,8 +11,24 @@ public interface MemberSelection {
 
     /**
      * Select the next member to ping
-     * @return MemberNode to ping
+     * @return MemberNode to ping, or null if no member can be pinged
      */
     MemberNode selectNext();
 
+    /**
+     * Called after a new member was added to the membership table, for strategies keeping their own probe order.
+     * @param member the member added to the membership table
+     */
+    default void memberAdded(MemberNode member) {
+    }
+
+    /**
+     * Check whether a member is probed. Alive and suspected members are probed, the probes of a suspected member
+     * confirm the suspicion, while failed and left members are not.
+     */
+    static boolean isProbeTarget(MemberNode member) {
+        MemberNode.MemberStatus status = member.status();
+        return status == MemberNode.MemberStatus.UP || status == MemberNode.MemberStatus.SUSPICIOUS;
+    }
+
 }
@@ -11,18 +11,30 @@ import java.net.InetSocketAddress;
 public class MembershipEvent {
 
     public static enum Type {
-        JOIN((short) 1), LEAVE((short) 2), RESTORE((short) 3) ,FAILURE((short) 4);
+        JOIN((short) 1, MemberNode.MemberStatus.UP), LEAVE((short) 2, MemberNode.MemberStatus.LEAVED),
+        RESTORE((short) 3, MemberNode.MemberStatus.UP) ,FAILURE((short) 4, MemberNode.MemberStatus.DOWN),
+        // a member suspected by the origin node, and a member refuting a suspicion with a new incarnation number
+        SUSPECT((short) 5, MemberNode.MemberStatus.SUSPICIOUS), ALIVE((short) 6, MemberNode.MemberStatus.UP);
 
         private short id;
+        private final MemberNode.MemberStatus memberStatus;
 
-        Type(short id) {
+        Type(short id, MemberNode.MemberStatus memberStatus) {
             this.id = id;
+            this.memberStatus = memberStatus;
         }
 
         public short id() {
             return id;
         }
 
+        /**
+         * @return the status of the member declared by an event of this type
+         */
+        public MemberNode.MemberStatus memberStatus() {
+            return memberStatus;
+        }
+
         public static Type fromId(short id) {
             for (Type type : Type.values()) {
                 if (type.id == id) {
@@ -33,22 +45,33 @@ public class MembershipEvent {
         }
     }
 
-    private static int threshold;
+    // node id, type, IPv4 address, port and incarnation number, a SUSPECT event also carries its origin node id
+    public static final int SERIALIZED_SIZE = Integer.BYTES + Short.BYTES + 4 + Short.BYTES + Integer.BYTES;
+    public static final int NO_ORIGIN = -1;
 
     private final Type type;
     private final int nodeId;
-    private final String hostAddress;
-    private final int port;
+    private final NodeAddress address;
     private final int incarnationNumber;
+    private final int originNodeId;
 
     private int disseminationCount=  0;
 
-    public MembershipEvent(Type type, int nodeId, String hostAddress, int port, int incarnationNumber) {
+    public MembershipEvent(Type type, int nodeId, NodeAddress address, int incarnationNumber) {
+        this(type, nodeId, address, incarnationNumber, NO_ORIGIN);
+    }
+
+    public MembershipEvent(Type type, int nodeId, NodeAddress address, int incarnationNumber, int originNodeId) {
         this.type = type;
         this.nodeId = nodeId;
-        this.hostAddress = hostAddress;
-        this.port = port;
+        this.address = address;
         this.incarnationNumber = incarnationNumber;
+        this.originNodeId = originNodeId;
+    }
+
+    public MembershipEvent(Type type, int nodeId, String hostAddress, int port, int incarnationNumber) {
+        // resolved once here, the event never touches the name service afterwards
+        this(type, nodeId, NodeAddress.of(new InetSocketAddress(hostAddress, port)), incarnationNumber);
     }
 
     public MembershipEvent(Type type, int nodeId, String hostAddress, int port) {
@@ -56,11 +79,7 @@ public class MembershipEvent {
     }
 
     public MembershipEvent(Type type, MemberNode memberNode) {
-        this.type = type;
-        this.nodeId = memberNode.id();;
-        this.hostAddress = memberNode.address().getHostString();
-        this.port = memberNode.address().getPort();
-        this.incarnationNumber = memberNode.incarnationNumber();
+        this(type, memberNode.id(), NodeAddress.of(memberNode.address()), memberNode.incarnationNumber());
     }
 
     public Type type() {
@@ -71,22 +90,58 @@ public class MembershipEvent {
         return nodeId;
     }
 
+    public NodeAddress address() {
+        return address;
+    }
+
     public String hostAddress() {
-        return hostAddress;
+        return address.hostString();
     }
 
     public int port() {
-        return port;
+        return address.port();
     }
 
     public InetSocketAddress socketAddress() {
-        return new InetSocketAddress(hostAddress, port);
+        return address.socketAddress();
     }
 
     public int incarnationNumber() {
         return incarnationNumber;
     }
 
+    /**
+     * @return the id of the node which suspected the member of a SUSPECT event, {@link #NO_ORIGIN} for other events
+     */
+    public int originNodeId() {
+        return originNodeId;
+    }
+
+    /**
+     * @return the number of bytes of the event on the wire
+     */
+    public int serializedSize() {
+        return type == Type.SUSPECT ? SERIALIZED_SIZE + Integer.BYTES : SERIALIZED_SIZE;
+    }
+
+    /**
+     * Check whether this event takes precedence over another event of the same member according to the SWIM
+     * precedence rules of the member states they declare.
+     */
+    public boolean overrides(MembershipEvent other) {
+        return MemberNode.overrides(type.memberStatus(), incarnationNumber,
+                MemberNode.packState(other.type.memberStatus(), other.incarnationNumber));
+    }
+
+    /**
+     * Check whether this event confirms the suspicion of another event, i.e. both suspect the same incarnation of the
+     * member but originate from different nodes.
+     */
+    public boolean confirms(MembershipEvent other) {
+        return type == Type.SUSPECT && other.type == Type.SUSPECT
+                && incarnationNumber == other.incarnationNumber && originNodeId != other.originNodeId;
+    }
+
     public void incrementDisseminationCount() {
         disseminationCount++;
     }
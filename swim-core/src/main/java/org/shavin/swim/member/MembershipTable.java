@@ -0,0 +1,379 @@
+package org.shavin.swim.member;
+
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.api.member.MemberState;
+import org.shavin.swim.api.member.MembershipSnapshot;
+
+import java.net.InetSocketAddress;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Predicate;
+
+/**
+ * Membership table of a cluster node, which keeps the member list together with an index by node id, an index by
+ * address and the number of members in every status, so that the members referenced by a packet are found in
+ * constant time instead of scanning the member list.
+ *
+ * The members of an epoch are kept in parallel arrays of their node ids, address keys and member nodes, or their
+ * references in the off-heap member store, next to two open addressing tables mapping the primitive node id and the
+ * IPv4 address and port packed into a long to the position of a member. Only the rare IPv6 members are indexed by
+ * their address object. All of them are copied on every write and published as a whole, so lookups never lock.
+ * Memberships change rarely compared to the lookups done for every packet. With an off-heap member store the table
+ * keeps no object per member, the member nodes are views created whenever a member is looked up or listed.
+ *
+ * All the writes, including the status changes of the members, must go through the table to keep the indexes and
+ * the status counts in step with the member list. The local node is never added to its own table.
+ *
+ * Status changes are lock-free {@link MemberNode#transition(MemberNode.MemberStatus, int)} calls on the state word of
+ * the member, only the winner of a transition updates the status counts. A removed member is moved to the terminal
+ * LEAVED status, so a transition racing with its removal either happens before it, and the removal uncounts the new
+ * status, or fails.
+ *
+ * Every write increases the epoch of the table. An immutable {@link MembershipSnapshot} of the current epoch is built
+ * lazily by the first reader after a write and shared by all the following readers until the next write.
+ * @author shavin
+ */
+public class MembershipTable {
+
+    private final int localNodeId;
+    private final OffHeapMemberStore memberStore;
+    // the members of the current epoch, replaced as a whole by every add and remove
+    private volatile Members members;
+    private final List<MemberNode> liveMembers = new LiveMemberList();
+    private final AtomicIntegerArray statusCounts = new AtomicIntegerArray(MemberNode.MemberStatus.values().length);
+    private volatile long epoch = 0L;
+    private volatile MembershipSnapshot snapshot = MembershipSnapshot.EMPTY;
+
+    public MembershipTable(int localNodeId) {
+        this(localNodeId, null);
+    }
+
+    /**
+     * @param memberStore the store keeping the state of the members off-heap, or null to keep the member nodes as
+     *                    they are added
+     */
+    public MembershipTable(int localNodeId, OffHeapMemberStore memberStore) {
+        this.localNodeId = localNodeId;
+        this.memberStore = memberStore;
+        this.members = new Members(memberStore);
+    }
+
+    /**
+     * Add a new member to the table.
+     *
+     * @return true if the member was added, false if a member with the same id is already known or the member is
+     *         the local node
+     */
+    public synchronized boolean add(MemberNode memberNode) {
+        Members current = members;
+        if (memberNode.id() == localNodeId || current.idIndex.get(memberNode.id()) != PositionIndex.NONE) {
+            return false;
+        }
+        NodeAddress address = NodeAddress.of(memberNode.address());
+        // the table keeps the reference of the stored member, the given member node is not referenced anymore
+        long reference = memberStore == null ? 0L : memberStore.insert(memberNode);
+
+        members = current.with(memberNode, address, reference);
+        statusCounts.incrementAndGet(memberNode.status().ordinal());
+        advanceEpoch();
+        return true;
+    }
+
+    /**
+     * Remove the member with the given id from the table.
+     *
+     * @return the removed member, or null if no member has the given id
+     */
+    public synchronized MemberNode remove(int nodeId) {
+        Members current = members;
+        int position = current.idIndex.get(nodeId);
+        if (position == PositionIndex.NONE) {
+            return null;
+        }
+
+        MemberNode memberNode = current.get(position);
+        members = current.without(position);
+        statusCounts.decrementAndGet(memberNode.leave().ordinal());
+        if (memberStore != null) {
+            memberStore.remove(current.references[position]);
+        }
+        advanceEpoch();
+        return memberNode;
+    }
+
+    /**
+     * Move a member of the table to a status declared with the given incarnation number, if it takes precedence over
+     * the current state of the member, see {@link MemberNode#transition(MemberNode.MemberStatus, int)}.
+     *
+     * @return true if this call applied the transition, which must then be reported, false if the current state of
+     *         the member takes precedence or the member was removed
+     */
+    public boolean transition(MemberNode memberNode, MemberNode.MemberStatus status, int incarnationNumber) {
+        MemberNode.MemberStatus previousStatus = memberNode.transition(status, incarnationNumber);
+        if (previousStatus == null) {
+            return false;
+        }
+
+        statusCounts.decrementAndGet(previousStatus.ordinal());
+        statusCounts.incrementAndGet(status.ordinal());
+        synchronized (this) {
+            advanceEpoch();
+        }
+        return true;
+    }
+
+    // must be called while holding the lock of the table
+    private void advanceEpoch() {
+        epoch++;
+        notifyAll();
+    }
+
+    /**
+     * @return the epoch of the membership, increased by every change of the table
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Get the snapshot of the current epoch. The snapshot is only built when the table changed since the last call,
+     * otherwise the same instance is returned without locking.
+     */
+    public MembershipSnapshot snapshot() {
+        MembershipSnapshot snapshot = this.snapshot;
+        if (snapshot.epoch() == epoch) {
+            return snapshot;
+        }
+
+        synchronized (this) {
+            if (this.snapshot.epoch() != epoch) {
+                Members current = members;
+                MemberState[] states = new MemberState[current.size()];
+                for (int i = 0; i < states.length; i++) {
+                    states[i] = MemberState.of(current.get(i));
+                }
+                this.snapshot = MembershipSnapshot.of(epoch, states);
+            }
+            return this.snapshot;
+        }
+    }
+
+    /**
+     * Wait until the membership changes after the given epoch.
+     *
+     * @param sinceEpoch the epoch of the last snapshot seen by the caller
+     * @return the snapshot of a newer epoch, or the current snapshot if the timeout elapsed without a change
+     */
+    public MembershipSnapshot awaitChange(long sinceEpoch, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            long remaining;
+            while (epoch <= sinceEpoch && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return snapshot();
+    }
+
+    /**
+     * @return the member with the given id, or null if it is not known
+     */
+    public MemberNode get(int nodeId) {
+        Members current = members;
+        int position = current.idIndex.get(nodeId);
+        return position == PositionIndex.NONE ? null : current.get(position);
+    }
+
+    /**
+     * @return the member with the given address, or null if it is not known
+     */
+    public MemberNode getByAddress(InetSocketAddress address) {
+        if (address.isUnresolved()) {
+            return null;
+        }
+        Members current = members;
+        NodeAddress nodeAddress = NodeAddress.of(address);
+        long key = nodeAddress.key();
+        int position = key == NodeAddress.NO_KEY
+                ? current.ipv6Positions.getOrDefault(nodeAddress, PositionIndex.NONE)
+                : current.addressIndex.get(key);
+        return position == PositionIndex.NONE ? null : current.get(position);
+    }
+
+    public boolean contains(int nodeId) {
+        return members.idIndex.get(nodeId) != PositionIndex.NONE;
+    }
+
+    /**
+     * @return the number of members in the given status
+     */
+    public int count(MemberNode.MemberStatus status) {
+        return statusCounts.get(status.ordinal());
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * @return the live, read-only member list, which is safe to iterate while the table is modified
+     */
+    public List<MemberNode> members() {
+        return liveMembers;
+    }
+
+    /**
+     * Pick up to the given number of distinct members satisfying a condition uniformly at random, see
+     * {@link MemberSampler}.
+     */
+    public List<MemberNode> sample(int count, Predicate<MemberNode> eligible) {
+        return MemberSampler.sample(members, count, eligible);
+    }
+
+    /**
+     * The members of one epoch, in the order they were added. An instance is only modified before it is published,
+     * afterwards it is read-only, and serves as the member list of the epoch.
+     */
+    private static final class Members extends AbstractList<MemberNode> implements RandomAccess {
+        private final OffHeapMemberStore memberStore;
+        private final int[] ids;
+        private final long[] addressKeys;
+        // the member nodes without a member store, the references of the members in the member store otherwise
+        private final MemberNode[] nodes;
+        private final long[] references;
+        private final PositionIndex idIndex;
+        private final PositionIndex addressIndex;
+        private final Map<NodeAddress, Integer> ipv6Positions;
+
+        private Members(OffHeapMemberStore memberStore) {
+            this(memberStore, new int[0], new long[0], memberStore == null ? new MemberNode[0] : null,
+                    memberStore == null ? null : new long[0], new PositionIndex(PositionIndex.capacityFor(0)),
+                    new PositionIndex(PositionIndex.capacityFor(0)), Map.of());
+        }
+
+        private Members(OffHeapMemberStore memberStore, int[] ids, long[] addressKeys, MemberNode[] nodes, long[] references,
+                        PositionIndex idIndex, PositionIndex addressIndex, Map<NodeAddress, Integer> ipv6Positions) {
+            this.memberStore = memberStore;
+            this.ids = ids;
+            this.addressKeys = addressKeys;
+            this.nodes = nodes;
+            this.references = references;
+            this.idIndex = idIndex;
+            this.addressIndex = addressIndex;
+            this.ipv6Positions = ipv6Positions;
+        }
+
+        @Override
+        public MemberNode get(int index) {
+            return nodes != null ? nodes[index] : memberStore.view(ids[index], references[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        private Members with(MemberNode memberNode, NodeAddress address, long reference) {
+            int position = ids.length;
+            int[] newIds = Arrays.copyOf(ids, position + 1);
+            newIds[position] = memberNode.id();
+            long[] newAddressKeys = Arrays.copyOf(addressKeys, position + 1);
+            newAddressKeys[position] = address.key();
+            MemberNode[] newNodes = null;
+            long[] newReferences = null;
+            if (nodes != null) {
+                newNodes = Arrays.copyOf(nodes, position + 1);
+                newNodes[position] = memberNode;
+            } else {
+                newReferences = Arrays.copyOf(references, position + 1);
+                newReferences[position] = reference;
+            }
+
+            PositionIndex newIdIndex = idIndex.copy(position + 1);
+            newIdIndex.put(memberNode.id(), position);
+            PositionIndex newAddressIndex = addressIndex.copy(position + 1);
+            Map<NodeAddress, Integer> newIpv6Positions = ipv6Positions;
+            if (newAddressKeys[position] == NodeAddress.NO_KEY) {
+                newIpv6Positions = new HashMap<>(ipv6Positions);
+                newIpv6Positions.put(address, position);
+            } else {
+                newAddressIndex.put(newAddressKeys[position], position);
+            }
+            return new Members(memberStore, newIds, newAddressKeys, newNodes, newReferences, newIdIndex, newAddressIndex, newIpv6Positions);
+        }
+
+        private Members without(int position) {
+            int size = ids.length - 1;
+            int[] newIds = new int[size];
+            long[] newAddressKeys = new long[size];
+            MemberNode[] newNodes = nodes == null ? null : new MemberNode[size];
+            long[] newReferences = references == null ? null : new long[size];
+            // rebuild the indexes from the remaining members, open addressing can not simply clear a slot
+            PositionIndex newIdIndex = new PositionIndex(PositionIndex.capacityFor(size));
+            PositionIndex newAddressIndex = new PositionIndex(PositionIndex.capacityFor(size));
+            Map<NodeAddress, Integer> newIpv6Positions = new HashMap<>();
+            for (int i = 0, newPosition = 0; i <= size; i++) {
+                if (i == position) {
+                    continue;
+                }
+                newIds[newPosition] = ids[i];
+                newAddressKeys[newPosition] = addressKeys[i];
+                if (newNodes != null) {
+                    newNodes[newPosition] = nodes[i];
+                } else {
+                    newReferences[newPosition] = references[i];
+                }
+                newIdIndex.put(ids[i], newPosition);
+                if (addressKeys[i] != NodeAddress.NO_KEY) {
+                    newAddressIndex.put(addressKeys[i], newPosition);
+                }
+                newPosition++;
+            }
+            ipv6Positions.forEach((address, oldPosition) -> {
+                if (oldPosition != position) {
+                    newIpv6Positions.put(address, oldPosition > position ? oldPosition - 1 : oldPosition);
+                }
+            });
+            return new Members(memberStore, newIds, newAddressKeys, newNodes, newReferences, newIdIndex, newAddressIndex, newIpv6Positions);
+        }
+    }
+
+    /**
+     * Live, read-only member list of the table. Every call reads the members of the current epoch, an iteration walks
+     * the members of the epoch it started in.
+     */
+    private final class LiveMemberList extends AbstractList<MemberNode> implements RandomAccess {
+
+        @Override
+        public MemberNode get(int index) {
+            return members.get(index);
+        }
+
+        @Override
+        public int size() {
+            return members.size();
+        }
+
+        @Override
+        public Iterator<MemberNode> iterator() {
+            return members.iterator();
+        }
+
+        @Override
+        public Spliterator<MemberNode> spliterator() {
+            return members.spliterator();
+        }
+    }
+}
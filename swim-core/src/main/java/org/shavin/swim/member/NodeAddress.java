@@ -0,0 +1,148 @@
+package org.shavin.swim.member;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * Compact, pre-resolved network address of a member node. IPv4 addresses are kept as a single int and IPv6
+ * addresses as their 16 raw bytes, together with the port. Creating a node address never triggers a name
+ * service lookup, and the {@link InetSocketAddress} needed by the transport layer is built from the raw address
+ * at most once per instance.
+ * This class is immutable.
+ * @author shavin
+ */
+public final class NodeAddress {
+
+    /**
+     * Key of an IPv6 address, which does not fit into a primitive key.
+     */
+    public final static long NO_KEY = -1L;
+
+    private final int ipv4;
+    private final byte[] ipv6;
+    private final int port;
+    // built lazily from the raw address, racing threads build equal instances
+    private InetSocketAddress socketAddress;
+
+    private NodeAddress(int ipv4, byte[] ipv6, int port, InetSocketAddress socketAddress) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+        this.port = port;
+        this.socketAddress = socketAddress;
+    }
+
+    public static NodeAddress ofIPv4(int address, int port) {
+        return new NodeAddress(address, null, port, null);
+    }
+
+    public static NodeAddress ofIPv6(byte[] address, int port) {
+        if (address.length != 16) {
+            throw new IllegalArgumentException("IPv6 address must be 16 bytes long.");
+        }
+        return new NodeAddress(0, address.clone(), port, null);
+    }
+
+    /**
+     * Create a node address from a resolved socket address, which is kept as the cached socket address.
+     *
+     * @throws IllegalArgumentException if the socket address is not resolved
+     */
+    public static NodeAddress of(InetSocketAddress socketAddress) {
+        InetAddress inetAddress = socketAddress.getAddress();
+        if (inetAddress == null) {
+            throw new IllegalArgumentException("Address " + socketAddress.getHostString() + " is not resolved.");
+        }
+
+        byte[] address = inetAddress.getAddress();
+        if (inetAddress instanceof Inet4Address) {
+            int ipv4 = ((address[0] & 0xFF) << 24) | ((address[1] & 0xFF) << 16) | ((address[2] & 0xFF) << 8) | (address[3] & 0xFF);
+            return new NodeAddress(ipv4, null, socketAddress.getPort(), socketAddress);
+        }
+        return new NodeAddress(0, address, socketAddress.getPort(), socketAddress);
+    }
+
+    public boolean isIPv4() {
+        return ipv6 == null;
+    }
+
+    /**
+     * @return the IPv4 address as an int in network byte order, only meaningful for IPv4 addresses
+     */
+    public int ipv4() {
+        return ipv4;
+    }
+
+    /**
+     * @return a copy of the raw address bytes, 4 bytes for IPv4 and 16 bytes for IPv6
+     */
+    public byte[] addressBytes() {
+        if (ipv6 != null) {
+            return ipv6.clone();
+        }
+        return new byte[]{(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+    }
+
+    public int port() {
+        return port;
+    }
+
+    /**
+     * @return the IPv4 address and the port packed into a primitive key, or {@link #NO_KEY} for an IPv6 address
+     */
+    public long key() {
+        return ipv6 == null ? ipv4Key(ipv4, port) : NO_KEY;
+    }
+
+    /**
+     * @return the given IPv4 address and port packed into a primitive key, never {@link #NO_KEY}
+     */
+    public static long ipv4Key(int ipv4, int port) {
+        return ((ipv4 & 0xFFFFFFFFL) << 16) | (port & 0xFFFF);
+    }
+
+    /**
+     * @return the socket address of the node, built from the raw address without any name service lookup
+     */
+    public InetSocketAddress socketAddress() {
+        InetSocketAddress socketAddress = this.socketAddress;
+        if (socketAddress == null) {
+            try {
+                socketAddress = new InetSocketAddress(InetAddress.getByAddress(addressBytes()), port);
+            } catch (UnknownHostException exception) {
+                // only thrown for an illegal address length, which the factory methods rule out
+                throw new IllegalStateException(exception);
+            }
+            this.socketAddress = socketAddress;
+        }
+        return socketAddress;
+    }
+
+    /**
+     * @return the literal IP address of the node, without the port
+     */
+    public String hostString() {
+        return socketAddress().getAddress().getHostAddress();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NodeAddress that = (NodeAddress) o;
+        return ipv4 == that.ipv4 && port == that.port && Arrays.equals(ipv6, that.ipv6);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = ipv6 == null ? ipv4 : Arrays.hashCode(ipv6);
+        return 31 * hash + port;
+    }
+
+    @Override
+    public String toString() {
+        return hostString() + ":" + port;
+    }
+}
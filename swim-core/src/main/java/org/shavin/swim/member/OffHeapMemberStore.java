@@ -0,0 +1,342 @@
+package org.shavin.swim.member;
+
+import org.shavin.swim.api.member.MemberNode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Member store which keeps the state of the members off-heap in structure-of-arrays form, for clusters with so many
+ * members that a {@link MemberNode} object graph per member (node, socket address, inet address and their holders)
+ * becomes a noticeable part of the heap and of the GC work.
+ *
+ * Every member gets a slot, and every field of the members is kept in its own direct buffer column indexed by the
+ * slot: IPv4 address, port, the state word packing the status and the incarnation number, last update time and the
+ * generation of the slot, 28 bytes per member. A stored member is referenced by a primitive reference packing its slot
+ * and the generation of the slot, which is all the owner of the store keeps on the heap. A {@link MemberNode} view
+ * reading and writing the columns of a slot is only created when a member is asked for, and is dropped by the caller
+ * soon after, so the views never add up to an object per member. The socket address of a view is only created when
+ * it is used for the first time.
+ *
+ * Slots never move while a member is stored, so a reference keeps its slot for its whole life. A removed slot is
+ * reused by the next member, its generation counter tells the references and views of the removed member apart,
+ * which then report the {@link MemberNode.MemberStatus#LEAVED} status. The rare IPv6 members keep their address on
+ * the heap.
+ *
+ * The writes lock the store, the reads are lock-free and use volatile access to the columns. The compare-and-set of a
+ * state word also locks the store, so that it can not hit the slot of a removed member after it was reused.
+ * @author shavin
+ */
+public class OffHeapMemberStore {
+
+    private final static VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private final static VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private final static long LEFT_STATE = MemberNode.packState(MemberNode.MemberStatus.LEAVED, 0);
+    // marks an IPv6 member in the address column, its address is kept in the heap map
+    private final static int IPV6_PORT = -1;
+
+    private volatile Columns columns;
+    private final Map<Integer, NodeAddress> ipv6Addresses = new ConcurrentHashMap<>();
+
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount = 0;
+    private int nextSlot = 0;
+    private int size = 0;
+
+    /**
+     * @param initialCapacity the number of members the store is sized for, it grows beyond that on demand
+     */
+    public OffHeapMemberStore(int initialCapacity) {
+        this.columns = new Columns(Math.max(initialCapacity, 16));
+    }
+
+    /**
+     * Copy a member into the store.
+     *
+     * @return the view of the stored member, which replaces the given member node
+     */
+    public MemberNode add(MemberNode memberNode) {
+        return view(memberNode.id(), insert(memberNode));
+    }
+
+    /**
+     * Copy a member into the store.
+     *
+     * @return the reference of the stored member, see {@link #view(int, long)}
+     */
+    public synchronized long insert(MemberNode memberNode) {
+        int slot = allocateSlot();
+        Columns columns = this.columns;
+
+        NodeAddress address = NodeAddress.of(memberNode.address());
+        if (address.isIPv4()) {
+            INT.setVolatile(columns.addresses, slot * Integer.BYTES, address.ipv4());
+            INT.setVolatile(columns.ports, slot * Integer.BYTES, address.port());
+        } else {
+            ipv6Addresses.put(slot, address);
+            INT.setVolatile(columns.ports, slot * Integer.BYTES, IPV6_PORT);
+        }
+        LONG.setVolatile(columns.states, slot * Long.BYTES, memberNode.state());
+        LONG.setVolatile(columns.lastUpdateTimes, slot * Long.BYTES, System.currentTimeMillis());
+        size++;
+
+        return reference(slot, (int) INT.getVolatile(columns.generations, slot * Integer.BYTES));
+    }
+
+    /**
+     * Create a view of a stored member, which reports the member as left once it is removed.
+     *
+     * @param id the node id of the member
+     * @param reference the reference returned when the member was stored
+     */
+    public MemberNode view(int id, long reference) {
+        return new MemberView(this, id, slotOf(reference), generationOf(reference));
+    }
+
+    /**
+     * @return the address key of a stored member, see {@link NodeAddress#key()}, or {@link NodeAddress#NO_KEY} for an
+     *         IPv6 member, without creating its address
+     */
+    public long addressKey(long reference) {
+        Columns columns = this.columns;
+        int slot = slotOf(reference);
+        int port = (int) INT.getVolatile(columns.ports, slot * Integer.BYTES);
+        return port == IPV6_PORT ? NodeAddress.NO_KEY : NodeAddress.ipv4Key((int) INT.getVolatile(columns.addresses, slot * Integer.BYTES), port);
+    }
+
+    /**
+     * Remove a member from the store, its views report the member as left afterwards.
+     *
+     * @param memberNode a view handed out by this store
+     * @return true if the member was removed, false if it was removed before or is not a view of this store
+     */
+    public boolean remove(MemberNode memberNode) {
+        return memberNode instanceof MemberView view && view.store == this && remove(reference(view.slot, view.generation));
+    }
+
+    /**
+     * Remove a member from the store, its references and views report the member as left afterwards.
+     *
+     * @return true if the member was removed, false if it was removed before
+     */
+    public synchronized boolean remove(long reference) {
+        int slot = slotOf(reference);
+        if (!isCurrent(slot, generationOf(reference))) {
+            return false;
+        }
+
+        INT.getAndAdd(columns.generations, slot * Integer.BYTES, 1);
+        ipv6Addresses.remove(slot);
+        if (freeSlotCount == freeSlots.length) {
+            int[] newFreeSlots = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, newFreeSlots, 0, freeSlotCount);
+            freeSlots = newFreeSlots;
+        }
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of slots the columns are currently sized for
+     */
+    public int capacity() {
+        return columns.capacity;
+    }
+
+    /**
+     * @return the number of off-heap bytes used by the columns
+     */
+    public long offHeapBytes() {
+        return (long) columns.capacity * Columns.BYTES_PER_SLOT;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (nextSlot == columns.capacity) {
+            // copy the columns into larger ones, the readers switch over with the volatile write
+            columns = columns.grow(columns.capacity * 2);
+        }
+        return nextSlot++;
+    }
+
+    private static long reference(int slot, int generation) {
+        return ((long) slot << 32) | (generation & 0xFFFFFFFFL);
+    }
+
+    private static int slotOf(long reference) {
+        return (int) (reference >>> 32);
+    }
+
+    private static int generationOf(long reference) {
+        return (int) reference;
+    }
+
+    private boolean isCurrent(int slot, int generation) {
+        return (int) INT.getVolatile(columns.generations, slot * Integer.BYTES) == generation;
+    }
+
+    private boolean isCurrent(MemberView view) {
+        return isCurrent(view.slot, view.generation);
+    }
+
+    private long state(MemberView view) {
+        Columns columns = this.columns;
+        if ((int) INT.getVolatile(columns.generations, view.slot * Integer.BYTES) != view.generation) {
+            return LEFT_STATE;
+        }
+        return (long) LONG.getVolatile(columns.states, view.slot * Long.BYTES);
+    }
+
+    private synchronized boolean compareAndSetState(MemberView view, long expectedState, long newState) {
+        return isCurrent(view) && LONG.compareAndSet(columns.states, view.slot * Long.BYTES, expectedState, newState);
+    }
+
+    private synchronized void updateState(MemberView view, LongUnaryOperator update) {
+        if (isCurrent(view)) {
+            // all the writers of a state word hold the lock, so the read and the write can not be interleaved
+            long state = (long) LONG.getVolatile(columns.states, view.slot * Long.BYTES);
+            LONG.setVolatile(columns.states, view.slot * Long.BYTES, update.applyAsLong(state));
+        }
+    }
+
+    private synchronized void updateLastUpdateTime(MemberView view) {
+        if (isCurrent(view)) {
+            LONG.setVolatile(columns.lastUpdateTimes, view.slot * Long.BYTES, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Direct buffer columns of the store, one per member field. The columns are replaced as a whole when the store
+     * grows.
+     */
+    private static final class Columns {
+        // address, port and generation ints, the state and the last update time longs
+        private final static int BYTES_PER_SLOT = 3 * Integer.BYTES + 2 * Long.BYTES;
+
+        private final int capacity;
+        private final ByteBuffer addresses;
+        private final ByteBuffer ports;
+        private final ByteBuffer states;
+        private final ByteBuffer lastUpdateTimes;
+        private final ByteBuffer generations;
+
+        private Columns(int capacity) {
+            this.capacity = capacity;
+            this.addresses = column(capacity, Integer.BYTES);
+            this.ports = column(capacity, Integer.BYTES);
+            this.states = column(capacity, Long.BYTES);
+            this.lastUpdateTimes = column(capacity, Long.BYTES);
+            this.generations = column(capacity, Integer.BYTES);
+        }
+
+        private static ByteBuffer column(int capacity, int bytesPerSlot) {
+            return ByteBuffer.allocateDirect(capacity * bytesPerSlot).order(ByteOrder.nativeOrder());
+        }
+
+        private Columns grow(int newCapacity) {
+            Columns grown = new Columns(newCapacity);
+            grown.addresses.put(addresses.duplicate().clear());
+            grown.ports.put(ports.duplicate().clear());
+            grown.states.put(states.duplicate().clear());
+            grown.lastUpdateTimes.put(lastUpdateTimes.duplicate().clear());
+            grown.generations.put(generations.duplicate().clear());
+            return grown;
+        }
+    }
+
+    /**
+     * View of a member stored in the slot of an off-heap member store. Holds nothing but the node id, the slot and
+     * the generation of the slot, plus the socket address once it was asked for. Views are created on demand and
+     * never kept by the store.
+     */
+    private static final class MemberView extends MemberNode {
+        private final OffHeapMemberStore store;
+        private final int slot;
+        private final int generation;
+        private InetSocketAddress address;
+
+        private MemberView(OffHeapMemberStore store, int id, int slot, int generation) {
+            // the state of the super class is unused, the id is passed for equals and hashCode
+            super(id, null);
+            this.store = store;
+            this.slot = slot;
+            this.generation = generation;
+        }
+
+        /**
+         * @return the address of the member, or null if the member was removed before its address was asked for, the
+         *         slot may hold the address of another member by then
+         */
+        @Override
+        public InetSocketAddress address() {
+            InetSocketAddress address = this.address;
+            if (address == null) {
+                if (!store.isCurrent(this)) {
+                    return null;
+                }
+                Columns columns = store.columns;
+                int port = (int) INT.getVolatile(columns.ports, slot * Integer.BYTES);
+                NodeAddress nodeAddress = port == IPV6_PORT
+                        ? store.ipv6Addresses.get(slot)
+                        : NodeAddress.ofIPv4((int) INT.getVolatile(columns.addresses, slot * Integer.BYTES), port);
+                // the member may have been removed while its columns were read, and the slot reused
+                if (nodeAddress == null || !store.isCurrent(this)) {
+                    return null;
+                }
+                // racing threads create equal addresses
+                address = nodeAddress.socketAddress();
+                this.address = address;
+            }
+            return address;
+        }
+
+        @Override
+        public long state() {
+            return store.state(this);
+        }
+
+        @Override
+        protected boolean compareAndSetState(long expectedState, long newState) {
+            return store.compareAndSetState(this, expectedState, newState);
+        }
+
+        @Override
+        public void setStatus(MemberStatus status) {
+            // the compare-and-set loop of the super class would never end for a removed member
+            store.updateState(this, state -> packState(status, incarnationNumberOf(state)));
+        }
+
+        @Override
+        public void increaseIncarnationNumber() {
+            store.updateState(this, state -> packState(statusOf(state), incarnationNumberOf(state) + 1));
+        }
+
+        @Override
+        public void updateLastUpdateTime() {
+            store.updateLastUpdateTime(this);
+        }
+
+        @Override
+        public String toString() {
+            return "MemberNode[id=" + id()
+                    + ", address=" + address()
+                    + ", status=" + status()
+                    + ", lastUpdateTime=" + (long) LONG.getVolatile(store.columns.lastUpdateTimes, slot * Long.BYTES)
+                    + ", incarnationNumber=" + incarnationNumber()
+                    + "]";
+        }
+    }
+}
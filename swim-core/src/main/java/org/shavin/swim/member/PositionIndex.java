@@ -0,0 +1,83 @@
+package org.shavin.swim.member;
+
+import java.util.Arrays;
+
+/**
+ * Position Index
+ * Open addressing table of the positions of the members keyed by a primitive key, the node id or the address key,
+ * with linear probing, which neither boxes the keys nor allocates on lookups. Positions can be replaced but not
+ * removed, an index is rebuilt when members leave.
+ *
+ * The index is not thread-safe. The membership table only modifies an instance before it is published, afterwards
+ * it is read-only, the randomized round-robin selector modifies its own index under its lock.
+ * @author shavin
+ */
+final class PositionIndex {
+    final static int NONE = -1;
+
+    private final long[] keys;
+    private final int[] positions;
+    private final int mask;
+
+    PositionIndex(int capacity) {
+        this.keys = new long[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, NONE);
+        this.mask = capacity - 1;
+    }
+
+    // smallest power of two keeping the load factor at or below one half
+    static int capacityFor(int size) {
+        return Math.max(16, Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1);
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    PositionIndex copy(int size) {
+        int capacity = capacityFor(size);
+        PositionIndex copy = new PositionIndex(capacity);
+        if (capacity == keys.length) {
+            System.arraycopy(keys, 0, copy.keys, 0, capacity);
+            System.arraycopy(positions, 0, copy.positions, 0, capacity);
+            return copy;
+        }
+
+        for (int index = 0; index < keys.length; index++) {
+            if (positions[index] != NONE) {
+                copy.put(keys[index], positions[index]);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * @return the position of the member with the given key, or {@link #NONE}
+     */
+    int get(long key) {
+        for (int index = slot(key, mask); ; index = (index + 1) & mask) {
+            int position = positions[index];
+            // an empty slot ends the probing, so any key including zero can be stored
+            if (position == NONE || keys[index] == key) {
+                return position;
+            }
+        }
+    }
+
+    // replaces the position of a key which is already stored
+    void put(long key, int position) {
+        int index = slot(key, mask);
+        while (positions[index] != NONE && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        positions[index] = position;
+    }
+
+    private static int slot(long key, int mask) {
+        // spread sequential node ids and addresses over the table
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
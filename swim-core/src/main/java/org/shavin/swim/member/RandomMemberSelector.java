@@ -2,8 +2,8 @@ package org.shavin.swim.member;
 
 import org.shavin.swim.api.member.MemberNode;
 
-import java.security.SecureRandom;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Random Member Selector
@@ -14,8 +14,6 @@ public class RandomMemberSelector implements MemberSelection  {
     private final List<MemberNode> members;
     private final int nodeId;
 
-    private final SecureRandom random = new SecureRandom();
-
     public RandomMemberSelector(List<MemberNode> members, int nodeId) {
         this.members = members;
         this.nodeId = nodeId;
@@ -23,12 +21,15 @@ public class RandomMemberSelector implements MemberSelection  {
 
     @Override
     public MemberNode selectNext() {
-        // select one node from the list randomly other than the current node
-        MemberNode selectedNode;
-        do {
-            selectedNode = members.get(random.nextInt(members.size()));
-        } while (selectedNode.id() == nodeId || !selectedNode.isHealthy());
-
-        return selectedNode;
+        // select one node from the list randomly other than the current node, giving up after as many attempts as
+        // there are members, so that a list without a healthy member can not spin forever
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0, size = members.size(); attempt < size; attempt++) {
+            MemberNode selectedNode = members.get(random.nextInt(size));
+            if (selectedNode.id() != nodeId && MemberSelection.isProbeTarget(selectedNode)) {
+                return selectedNode;
+            }
+        }
+        return null;
     }
 }
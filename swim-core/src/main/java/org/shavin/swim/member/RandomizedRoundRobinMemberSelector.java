@@ -0,0 +1,115 @@
+package org.shavin.swim.member;
+
+import org.shavin.swim.api.member.MemberNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Randomized Round Robin Member Selector
+ * This class implements the randomized round-robin member selection of the SWIM paper. The members are probed in a
+ * shuffled order, and the order is shuffled again after every full pass over it. Every member is probed once per
+ * pass, so a failed member is probed, and first detected, within two passes of the failure at the latest, while the
+ * probe targets of the nodes of the cluster are still spread randomly.
+ *
+ * The probe order only holds the node ids of the members, which are looked up in the membership table when they are
+ * selected, so the selector keeps no member node of its own. A new member is inserted at a random position of the
+ * probe order which is not probed yet in the current pass, by moving the member at that position to the end, so that
+ * no member is probed twice in a pass. A member whose id is still in the probe order, found through an index of the
+ * positions by node id, keeps its position. Removed members are no longer found in the membership table, they are skipped and only dropped from the probe order
+ * with the next shuffle. A selection looks at no more members than there are in the probe order, and returns null
+ * instead of waiting if none of them can be probed.
+ * @author shavin
+ */
+public class RandomizedRoundRobinMemberSelector implements MemberSelection {
+    private final MembershipTable membershipTable;
+    private final int nodeId;
+
+    private int[] order;
+    // the position of every node id in the probe order
+    private PositionIndex positions;
+    private int size = 0;
+    private int currentIndex = 0;
+
+    public RandomizedRoundRobinMemberSelector(MembershipTable membershipTable, int nodeId) {
+        this.membershipTable = membershipTable;
+        this.nodeId = nodeId;
+        this.order = new int[Math.max(16, membershipTable.size())];
+        this.positions = new PositionIndex(PositionIndex.capacityFor(order.length));
+        for (MemberNode member : membershipTable.members()) {
+            memberAdded(member);
+        }
+    }
+
+    @Override
+    public synchronized void memberAdded(MemberNode member) {
+        if (member.id() == nodeId) {
+            return;
+        }
+        if (positions.get(member.id()) != PositionIndex.NONE) {
+            // a member removed and added again keeps its position
+            return;
+        }
+        if (size == order.length) {
+            order = Arrays.copyOf(order, order.length * 2);
+        }
+        if (PositionIndex.capacityFor(size + 1) != positions.capacity()) {
+            positions = positions.copy(size + 1);
+        }
+
+        // swap the new member with a random member not probed yet in this pass, the new member is probed within the
+        // current pass
+        int position = ThreadLocalRandom.current().nextInt(currentIndex, size + 1);
+        if (position != size) {
+            order[size] = order[position];
+            positions.put(order[size], size);
+        }
+        order[position] = member.id();
+        positions.put(member.id(), position);
+        size++;
+    }
+
+    @Override
+    public synchronized MemberNode selectNext() {
+        // look at every member at most once
+        for (int visited = 0; visited < size; visited++) {
+            if (currentIndex >= size) {
+                reshuffle();
+                if (size == 0) {
+                    return null;
+                }
+            }
+
+            MemberNode member = membershipTable.get(order[currentIndex++]);
+            if (member != null && MemberSelection.isProbeTarget(member)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private void reshuffle() {
+        // drop the removed members and shuffle the remaining ones (Fisher-Yates)
+        int remaining = 0;
+        for (int i = 0; i < size; i++) {
+            if (membershipTable.contains(order[i])) {
+                order[remaining++] = order[i];
+            }
+        }
+        size = remaining;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int memberId = order[i];
+            order[i] = order[j];
+            order[j] = memberId;
+        }
+        // rebuild the index, the ids of the removed members can not be cleared from it
+        positions = new PositionIndex(PositionIndex.capacityFor(size));
+        for (int i = 0; i < size; i++) {
+            positions.put(order[i], i);
+        }
+        currentIndex = 0;
+    }
+}
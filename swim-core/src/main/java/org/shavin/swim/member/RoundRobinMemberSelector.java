@@ -22,10 +22,13 @@ public class RoundRobinMemberSelector implements MemberSelection {
 
     @Override
     public MemberNode selectNext() {
-        currentIndex = (currentIndex + 1) % members.size();
+        // look at every member at most once instead of recursing for every unhealthy one
+        for (int visited = 0, size = members.size(); visited < size; visited++) {
+            currentIndex = (currentIndex + 1) % size;
 
-        MemberNode member = members.get(currentIndex);
-        if (!member.isHealthy() || member.id() == nodeId) return selectNext();
-        return member;
+            MemberNode member = members.get(currentIndex);
+            if (MemberSelection.isProbeTarget(member) && member.id() != nodeId) return member;
+        }
+        return null;
     }
 }
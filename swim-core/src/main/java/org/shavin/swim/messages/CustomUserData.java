@@ -1,15 +1,76 @@
 package org.shavin.swim.messages;
 
+import org.shavin.swim.util.HashUtil;
+
+/**
+ * Custom user data piggybacked on a ping, either a whole payload or one fragment of a larger payload.
+ *
+ * Every fragment carries the id of its payload, its index and the number of fragments of the payload, a whole payload
+ * is a single fragment. The id of a payload is the hash of the whole payload, so sending the same payload again is
+ * recognized as a duplicate by the receivers. The channel of the data tells the data of the application apart from the
+ * data the cluster disseminates for itself, e.g. the deltas of the replicated map.
+ * @author shavin
+ */
 public class CustomUserData {
 
+    // the channel, payload id, fragment index and fragment count in front of the data on the wire
+    public final static int HEADER_SIZE = Byte.BYTES + Long.BYTES + Short.BYTES + Short.BYTES;
+
+    public final static int CHANNEL_USER_DATA = 0;
+    public final static int CHANNEL_REPLICATED_MAP = 1;
+
+    private final int channel;
+    private final long messageId;
+    private final int fragmentIndex;
+    private final int fragmentCount;
     private final byte[] data;
     private int disseminationCount = 0;
 
 
     public CustomUserData(byte[] data) {
+        this(CHANNEL_USER_DATA, HashUtil.hash64(data), 0, 1, data);
+    }
+
+    public CustomUserData(long messageId, int fragmentIndex, int fragmentCount, byte[] data) {
+        this(CHANNEL_USER_DATA, messageId, fragmentIndex, fragmentCount, data);
+    }
+
+    public CustomUserData(int channel, long messageId, int fragmentIndex, int fragmentCount, byte[] data) {
+        this.channel = channel;
+        this.messageId = messageId;
+        this.fragmentIndex = fragmentIndex;
+        this.fragmentCount = fragmentCount;
         this.data = data;
     }
 
+    public int channel() {
+        return channel;
+    }
+
+    public long messageId() {
+        return messageId;
+    }
+
+    public int fragmentIndex() {
+        return fragmentIndex;
+    }
+
+    public int fragmentCount() {
+        return fragmentCount;
+    }
+
+    public boolean isFragment() {
+        return fragmentCount > 1;
+    }
+
+    /**
+     * @return the id of this fragment, the id of the payload for a whole payload of the user data channel
+     */
+    public long key() {
+        long key = isFragment() ? messageId * 31 + fragmentIndex + 1 : messageId;
+        return channel == CHANNEL_USER_DATA ? key : key * 31 + channel;
+    }
+
     public int disseminationCount() {
         return disseminationCount;
     }
@@ -22,4 +83,11 @@ public class CustomUserData {
         return data;
     }
 
+    /**
+     * @return the number of bytes of the data on the wire, including its fragment header and length
+     */
+    public int serializedSize() {
+        return HEADER_SIZE + Integer.BYTES + data.length;
+    }
+
 }
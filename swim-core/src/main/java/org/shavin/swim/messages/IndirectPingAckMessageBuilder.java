@@ -35,7 +35,7 @@ public class IndirectPingAckMessageBuilder {
     }
 
     public static Message indirectPingMessageFor(int sourceNodeId, int destinationNodeId, int requestedNodeId, long requestId) {
-        Header header = new Header(MessageType.INDIRECT_PING, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.INDIRECT_PING, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
         IndirectPingAckMessage payload = IndirectPingAckMessageBuilder.builder()
                 .withSourceNodeId(sourceNodeId)
                 .withDestinationNodeId(destinationNodeId)
@@ -47,7 +47,7 @@ public class IndirectPingAckMessageBuilder {
     }
 
     public static Message indirectPingAckMessageFor(IndirectPingAckMessage indirectPingAckMessage) {
-        Header header = new Header(MessageType.INDIRECT_ACK, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.INDIRECT_ACK, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
         IndirectPingAckMessage payload = IndirectPingAckMessageBuilder.builder()
                 .withSourceNodeId(indirectPingAckMessage.destinationNodeId())
                 .withDestinationNodeId(indirectPingAckMessage.sourceNodeId())
@@ -58,4 +58,20 @@ public class IndirectPingAckMessageBuilder {
         return new Message(header, payload);
     }
 
+    /**
+     * Build the NACK an intermediary sends to the requester of an indirect probe when the target did not answer the
+     * indirect ping in time. The requested node id of a NACK is the id of the target.
+     */
+    public static Message indirectPingNackMessageFor(int sourceNodeId, int destinationNodeId, int targetNodeId, long requestId) {
+        Header header = new Header(MessageType.NACK, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
+        IndirectPingAckMessage payload = IndirectPingAckMessageBuilder.builder()
+                .withSourceNodeId(sourceNodeId)
+                .withDestinationNodeId(destinationNodeId)
+                .withRequestedNodeId(targetNodeId)
+                .withRequestId(requestId)
+                .build();
+
+        return new Message(header, payload);
+    }
+
 }
@@ -44,6 +44,20 @@ public class Message {
      */
     public final static class Serializer {
 
+        // offset of the flag bit array from the start of a serialized message, after the header size, version, type and timestamp
+        private final static int FLAGS_OFFSET = Integer.BYTES + (int) MessageVersion.Serializer.BYTE_SIZE + Short.BYTES + Long.BYTES;
+
+        /**
+         * Check whether the serialized message in the given buffer is tagged as urgent, by peeking at the flag bit array
+         * of its header. The reader index of the buffer is not modified. Buffers too short to hold a header are not urgent.
+         */
+        public static boolean isUrgent(ByteBuf in) {
+            if (in.readableBytes() <= FLAGS_OFFSET) {
+                return false;
+            }
+            return MessageFlags.Serializer.hasFlag(in.getByte(in.readerIndex() + FLAGS_OFFSET), MessageFlags.MessageFlag.URGENT_BIT);
+        }
+
         // serialize the given message and write the bytes into the given netty bytebuffer instance
         @SuppressWarnings("unchecked")
         public static <T extends IMessage> void serialize(Message message, ByteBuf out) throws IOException {
@@ -74,9 +88,10 @@ public class Message {
 
         public static long serializedHeaderSize(Header header) {
             long size = 0;
+            size += Integer.BYTES; // header size
             size += MessageVersion.Serializer.serializer.serializedSize(header.version());
-            size += Integer.BYTES; // message id size
             size += MessageType.Serializer.serializer.serializedSize(header.type());
+            size += Long.BYTES; // timestamp
             size += MessageFlags.Serializer.serializer.serializedSize(header.flags());
 
             return size;
@@ -93,7 +108,8 @@ public class Message {
         public static Header deserializeHeader(ByteBuf in) throws IOException {
             in.readInt(); // skip header size
             MessageVersion version = MessageVersion.Serializer.serializer.deserialize(in);
-            if (version == null) {
+            if (version == null || version.getId() < MessageVersion.MIN_SUPPORTED_VERSION.getId()
+                    || version.getId() > MessageVersion.MAX_SUPPORTED_VERSION.getId()) {
                 throw new IOException("Unsupported message version");
             }
 
@@ -105,7 +121,7 @@ public class Message {
             long timestamp = in.readLong();
             MessageFlags flags = MessageFlags.Serializer.serializer.deserialize(in);
 
-            return new Header(type, MessageVersion.DEFAULT_VERSION, timestamp, flags);
+            return new Header(type, version, timestamp, flags);
         }
     }
 
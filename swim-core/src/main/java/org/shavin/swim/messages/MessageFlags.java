@@ -38,6 +38,17 @@ public class MessageFlags implements Cloneable {
 
     private final List<MessageFlag> flags = new ArrayList<>();
 
+    /**
+     * create a flag set with the given flags
+     */
+    public static MessageFlags of(MessageFlag... flags) {
+        MessageFlags messageFlags = new MessageFlags();
+        for (MessageFlag flag: flags) {
+            messageFlags.addFlag(flag);
+        }
+        return messageFlags;
+    }
+
     public List<MessageFlag> flags() {
         return flags;
     }
@@ -118,6 +129,13 @@ public class MessageFlags implements Cloneable {
             return flags;
         }
 
+        /**
+         * check whether the given flag is set in a serialized flag bit array, without deserializing it
+         */
+        public static boolean hasFlag(byte flagsByte, MessageFlag flag) {
+            return (flagsByte & (1 << flag.position)) != 0;
+        }
+
         @Override
         public long serializedSize(MessageFlags messageFlags) {
             return MESSAGE_FLAG_SIZE;
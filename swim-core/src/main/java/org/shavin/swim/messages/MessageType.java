@@ -11,7 +11,10 @@ public enum MessageType {
     PING_REQ((short) 3, PingRequestMessage.Serializer.INSTANCE),
     INDIRECT_PING((short) 4, IndirectPingAckMessage.Serializer.INSTANCE),
     INDIRECT_ACK((short) 5, IndirectPingAckMessage.Serializer.INSTANCE),
-    NODE_STATUS((short) 6, NodeStatusMessage.Serializer.INSTANCE);
+    NODE_STATUS((short) 6, NodeStatusMessage.Serializer.INSTANCE),
+    NACK((short) 7, IndirectPingAckMessage.Serializer.INSTANCE),
+    MAP_DIGEST((short) 8, ReplicatedMapMessage.Serializer.INSTANCE),
+    MAP_ENTRIES((short) 9, ReplicatedMapMessage.Serializer.INSTANCE);
 
     private final short id;
     public final IGenericMessageSerializer<?, ?> serializer;
@@ -8,11 +8,14 @@ import java.io.IOException;
 
 public enum MessageVersion {
 
-    VERSION_1(0);
-
-    public static final MessageVersion DEFAULT_VERSION = VERSION_1;
-    public static final MessageVersion MAX_SUPPORTED_VERSION = VERSION_1;
-    public static final MessageVersion MIN_SUPPORTED_VERSION = VERSION_1;
+    VERSION_1(0),
+    // the piggybacked payloads are laid out differently, a node of version 1 can not read them
+    VERSION_2(1);
+
+    public static final MessageVersion DEFAULT_VERSION = VERSION_2;
+    public static final MessageVersion MAX_SUPPORTED_VERSION = VERSION_2;
+    // a cluster is not upgraded from version 1 node by node
+    public static final MessageVersion MIN_SUPPORTED_VERSION = VERSION_2;
 
     private final int id;
 
@@ -123,7 +123,7 @@ public class NodeStatusMessage implements IMessage {
 
         public static Message toNodeStatusMessage(int sourceMemberId, int destinationNodeId, Status memberStatus) {
             // create a message header
-            Header header = new Header(MessageType.NODE_STATUS, MessageVersion.VERSION_1);
+            Header header = new Header(MessageType.NODE_STATUS, MessageVersion.VERSION_2);
             NodeStatusMessage.Builder builder = new NodeStatusMessage.Builder();
             NodeStatusMessage statusPayload = builder.nodeId(sourceMemberId).memberStatus(memberStatus).build();
 
@@ -3,9 +3,9 @@ package org.shavin.swim.messages;
 import io.netty.buffer.ByteBuf;
 import org.shavin.swim.api.message.IGenericMessageSerializer;
 import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,8 +49,16 @@ public class PiggybackPingAckMessage extends PingAckMessage implements IMessage
             for (MembershipEvent event : pingMessage.membershipEvents) {
                 out.writeInt(event.nodeId());
                 out.writeShort(event.type().id());
-                out.writeBytes(event.socketAddress().getAddress().getAddress());
-                out.writeShort(event.socketAddress().getPort());
+                NodeAddress address = event.address();
+                if (!address.isIPv4()) {
+                    throw new IOException("Only IPv4 member addresses can be serialized: " + address);
+                }
+                out.writeInt(address.ipv4());
+                out.writeShort(address.port());
+                out.writeInt(event.incarnationNumber());
+                if (event.type() == MembershipEvent.Type.SUSPECT) {
+                    out.writeInt(event.originNodeId());
+                }
             }
         }
 
@@ -63,12 +71,12 @@ public class PiggybackPingAckMessage extends PingAckMessage implements IMessage
             for (int i = 0; i < size; i++) {
                 int nodeId = in.readInt();
                 MembershipEvent.Type type = MembershipEvent.Type.fromId(in.readShort());
-                byte[] address = new byte[4];
-                in.readBytes(address);
-                InetAddress hostAddress = InetAddress.getByAddress(address);
-                int port = in.readShort();
+                // the raw address is kept as it is, no InetAddress is created or resolved for the event
+                NodeAddress address = NodeAddress.ofIPv4(in.readInt(), in.readUnsignedShort());
+                int incarnationNumber = in.readInt();
+                int originNodeId = type == MembershipEvent.Type.SUSPECT ? in.readInt() : MembershipEvent.NO_ORIGIN;
 
-                MembershipEvent membershipEvent = new MembershipEvent(type, nodeId, hostAddress.getHostAddress(), port);
+                MembershipEvent membershipEvent = new MembershipEvent(type, nodeId, address, incarnationNumber, originNodeId);
                 membershipEvents.add(membershipEvent);
             }
 
@@ -78,7 +86,10 @@ public class PiggybackPingAckMessage extends PingAckMessage implements IMessage
         @Override
         public long serializedSize(PiggybackPingAckMessage pingMessage) {
             long baseSize = PingAckMessage.Serializer.INSTANCE.serializedSize(pingMessage);
-            int eventsSize = pingMessage.membershipEvents.size() * (Integer.BYTES + Short.BYTES + 4 + Short.BYTES);
+            int eventsSize = 0;
+            for (MembershipEvent event : pingMessage.membershipEvents) {
+                eventsSize += event.serializedSize();
+            }
             return baseSize + Integer.BYTES + eventsSize; // base + length + events
         }
     }
@@ -3,9 +3,9 @@ package org.shavin.swim.messages;
 import io.netty.buffer.ByteBuf;
 import org.shavin.swim.api.message.IGenericMessageSerializer;
 import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -47,7 +47,7 @@ public class PingAckMessage extends BaseGossipMessage implements IMessage {
         int bytes = 0;
         if (customUserData != null) {
             for (CustomUserData userData : customUserData) {
-                bytes += userData.getData().length;
+                bytes += userData.serializedSize();
             }
         }
         return bytes;
@@ -112,15 +112,27 @@ public class PingAckMessage extends BaseGossipMessage implements IMessage {
                 for (MembershipEvent event : pingMessage.events) {
                     out.writeInt(event.nodeId());
                     out.writeShort(event.type().id());
-                    out.writeBytes(event.socketAddress().getAddress().getAddress());
-                    out.writeShort(event.socketAddress().getPort());
+                    NodeAddress address = event.address();
+                    if (!address.isIPv4()) {
+                        throw new IOException("Only IPv4 member addresses can be serialized: " + address);
+                    }
+                    out.writeInt(address.ipv4());
+                    out.writeShort(address.port());
+                    out.writeInt(event.incarnationNumber());
+                    if (event.type() == MembershipEvent.Type.SUSPECT) {
+                        out.writeInt(event.originNodeId());
+                    }
                 }
             }
 
             out.writeInt(pingMessage.customUserData == null ? 0 : pingMessage.customUserData.size()); // write the length of the custom data
             if (pingMessage.customUserData != null && !pingMessage.customUserData.isEmpty()) {
                 for (CustomUserData userData : pingMessage.customUserData) {
-                    // write the length of the byte custom payload
+                    // write the fragment header and the length of the byte custom payload
+                    out.writeByte(userData.channel());
+                    out.writeLong(userData.messageId());
+                    out.writeShort(userData.fragmentIndex());
+                    out.writeShort(userData.fragmentCount());
                     out.writeInt(userData.getData().length);
                     out.writeBytes(userData.getData());
                 }
@@ -138,23 +150,27 @@ public class PingAckMessage extends BaseGossipMessage implements IMessage {
             for (int i = 0; i < size; i++) {
                 int nodeId = in.readInt();
                 MembershipEvent.Type type = MembershipEvent.Type.fromId(in.readShort());
-                byte[] address = new byte[4];
-                in.readBytes(address);
-                InetAddress hostAddress = InetAddress.getByAddress(address);
-                int port = in.readShort();
+                // the raw address is kept as it is, no InetAddress is created or resolved for the event
+                NodeAddress address = NodeAddress.ofIPv4(in.readInt(), in.readUnsignedShort());
+                int incarnationNumber = in.readInt();
+                int originNodeId = type == MembershipEvent.Type.SUSPECT ? in.readInt() : MembershipEvent.NO_ORIGIN;
 
-                MembershipEvent membershipEvent = new MembershipEvent(type, nodeId, hostAddress.getHostAddress(), port);
+                MembershipEvent membershipEvent = new MembershipEvent(type, nodeId, address, incarnationNumber, originNodeId);
                 membershipEvents.add(membershipEvent);
             }
 
             int customUserDataSize = in.readInt();// read the size of the custom data
             List<CustomUserData> customUserData = new ArrayList<>(customUserDataSize);
             for (int i = 0; i < customUserDataSize; i++) {
-                // read the size of the payload first
+                // read the fragment header and the size of the payload first
+                int channel = in.readUnsignedByte();
+                long messageId = in.readLong();
+                int fragmentIndex = in.readUnsignedShort();
+                int fragmentCount = in.readUnsignedShort();
                 int payloadSize = in.readInt();
                 byte[] payload = new byte[payloadSize];
                 in.readBytes(payload);
-                customUserData.add(new CustomUserData(payload));
+                customUserData.add(new CustomUserData(channel, messageId, fragmentIndex, fragmentCount, payload));
             }
 
             PingAckMessage pingAckMessage = new PingAckMessage(base, sequenceNumber, membershipEvents);
@@ -168,8 +184,13 @@ public class PingAckMessage extends BaseGossipMessage implements IMessage {
         @Override
         public long serializedSize(PingAckMessage pingMessage) {
             long baseSize = BaseGossipMessage.Serializer.INSTANCE.serializedSize(pingMessage) + Long.BYTES;
-            int eventsSize = (pingMessage.events == null ? 0 : pingMessage.events.size()) * (Integer.BYTES + Short.BYTES + 4 + Short.BYTES);
-            int customPayloadSize = pingMessage.totalCustomPayloadSizeInBytes() + (pingMessage.customUserData == null ? 0 : pingMessage.customUserData.size()) * Integer.BYTES;
+            int eventsSize = 0;
+            if (pingMessage.events != null) {
+                for (MembershipEvent event : pingMessage.events) {
+                    eventsSize += event.serializedSize();
+                }
+            }
+            int customPayloadSize = pingMessage.totalCustomPayloadSizeInBytes();
             return baseSize + Integer.BYTES + eventsSize + Integer.BYTES + customPayloadSize; // base + length + events
         }
     }
@@ -35,37 +35,45 @@ public class PingAckMessageBuilder {
 
     public static Message pingMessageForNode(int sourceNodeId, int destinationNodeId, long sequenceNumber) {
         // build the header
-        Header header = new Header(MessageType.PING, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.PING, MessageVersion.VERSION_2);
         PingAckMessage pingMessage = new PingAckMessage(sourceNodeId, destinationNodeId, sequenceNumber);
 
         return new Message(header, pingMessage);
     }
 
+    public static Message pingMessageForNode(int sourceNodeId, int destinationNodeId, long sequenceNumber, List<MembershipEvent> events, List<CustomUserData> data) {
+        // pings disseminate the membership events as well as the acks, together with the custom user data
+        Header header = new Header(MessageType.PING, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.PIGGYBACKING));
+        PingAckMessage pingMessage = new PingAckMessage(sourceNodeId, destinationNodeId, sequenceNumber, events);
+        pingMessage.addCustomUserData(data);
+
+        return new Message(header, pingMessage);
+    }
+
     public static Message seedPingMessages(int sourceNodeId, long sequenceNumber) {
-        Header header = new Header(MessageType.PING, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.PING, MessageVersion.VERSION_2);
         PingAckMessage pingAckMessage = new PingAckMessage(sourceNodeId, PingAckMessage.NULL_DESTINATION_ID, sequenceNumber);
 
         return new Message(header, pingAckMessage);
     }
 
     public static Message pingAckMessageForNode(PingAckMessage requestPingMessage) {
-        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
         PingAckMessage pingMessage = new PingAckMessage(requestPingMessage.destinationNodeId(), requestPingMessage.sourceNodeId(), requestPingMessage.sequenceNumber());
         return new Message(header, pingMessage);
     }
 
     public static Message pingAckMessageForNode(int sourceNodeId, int destinationNodeId, long sequenceNumber) {
-        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_1);
+        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
         PingAckMessage pingMessage = new PingAckMessage(sourceNodeId, destinationNodeId, sequenceNumber);
         return new Message(header, pingMessage);
     }
 
     public static Message attachPiggybacks(PingAckMessage replyAckMessage, List<MembershipEvent> events) {
-        // create message flags with a piggyback flag
-        MessageFlags messageFlags = new MessageFlags();
-        messageFlags.addFlag(MessageFlags.MessageFlag.PIGGYBACKING);
+        // create message flags with a piggyback flag, acks are failure detection messages and stay urgent
+        MessageFlags messageFlags = MessageFlags.of(MessageFlags.MessageFlag.PIGGYBACKING, MessageFlags.MessageFlag.URGENT_BIT);
 
-        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_1, messageFlags);
+        Header header = new Header(MessageType.ACK, MessageVersion.VERSION_2, messageFlags);
         PingAckMessage pingMessage = new PingAckMessage(
                 replyAckMessage.sourceNodeId(),
                 replyAckMessage.destinationNodeId(),
@@ -79,7 +87,7 @@ public class PingAckMessageBuilder {
         MessageFlags messageFlags = new MessageFlags();
         messageFlags.addFlag(MessageFlags.MessageFlag.PIGGYBACKING);
 
-        Header header = new Header(MessageType.PING, MessageVersion.VERSION_1, messageFlags);
+        Header header = new Header(MessageType.PING, MessageVersion.VERSION_2, messageFlags);
         PingAckMessage pingAckMessage = new PingAckMessage(
                 pingMessage.sourceNodeId(),
                 pingMessage.destinationNodeId(),
@@ -108,7 +108,7 @@ public class PingRequestMessage extends BaseGossipMessage implements IMessage {
         }
 
         public static Message pingRequestMessageFor(int sourceNodeId, int destinationNodeId, int targetNodeId, long requestId) {
-            Header header = new Header(MessageType.PING_REQ, MessageVersion.VERSION_1);
+            Header header = new Header(MessageType.PING_REQ, MessageVersion.VERSION_2, MessageFlags.of(MessageFlags.MessageFlag.URGENT_BIT));
             PingRequestMessage payload = new PingRequestMessage(sourceNodeId, destinationNodeId, targetNodeId, requestId);
 
             return new Message(header, payload);
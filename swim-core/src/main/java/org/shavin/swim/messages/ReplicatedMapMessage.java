@@ -0,0 +1,125 @@
+package org.shavin.swim.messages;
+
+import io.netty.buffer.ByteBuf;
+import org.shavin.swim.api.message.IGenericMessageSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Anti-entropy message of the replicated map. A MAP_DIGEST message carries the digest of the map of its source node,
+ * and is answered with MAP_ENTRIES messages carrying the encoded entries in which the maps differ.
+ */
+public class ReplicatedMapMessage extends BaseGossipMessage implements IMessage {
+
+    private final long[] digest;
+    private final List<byte[]> entries;
+
+    public ReplicatedMapMessage(int sourceNodeId, int destinationNodeId, long[] digest, List<byte[]> entries) {
+        super(sourceNodeId, destinationNodeId);
+        this.digest = digest;
+        this.entries = entries;
+    }
+
+    public ReplicatedMapMessage(BaseGossipMessage baseGossipMessage, long[] digest, List<byte[]> entries) {
+        this(baseGossipMessage.sourceNodeId(), baseGossipMessage.destinationNodeId(), digest, entries);
+    }
+
+    public long[] digest() {
+        return digest;
+    }
+
+    public List<byte[]> entries() {
+        return entries;
+    }
+
+    @Override
+    public Class<? extends IMessage> getType() {
+        return ReplicatedMapMessage.class;
+    }
+
+    @Override
+    public IGenericMessageSerializer<?, ?> serializer() {
+        return Serializer.INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("ReplicatedMap[ ").append(super.toString()).append(", digest buckets: ").append(digest.length)
+                .append(", entries: ").append(entries.size()).append("]");
+
+        return stringBuilder.toString();
+    }
+
+    public static class Serializer implements IGenericMessageSerializer<ReplicatedMapMessage, ReplicatedMapMessage> {
+
+        public static final Serializer INSTANCE = new Serializer();
+
+        @Override
+        public void serialize(ReplicatedMapMessage message, ByteBuf out) throws IOException {
+            BaseGossipMessage.Serializer.INSTANCE.serialize(message, out);
+            out.writeInt(message.digest.length);
+            for (long bucket : message.digest) {
+                out.writeLong(bucket);
+            }
+            out.writeInt(message.entries.size());
+            for (byte[] entry : message.entries) {
+                out.writeInt(entry.length);
+                out.writeBytes(entry);
+            }
+        }
+
+        @Override
+        public ReplicatedMapMessage deserialize(ByteBuf in) throws IOException {
+            BaseGossipMessage base = BaseGossipMessage.Serializer.INSTANCE.deserialize(in);
+            int digestSize = in.readInt();
+            if (digestSize < 0 || digestSize > in.readableBytes() / Long.BYTES) {
+                throw new IOException("Invalid digest size " + digestSize);
+            }
+            long[] digest = new long[digestSize];
+            for (int i = 0; i < digestSize; i++) {
+                digest[i] = in.readLong();
+            }
+            int entriesSize = in.readInt();
+            if (entriesSize < 0 || entriesSize > in.readableBytes() / Integer.BYTES) {
+                throw new IOException("Invalid entries size " + entriesSize);
+            }
+            List<byte[]> entries = new ArrayList<>(entriesSize);
+            for (int i = 0; i < entriesSize; i++) {
+                int entryLength = in.readInt();
+                if (entryLength < 0 || entryLength > in.readableBytes()) {
+                    throw new IOException("Invalid entry length " + entryLength);
+                }
+                byte[] entry = new byte[entryLength];
+                in.readBytes(entry);
+                entries.add(entry);
+            }
+            return new ReplicatedMapMessage(base, digest, entries);
+        }
+
+        @Override
+        public long serializedSize(ReplicatedMapMessage message) {
+            long size = BaseGossipMessage.Serializer.INSTANCE.serializedSize(message) + Integer.BYTES
+                    + (long) message.digest.length * Long.BYTES + Integer.BYTES;
+            for (byte[] entry : message.entries) {
+                size += Integer.BYTES + entry.length;
+            }
+            return size;
+        }
+    }
+
+    public static class Builder {
+
+        public static Message digestMessageFor(int sourceNodeId, int destinationNodeId, long[] digest) {
+            Header header = new Header(MessageType.MAP_DIGEST, MessageVersion.VERSION_2);
+            return new Message(header, new ReplicatedMapMessage(sourceNodeId, destinationNodeId, digest, List.of()));
+        }
+
+        public static Message entriesMessageFor(int sourceNodeId, int destinationNodeId, List<byte[]> entries) {
+            Header header = new Header(MessageType.MAP_ENTRIES, MessageVersion.VERSION_2);
+            return new Message(header, new ReplicatedMapMessage(sourceNodeId, destinationNodeId, new long[0], entries));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.shavin.swim.transport;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how many datagrams were handled per batch by the transport layer,
+ * e.g. the number of datagrams written per flush or read per read loop of a socket.
+ * All the methods are thread-safe.
+ * @author shavin
+ */
+public class BatchStatistics {
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder packets = new LongAdder();
+    private final AtomicLong maxBatchSize = new AtomicLong(0L);
+
+    /**
+     * Record a completed batch with the given number of datagrams. Empty batches are ignored.
+     *
+     * @param batchSize number of datagrams handled in the batch
+     */
+    public void record(int batchSize) {
+        if (batchSize <= 0) {
+            return;
+        }
+        batches.increment();
+        packets.add(batchSize);
+        maxBatchSize.accumulateAndGet(batchSize, Math::max);
+    }
+
+    /**
+     * @return total number of batches recorded so far
+     */
+    public long totalBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return total number of datagrams in all the recorded batches
+     */
+    public long totalPackets() {
+        return packets.sum();
+    }
+
+    /**
+     * @return the largest batch recorded so far
+     */
+    public long maxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * @return the average number of datagrams per batch, or zero if nothing was recorded yet
+     */
+    public double averageBatchSize() {
+        long totalBatches = totalBatches();
+        return totalBatches == 0 ? 0.0 : (double) totalPackets() / totalBatches;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append("BatchStatistics[batches=").append(totalBatches())
+                .append(", packets=").append(totalPackets())
+                .append(", maxBatchSize=").append(maxBatchSize())
+                .append("]");
+
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package org.shavin.swim.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gathers the outgoing datagrams of a channel and flushes them together once per event loop tick.
+ *
+ * Every write is only added to the outbound buffer of the channel, and the first write after a flush schedules
+ * a single flush task on the event loop of the channel. Writes issued before that task runs, either from the event
+ * loop itself or from other threads, end up in the same flush, which lets the native epoll transport hand them to
+ * the kernel with one {@code sendmmsg} call instead of one syscall per datagram.
+ * @author shavin
+ */
+public class DatagramBatchWriter {
+
+    private final Channel channel;
+    private final BatchStatistics statistics;
+    private final Queue<DatagramPacket> externalWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private int pendingWrites = 0; // only accessed from the event loop
+    private final Runnable flushTask = this::flush;
+
+    public DatagramBatchWriter(Channel channel, BatchStatistics statistics) {
+        this.channel = channel;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Add the packet to the outbound buffer of the channel and make sure a flush is scheduled for it.
+     *
+     * @param packet the datagram to write, ownership of its content is transferred to the channel
+     */
+    public void write(DatagramPacket packet) {
+        if (channel.eventLoop().inEventLoop()) {
+            // the flush task is executed after the current task, so the packet is flushed together with the others
+            channel.write(packet, channel.voidPromise());
+            pendingWrites++;
+        } else {
+            // writes from other threads are handed to the flush task, which adds them to the outbound buffer
+            externalWrites.offer(packet);
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(flushTask);
+        }
+    }
+
+    private void flush() {
+        // clear the flag first, so that a write racing with this flush schedules another one
+        flushScheduled.set(false);
+
+        DatagramPacket packet;
+        while ((packet = externalWrites.poll()) != null) {
+            channel.write(packet, channel.voidPromise());
+            pendingWrites++;
+        }
+
+        statistics.record(pendingWrites);
+        pendingWrites = 0;
+        channel.flush();
+    }
+
+    /**
+     * Release the packets which were not handed to the channel yet, used when the channel is closed.
+     */
+    public void discardPending() {
+        DatagramPacket packet;
+        while ((packet = externalWrites.poll()) != null) {
+            packet.release();
+        }
+    }
+}
@@ -2,22 +2,28 @@ package org.shavin.swim.transport;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.*;
 import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import org.shavin.swim.api.transport.MessageHandler;
 import org.shavin.swim.api.transport.TransportLayer;
+import org.shavin.swim.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class NettyUdpTransportLayer implements TransportLayer {
@@ -28,21 +34,45 @@ public class NettyUdpTransportLayer implements TransportLayer {
     }
 
     private UDPTransportConfig udpTransportConfig;
+    // event loop group and allocator shared with other transports, owned by the caller, or null to create our own
+    private final EventLoopGroup sharedWorker;
+    private final ByteBufAllocator allocator;
 
     private InetSocketAddress bindAddress;
     private EventLoopGroup boss;
     private EventLoopGroup worker;
     private ChannelGroup channelGroup;
     private Channel channel;
+    private Channel[] channels;
+    private EventLoop protocolEventLoop;
     private Bootstrap bootstrap;
     private State state = State.NOT_RUNNING;
     private UDPChannelInitializer udpChannelInitializer;
 
     // metrics related fields
     private final AtomicLong totalPacketsDropped = new AtomicLong(0L);
+    private final AtomicLong totalUrgentPacketsWrittenWhileBusy = new AtomicLong(0L);
+    private final AtomicLong sendCounter = new AtomicLong(0L);
+    private final BatchStatistics sendBatchStatistics = new BatchStatistics();
+    private final BatchStatistics receiveBatchStatistics = new BatchStatistics();
+    private DatagramBatchWriter[] batchWriters;
 
     public NettyUdpTransportLayer(UDPTransportConfig udpTransportConfig) {
+        this(udpTransportConfig, null, null);
+    }
+
+    /**
+     * Create a transport on an event loop group shared with other transports, e.g. of many nodes hosted by one JVM.
+     * The group and the allocator are owned by the caller and are not shut down when the transport is stopped. The
+     * transport binds a single socket, and the transport mode and event loop threads of the config are ignored.
+     *
+     * @param sharedWorker the event loop group to register the channel on, an epoll group for the native transport
+     * @param allocator the allocator of the buffers of the channel, or null for the default allocator
+     */
+    public NettyUdpTransportLayer(UDPTransportConfig udpTransportConfig, EventLoopGroup sharedWorker, ByteBufAllocator allocator) {
         this.udpTransportConfig = udpTransportConfig;
+        this.sharedWorker = sharedWorker;
+        this.allocator = allocator;
         this.channelGroup = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     }
 
@@ -63,36 +93,89 @@ public class NettyUdpTransportLayer implements TransportLayer {
 
         log.info("Starting UDP transport layer on port {}", port);
 
-        // create an event loop group based on the epoll availability in the platform
-        if (Epoll.isAvailable()) {
-            worker = new EpollEventLoopGroup(udpTransportConfig.getEventLoopThreadsCount());
+        // create an event loop group and pick the matching datagram channel type based on the configured transport mode
+        boolean useEpoll = sharedWorker != null ? sharedWorker instanceof EpollEventLoopGroup : useNativeTransport();
+        int eventLoopThreadsCount = sharedWorker != null ? 1 : udpTransportConfig.getEventLoopThreadsCount();
+        Class<? extends Channel> channelClass;
+        if (sharedWorker != null) {
+            // the channel goes to the next event loop of the shared group
+            worker = sharedWorker;
+            channelClass = useEpoll ? EpollDatagramChannel.class : NioDatagramChannel.class;
+        } else if (useEpoll) {
+            worker = new EpollEventLoopGroup(eventLoopThreadsCount);
+            channelClass = EpollDatagramChannel.class;
         } else {
             // create an event loop group for packet handling
-            worker = new NioEventLoopGroup(udpTransportConfig.getEventLoopThreadsCount());
+            worker = new NioEventLoopGroup(eventLoopThreadsCount);
+            channelClass = NioDatagramChannel.class;
         }
 
+        // with the native transport, bind one socket per event loop to the same port and let the kernel
+        // distribute the inbound datagrams between them, otherwise a single socket receives all the traffic
+        boolean reusePort = useEpoll && udpTransportConfig.isReusePort() && eventLoopThreadsCount > 1;
+        int socketsCount = reusePort ? eventLoopThreadsCount : 1;
+
         this.bindAddress = new InetSocketAddress(port);
 
+        // in the event loop dispatch mode, one event loop of the group runs the message handler and the protocol timers
+        UDPTransportConfig.DispatchMode dispatchMode = udpTransportConfig.getDispatchMode();
+        protocolEventLoop = dispatchMode == UDPTransportConfig.DispatchMode.EVENT_LOOP ? worker.next() : null;
+
         try {
-            udpChannelInitializer = new UDPChannelInitializer(handler);
+            udpChannelInitializer = new UDPChannelInitializer(handler, udpTransportConfig.isBatchedIo() ? receiveBatchStatistics : null,
+                    udpTransportConfig, protocolEventLoop);
             bootstrap = new Bootstrap();
             bootstrap.group(worker)
-                    .channel(NioDatagramChannel.class)
+                    .channel(channelClass)
                     .option(ChannelOption.SO_BROADCAST, true)
                     .option(ChannelOption.AUTO_CLOSE, true)
                     .option(ChannelOption.SO_RCVBUF, 1024 * 1024 * 10)
                     .option(ChannelOption.SO_SNDBUF, 1024 * 1024 * 10)
                     .handler(udpChannelInitializer.initializer());
 
+            if (allocator != null) {
+                bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+            }
+
+            if (reusePort) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            if (useEpoll && udpTransportConfig.isBatchedIo()) {
+                // a receive buffer large enough for several datagrams makes the epoll channel read them with recvmmsg
+                int maxDatagramSize = udpTransportConfig.getMaxDatagramSize();
+                bootstrap.option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, maxDatagramSize)
+                        .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(maxDatagramSize * udpTransportConfig.getReceiveBatchSize()));
+                if (udpTransportConfig.isUdpGro()) {
+                    bootstrap.option(EpollChannelOption.UDP_GRO, true);
+                }
+            }
+
             ChannelFuture channelFuture = bootstrap.bind(this.bindAddress)
                     .sync();
 
             channel  = channelFuture.channel();
             channelGroup.add(channel);
 
+            // resolve the actual bound port, so that the other sockets share the same port even for ephemeral ports
             this.bindAddress = (InetSocketAddress) channel.localAddress();
 
-            log.info("UDP transport layer started on port {}", port);
+            // each bind registers the new channel on the next event loop of the group
+            channels = new Channel[socketsCount];
+            channels[0] = channel;
+            for (int i = 1; i < socketsCount; i++) {
+                channels[i] = bootstrap.bind(this.bindAddress).sync().channel();
+                channelGroup.add(channels[i]);
+            }
+
+            if (udpTransportConfig.isBatchedIo()) {
+                batchWriters = new DatagramBatchWriter[socketsCount];
+                for (int i = 0; i < socketsCount; i++) {
+                    batchWriters[i] = new DatagramBatchWriter(channels[i], sendBatchStatistics);
+                }
+            }
+
+            log.info("UDP transport layer started on port {} using {} transport with {} socket(s)", bindAddress.getPort(), useEpoll ? "epoll" : "nio", socketsCount);
             state = State.RUNNING;
 
             channel.closeFuture().addListener(future -> {
@@ -105,18 +188,135 @@ public class NettyUdpTransportLayer implements TransportLayer {
 
             // release all resources used to initialize the http server
             channelGroup.close().awaitUninterruptibly();
+            if (sharedWorker == null) {
+                worker.shutdownGracefully();
+            }
 
-            try {
-                if (bootstrap != null) {
+            state = State.FAILED;
+            return GlobalEventExecutor.INSTANCE.newFailedFuture(exception);
+        }
+    }
 
+    private boolean useNativeTransport() {
+        switch (udpTransportConfig.getTransportMode()) {
+            case NIO:
+                return false;
+            case EPOLL:
+                if (!Epoll.isAvailable()) {
+                    log.warn("Native epoll transport is not available on this platform, falling back to NIO transport", Epoll.unavailabilityCause());
+                    return false;
                 }
-            } catch (Exception e) {
-                e.addSuppressed(exception);
-            }
+                return true;
+            default:
+                return Epoll.isAvailable();
+        }
+    }
 
-            state = State.FAILED;
-            return channel.newFailedFuture(exception);
+    /**
+     * Select the channel to write an outgoing datagram. When called from one of the event loops the channel bound
+     * to that event loop is used, so that the write does not have to hop to another thread. Otherwise, the writes are
+     * distributed between the channels in round-robin order.
+     */
+    private int selectChannelIndex() {
+        Channel[] channels = this.channels;
+        if (channels.length == 1) {
+            return 0;
+        }
+
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i].eventLoop().inEventLoop()) {
+                return i;
+            }
         }
+        return (int) Math.floorMod(sendCounter.getAndIncrement(), (long) channels.length);
+    }
+
+    /**
+     * Returns the event loop which runs the message handler in the event loop dispatch mode.
+     * In the worker pool dispatch mode the messages are handled on several threads, and null is returned.
+     */
+    @Override
+    public ScheduledExecutorService protocolExecutor() {
+        return protocolEventLoop;
+    }
+
+    /**
+     * @return number of datagrams dropped because the channel was not writable
+     */
+    public long getTotalPacketsDropped() {
+        return totalPacketsDropped.get();
+    }
+
+    /**
+     * @return number of received datagrams dropped because their source exceeded the per source rate limit
+     */
+    public long getTotalRateLimitedPackets() {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? 0L : udpChannelInitializer.getRateLimitedPackets();
+    }
+
+    /**
+     * @return number of datagrams of the given source dropped because it exceeded the per source rate limit, only
+     * counted while the source is tracked by the rate limiter
+     */
+    public long getRateLimitedPackets(InetSocketAddress source) {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? 0L : udpChannelInitializer.getRateLimitedPackets(source);
+    }
+
+    /**
+     * @return number of urgent datagrams written even though the channel was not writable, instead of being dropped
+     */
+    public long getTotalUrgentPacketsWrittenWhileBusy() {
+        return totalUrgentPacketsWrittenWhileBusy.get();
+    }
+
+    /**
+     * @return number of received datagrams tagged as urgent, which were served from the high priority lane
+     */
+    public long getTotalUrgentPacketsReceived() {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? 0L : udpChannelInitializer.getUrgentPackets();
+    }
+
+    /**
+     * @return number of received datagrams dropped because they could not be dispatched to the message handler
+     */
+    public long getTotalPacketsRejected() {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? 0L : udpChannelInitializer.getRejectedPackets();
+    }
+
+    /**
+     * @return number of received datagrams tagged as urgent which were dropped because the high priority lane was
+     *         saturated, included in {@link #getTotalPacketsRejected()}
+     */
+    public long getTotalUrgentPacketsRejected() {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? 0L : udpChannelInitializer.getRejectedUrgentPackets();
+    }
+
+    /**
+     * @return the ring buffer stage which hands the received datagrams to the consumer thread, exposing its occupancy
+     * and overflow counters, or null if the transport is not running in the ring buffer dispatch mode
+     */
+    public RingBufferPacketDispatcher getReceiveRingBuffer() {
+        UDPChannelInitializer udpChannelInitializer = this.udpChannelInitializer;
+        return udpChannelInitializer == null ? null : udpChannelInitializer.getRingBufferDispatcher();
+    }
+
+    /**
+     * @return number of datagrams written per flush, only recorded when batched I/O is enabled
+     */
+    public BatchStatistics getSendBatchStatistics() {
+        return sendBatchStatistics;
+    }
+
+    /**
+     * @return number of datagrams received per read loop, only recorded when batched I/O is enabled
+     */
+    public BatchStatistics getReceiveBatchStatistics() {
+        return receiveBatchStatistics;
     }
 
     @Override
@@ -127,19 +327,47 @@ public class NettyUdpTransportLayer implements TransportLayer {
             return;
         }
 
+        // allocate the byte buffer using channel's allocator for efficient zero copy memory allocations
+        ByteBuf buffer = channel.alloc().ioBuffer(data.length);
+        buffer.writeBytes(data);
+
+        send(address, buffer);
+    }
+
+    @Override
+    public void send(InetSocketAddress address, ByteBuf data) {
+        // check if the channel is available
+        if (this.channel == null || !channel.isActive()) {
+            log.warn("UDP transport layer is not running, cannot send message to {}", address);
+            ReferenceCountUtil.release(data);
+            return;
+        }
+
+        int channelIndex = selectChannelIndex();
+        Channel channel = channels[channelIndex];
+
         // handling the backpressure by simply checking whether the udp channel is writable or not
         // if the channel is full, it's better to drop the packets according to UDP analogy
-        if (!this.channel.isWritable()) {
-            log.warn("UDP Channel is busy. Dropping packets due to high udp traffic to {}", address);
-            totalPacketsDropped.incrementAndGet();
-            return;
+        if (!channel.isWritable()) {
+            if (udpTransportConfig.isPriorityLanes() && Message.Serializer.isUrgent(data)) {
+                // failure detection messages are small, they are still queued so that only the gossip data is shed
+                totalUrgentPacketsWrittenWhileBusy.incrementAndGet();
+            } else {
+                log.warn("UDP Channel is busy. Dropping packets due to high udp traffic to {}", address);
+                totalPacketsDropped.incrementAndGet();
+                ReferenceCountUtil.release(data);
+                return;
+            }
         }
 
-        // allocate the byte buffer using channel's allocator for efficient zero copy memory allocations
-        ByteBuf buffer = channel.alloc().ioBuffer(data.length);
-        buffer.writeBytes(data);
+        // the datagram packet takes over the ownership of the buffer and releases it once written
+        DatagramPacket packet = new io.netty.channel.socket.DatagramPacket(data, address);
+        if (batchWriters != null) {
+            // gathered with the other datagrams of this event loop tick and flushed together
+            batchWriters[channelIndex].write(packet);
+            return;
+        }
 
-        DatagramPacket packet = new io.netty.channel.socket.DatagramPacket(buffer, address);
         channel.writeAndFlush(packet).addListener(future -> {
             if (future.isSuccess()) {
                 // packet sending is a success
@@ -170,7 +398,12 @@ public class NettyUdpTransportLayer implements TransportLayer {
         try {
             try {
                 channelGroup.close().awaitUninterruptibly();
-                if (worker != null) {
+                if (batchWriters != null) {
+                    for (DatagramBatchWriter batchWriter : batchWriters) {
+                        batchWriter.discardPending();
+                    }
+                }
+                if (worker != null && sharedWorker == null) {
                     worker.shutdownGracefully().awaitUninterruptibly();
                 }
                 udpChannelInitializer.shutdown();
@@ -0,0 +1,152 @@
+package org.shavin.swim.transport;
+
+import io.netty.buffer.ByteBuf;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded multi-producer / single-consumer ring buffer of received packets.
+ *
+ * The slots are allocated once up front, so handing a packet over does not allocate a queue node. Each slot carries
+ * a sequence number which tells the producers and the consumer whether the slot is free for the current lap or
+ * holds a published packet. Producers claim a slot with a single CAS on the tail counter, the consumer owns the
+ * head counter and drains the published packets in batches without any CAS.
+ *
+ * The ring buffer does not take ownership of the buffers, the consumer is responsible for releasing the drained
+ * packets and the producer for the packets which were not accepted.
+ * @author shavin
+ */
+public class PacketRingBuffer {
+
+    /**
+     * Receives the packets drained from the ring buffer.
+     */
+    @FunctionalInterface
+    public interface PacketConsumer {
+        void accept(ByteBuf buffer, InetSocketAddress sender);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final ByteBuf[] buffers;
+    private final InetSocketAddress[] senders;
+
+    private final AtomicLong tail = new AtomicLong(0L);
+    // only written by the consumer, read by the other threads to calculate the occupancy
+    private final AtomicLong head = new AtomicLong(0L);
+    private final LongAdder overflowCount = new LongAdder();
+
+    /**
+     * @param capacity the number of slots, must be a power of two
+     */
+    public PacketRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring buffer capacity must be a positive power of two.");
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.buffers = new ByteBuf[capacity];
+        this.senders = new InetSocketAddress[capacity];
+
+        // slot i is free for the producer claiming the position i of the first lap
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish a packet to the ring buffer. Safe to be called from any number of threads.
+     *
+     * @return true if the packet was published, false if the ring buffer is full
+     */
+    public boolean offer(ByteBuf buffer, InetSocketAddress sender) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                // the slot is free for this lap, claim it
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffers[index] = buffer;
+                    senders[index] = sender;
+                    // publish the slot to the consumer, the volatile write orders the slot contents before it
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // the slot still holds the packet of the previous lap, the ring buffer is full
+                overflowCount.increment();
+                return false;
+            }
+            // otherwise another producer claimed the position in the meantime, retry with the new tail
+        }
+    }
+
+    /**
+     * Hand up to {@code maxBatchSize} published packets to the consumer, in the order they were claimed.
+     * Must only be called from the single consumer thread.
+     *
+     * @return the number of drained packets
+     */
+    public int drain(PacketConsumer consumer, int maxBatchSize) {
+        long position = head.get();
+        int drained = 0;
+
+        while (drained < maxBatchSize) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                // the slot is not published yet
+                break;
+            }
+
+            ByteBuf buffer = buffers[index];
+            InetSocketAddress sender = senders[index];
+            buffers[index] = null;
+            senders[index] = null;
+            // free the slot for the producers of the next lap
+            sequences.set(index, position + capacity);
+            position++;
+            drained++;
+
+            consumer.accept(buffer, sender);
+        }
+
+        if (drained > 0) {
+            head.lazySet(position);
+        }
+        return drained;
+    }
+
+    /**
+     * @return true if no published packet is waiting for the consumer
+     */
+    public boolean isEmpty() {
+        long position = head.get();
+        return sequences.get((int) (position & mask)) != position + 1;
+    }
+
+    /**
+     * @return approximate number of claimed slots which were not drained yet
+     */
+    public int occupancy() {
+        long occupancy = tail.get() - head.get();
+        return (int) Math.max(0L, Math.min(occupancy, capacity));
+    }
+
+    /**
+     * @return number of packets rejected because the ring buffer was full
+     */
+    public long overflowCount() {
+        return overflowCount.sum();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,34 @@
+package org.shavin.swim.transport;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Counts the datagrams delivered by each read loop of a channel and records them as one batch.
+ * With batched I/O on the native transport a read loop drains the socket with {@code recvmmsg} calls,
+ * so the recorded batch sizes show how many datagrams are received per wakeup of the event loop.
+ * One instance is needed per channel, the recorded statistics can be shared between the channels.
+ * @author shavin
+ */
+public class ReadBatchCounter extends ChannelInboundHandlerAdapter {
+
+    private final BatchStatistics statistics;
+    private int readsInBatch = 0; // only accessed from the event loop of the channel
+
+    public ReadBatchCounter(BatchStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readsInBatch++;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        statistics.record(readsInBatch);
+        readsInBatch = 0;
+        ctx.fireChannelReadComplete();
+    }
+}
@@ -0,0 +1,154 @@
+package org.shavin.swim.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the received packets from the event loops to a single consumer thread through a {@link PacketRingBuffer}.
+ * With priority lanes enabled, urgent packets are published to a second ring buffer which the consumer drains
+ * before every batch of the regular ring buffer.
+ *
+ * The consumer thread drains the ring buffer in batches and invokes the packet consumer for every packet. When the
+ * ring buffer is empty, it spins briefly and then parks until a producer publishes a new packet, so an idle
+ * transport does not burn a core.
+ * @author shavin
+ */
+public class RingBufferPacketDispatcher {
+    private final static Logger log = LoggerFactory.getLogger(RingBufferPacketDispatcher.class);
+
+    private final static int SPINS_BEFORE_PARK = 100;
+    private final static long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PacketRingBuffer ringBuffer;
+    private final PacketRingBuffer urgentRingBuffer;
+    private final PacketRingBuffer.PacketConsumer consumer;
+    private final int drainBatchSize;
+    private final BatchStatistics drainStatistics = new BatchStatistics();
+    private final Thread consumerThread;
+
+    private volatile boolean running = true;
+    private volatile boolean consumerParked = false;
+
+    /**
+     * @param capacity number of slots of the ring buffer, must be a power of two
+     * @param drainBatchSize maximum number of packets handed to the consumer per drain
+     * @param priorityLanes whether urgent packets are published to a separate ring buffer drained first
+     * @param consumer handles the drained packets on the consumer thread, the buffers are released afterwards
+     */
+    public RingBufferPacketDispatcher(int capacity, int drainBatchSize, boolean priorityLanes, PacketRingBuffer.PacketConsumer consumer) {
+        this.ringBuffer = new PacketRingBuffer(capacity);
+        // urgent packets are small and rare compared to the gossip traffic, a quarter of the slots is plenty
+        this.urgentRingBuffer = priorityLanes ? new PacketRingBuffer(Math.max(capacity / 4, 1)) : null;
+        this.drainBatchSize = drainBatchSize;
+        this.consumer = consumer;
+        this.consumerThread = new DefaultThreadFactory("udp-ring-consumer", true).newThread(this::consumeLoop);
+        this.consumerThread.start();
+    }
+
+    /**
+     * Publish a received packet to the consumer thread. The ring buffer takes over the ownership of the buffer
+     * only if the packet is accepted.
+     *
+     * @param urgent whether the packet is published to the urgent ring buffer, ignored without priority lanes
+     * @return true if the packet was accepted, false if the ring buffer is full or the dispatcher is stopped
+     */
+    public boolean dispatch(ByteBuf buffer, InetSocketAddress sender, boolean urgent) {
+        PacketRingBuffer target = urgent && urgentRingBuffer != null ? urgentRingBuffer : ringBuffer;
+        if (!running || !target.offer(buffer, sender)) {
+            return false;
+        }
+
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+        return true;
+    }
+
+    private void consumeLoop() {
+        int idleSpins = 0;
+        while (running) {
+            int drained = 0;
+            if (urgentRingBuffer != null) {
+                drained += urgentRingBuffer.drain(this::handlePacket, drainBatchSize);
+            }
+            drained += ringBuffer.drain(this::handlePacket, drainBatchSize);
+            if (drained > 0) {
+                drainStatistics.record(drained);
+                idleSpins = 0;
+                continue;
+            }
+
+            if (idleSpins++ < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            // announce the park before checking the ring buffer again, so a producer publishing in between unparks us,
+            // the park is bounded in any case to recover from a missed wake up
+            consumerParked = true;
+            if (isEmpty() && running) {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            }
+            consumerParked = false;
+            idleSpins = 0;
+        }
+
+        // release whatever is still waiting in the ring buffer
+        ringBuffer.drain((buffer, sender) -> ReferenceCountUtil.release(buffer), Integer.MAX_VALUE);
+        if (urgentRingBuffer != null) {
+            urgentRingBuffer.drain((buffer, sender) -> ReferenceCountUtil.release(buffer), Integer.MAX_VALUE);
+        }
+    }
+
+    private boolean isEmpty() {
+        return ringBuffer.isEmpty() && (urgentRingBuffer == null || urgentRingBuffer.isEmpty());
+    }
+
+    private void handlePacket(ByteBuf buffer, InetSocketAddress sender) {
+        try {
+            consumer.accept(buffer, sender);
+        } catch (Exception e) {
+            log.error("Failed to process packet from {}", sender, e);
+        } finally {
+            ReferenceCountUtil.release(buffer);
+        }
+    }
+
+    /**
+     * @return approximate number of packets waiting in the ring buffers
+     */
+    public int occupancy() {
+        return ringBuffer.occupancy() + (urgentRingBuffer == null ? 0 : urgentRingBuffer.occupancy());
+    }
+
+    /**
+     * @return number of packets rejected because their ring buffer was full
+     */
+    public long overflowCount() {
+        return ringBuffer.overflowCount() + (urgentRingBuffer == null ? 0 : urgentRingBuffer.overflowCount());
+    }
+
+    /**
+     * @return number of packets handed to the consumer per drain
+     */
+    public BatchStatistics drainStatistics() {
+        return drainStatistics;
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
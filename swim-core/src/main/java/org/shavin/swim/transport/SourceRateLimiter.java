@@ -0,0 +1,108 @@
+package org.shavin.swim.transport;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * First handler of the datagram pipeline, which limits the rate of the packets accepted from every source address
+ * with a token bucket per source. Packets over the limit are released right away on the event loop, before they
+ * are copied, deserialized or queued for the worker threads.
+ *
+ * The buckets are keyed by the source address alone, so a source can not escape its limit by sending from many
+ * ports. Every channel gets its own rate limiter, so the bucket table is only touched by the event loop of that
+ * channel. With {@code SO_REUSEPORT} the kernel pins the datagrams of a source address and port to one socket, the
+ * datagrams a source sends from several ports may be spread over the sockets, each of which limits them separately.
+ * @author shavin
+ */
+public class SourceRateLimiter extends ChannelInboundHandlerAdapter {
+
+    private final static long IDLE_SOURCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final SourceTokenBucketTable bucketTable;
+    private final LongAdder totalDroppedPackets;
+    private long lastEvictionNanos = System.nanoTime();
+
+    /**
+     * @param packetsPerSecond the sustained number of packets accepted per second from a single source
+     * @param burst the number of packets a single source may send in a burst
+     * @param maxSources the maximum number of sources tracked by this channel
+     * @param totalDroppedPackets counter of the dropped packets, shared by the rate limiters of all the channels
+     */
+    public SourceRateLimiter(double packetsPerSecond, int burst, int maxSources, LongAdder totalDroppedPackets) {
+        this.bucketTable = new SourceTokenBucketTable(packetsPerSecond, burst, maxSources);
+        this.totalDroppedPackets = totalDroppedPackets;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof DatagramPacket packet) {
+            long nowNanos = System.nanoTime();
+            if (nowNanos - lastEvictionNanos > IDLE_SOURCE_TIMEOUT_NANOS) {
+                bucketTable.evictIdle(nowNanos - IDLE_SOURCE_TIMEOUT_NANOS);
+                lastEvictionNanos = nowNanos;
+            }
+
+            if (!bucketTable.tryAcquire(sourceKey(packet.sender()), nowNanos)) {
+                totalDroppedPackets.increment();
+                ReferenceCountUtil.release(packet);
+                return;
+            }
+        }
+
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * @return the number of packets of the given source dropped by this channel, approximate when called
+     *         outside the event loop
+     */
+    public long droppedPackets(InetSocketAddress source) {
+        return bucketTable.droppedPackets(sourceKey(source));
+    }
+
+    /**
+     * Encode the address of a source, without its port, into the primitive key of the bucket table. An IPv4 address
+     * is encoded exactly in the low 32 bits, any other address is hashed into a key with the highest bit set, so that
+     * it never collides with an IPv4 address.
+     */
+    public static long sourceKey(InetSocketAddress address) {
+        InetAddress inetAddress = address.getAddress();
+        if (inetAddress instanceof Inet4Address) {
+            // the hash code of an IPv4 address is the address itself, this avoids copying the address bytes
+            return inetAddress.hashCode() & 0xFFFFFFFFL;
+        }
+        if (inetAddress == null) {
+            // unresolved address, only the host name is known
+            return mix(address.getHostString().hashCode()) | Long.MIN_VALUE;
+        }
+        // fold the 16 bytes of an IPv6 address into two longs
+        byte[] bytes = inetAddress.getAddress();
+        long high = 0L;
+        long low = 0L;
+        for (int i = 0; i < bytes.length; i++) {
+            if (i < Long.BYTES) {
+                high = (high << 8) | (bytes[i] & 0xFF);
+            } else {
+                low = (low << 8) | (bytes[i] & 0xFF);
+            }
+        }
+        return mix(high ^ mix(low)) | Long.MIN_VALUE;
+    }
+
+    private static long mix(long hash) {
+        // spread the bits of the hash over the whole key, as the 64 bit finalizer of MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,197 @@
+package org.shavin.swim.transport;
+
+/**
+ * Open addressing hash table of token buckets, keyed by a primitive long encoding the source address of a datagram.
+ *
+ * The buckets are stored in parallel primitive arrays, so tracking a source does not allocate a map entry or box
+ * the key. Collisions are resolved with linear probing and removals use backward shift deletion, so the table
+ * never needs tombstones. Sources which were not seen for the idle timeout are evicted by {@link #evictIdle(long)}.
+ *
+ * The table is not thread-safe, each instance is confined to the event loop of a single channel. The read-only
+ * statistics methods may be called from other threads and return approximate values in that case.
+ * @author shavin
+ */
+public class SourceTokenBucketTable {
+
+    // key zero marks an empty slot, a real key of zero is remapped to this value
+    private final static long ZERO_KEY_REPLACEMENT = 1L;
+    private final static int INITIAL_CAPACITY = 64;
+
+    private final double tokensPerNano;
+    private final double burst;
+    private final int maxSources;
+
+    private long[] keys;
+    private double[] tokens;
+    private long[] lastRefillNanos;
+    private long[] droppedPackets;
+    private int mask;
+    private int size;
+
+    /**
+     * @param packetsPerSecond the sustained number of packets accepted per second from a single source
+     * @param burst the number of packets a single source may send in a burst, at least one
+     * @param maxSources the maximum number of sources tracked at the same time
+     */
+    public SourceTokenBucketTable(double packetsPerSecond, int burst, int maxSources) {
+        this.tokensPerNano = packetsPerSecond / 1_000_000_000d;
+        this.burst = Math.max(burst, 1);
+        this.maxSources = maxSources;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        tokens = new double[capacity];
+        lastRefillNanos = new long[capacity];
+        droppedPackets = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Take a token from the bucket of the given source, creating a full bucket for a new source.
+     *
+     * @param key the encoded source address
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return true if the packet is within the limit of its source, or the source can not be tracked because the
+     *         table is full, false if the packet must be dropped
+     */
+    public boolean tryAcquire(long key, long nowNanos) {
+        key = key == 0 ? ZERO_KEY_REPLACEMENT : key;
+
+        int index = find(key);
+        if (keys[index] == 0) {
+            if (size >= maxSources) {
+                // fail open, a flood of new sources must not lock out the members which are already tracked
+                return true;
+            }
+            index = insert(key, nowNanos);
+        }
+
+        // refill the bucket for the time passed since the last packet of the source
+        double available = Math.min(burst, tokens[index] + (nowNanos - lastRefillNanos[index]) * tokensPerNano);
+        lastRefillNanos[index] = nowNanos;
+        if (available >= 1d) {
+            tokens[index] = available - 1d;
+            return true;
+        }
+
+        tokens[index] = available;
+        droppedPackets[index]++;
+        return false;
+    }
+
+    /**
+     * @return the number of packets dropped for the given source since it is tracked, zero if it is not tracked
+     */
+    public long droppedPackets(long key) {
+        key = key == 0 ? ZERO_KEY_REPLACEMENT : key;
+
+        long[] keys = this.keys;
+        long[] droppedPackets = this.droppedPackets;
+        int mask = keys.length - 1;
+        for (int index = slot(key, mask), probes = 0; probes < keys.length; index = (index + 1) & mask, probes++) {
+            if (keys[index] == 0) {
+                return 0L;
+            }
+            if (keys[index] == key) {
+                return droppedPackets[index];
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Remove the sources which did not send a packet since the given time, so that the table only keeps the
+     * sources which are currently active.
+     *
+     * @param idleSinceNanos sources whose last packet is older than this {@link System#nanoTime()} are removed
+     * @return the number of removed sources
+     */
+    public int evictIdle(long idleSinceNanos) {
+        int removed = 0;
+        int index = 0;
+        while (index < keys.length) {
+            if (keys[index] != 0 && lastRefillNanos[index] - idleSinceNanos < 0) {
+                // the backward shift may move another entry into this slot, so check the same slot again
+                remove(index);
+                removed++;
+            } else {
+                index++;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int find(long key) {
+        int index = slot(key, mask);
+        while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private int insert(long key, long nowNanos) {
+        // keep the load factor at or below one half, so that the probe sequences stay short
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+
+        int index = find(key);
+        keys[index] = key;
+        tokens[index] = burst;
+        lastRefillNanos[index] = nowNanos;
+        droppedPackets[index] = 0L;
+        size++;
+        return index;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldTokens = tokens;
+        long[] oldLastRefillNanos = lastRefillNanos;
+        long[] oldDroppedPackets = droppedPackets;
+
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = find(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                tokens[index] = oldTokens[i];
+                lastRefillNanos[index] = oldLastRefillNanos[i];
+                droppedPackets[index] = oldDroppedPackets[i];
+            }
+        }
+    }
+
+    private void remove(int index) {
+        // shift the following entries of the probe sequence back, so that no lookup stops at the freed slot
+        int free = index;
+        int next = (free + 1) & mask;
+        while (keys[next] != 0) {
+            int home = slot(keys[next], mask);
+            // the entry can move to the free slot only if its home slot is not between the free slot and itself
+            boolean movable = free <= next ? (home <= free || home > next) : (home <= free && home > next);
+            if (movable) {
+                keys[free] = keys[next];
+                tokens[free] = tokens[next];
+                lastRefillNanos[free] = lastRefillNanos[next];
+                droppedPackets[free] = droppedPackets[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = 0L;
+        size--;
+    }
+
+    private static int slot(long key, int mask) {
+        // mix the bits, IPv4 keys only use the low 32 bits
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
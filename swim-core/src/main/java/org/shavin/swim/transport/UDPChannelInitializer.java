@@ -2,22 +2,52 @@ package org.shavin.swim.transport;
 
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.DatagramChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.EventExecutor;
 import org.shavin.swim.api.transport.MessageHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
 public class UDPChannelInitializer {
     private final static Logger log = LoggerFactory.getLogger(UDPChannelInitializer.class);
 
-    private final EventExecutorGroup eventExecutorGroup;
     private final MessageHandler handler;
-    private UDPPacketHandler packetHandler;
+    private final UDPPacketHandler packetHandler;
+    private final BatchStatistics receiveStatistics;
+    private final UDPTransportConfig config;
+    // one rate limiter per channel, so that each bucket table is confined to the event loop of its channel
+    private final List<SourceRateLimiter> rateLimiters = new CopyOnWriteArrayList<>();
+    private final LongAdder rateLimitedPackets = new LongAdder();
 
     public UDPChannelInitializer(MessageHandler handler) {
-        eventExecutorGroup = new DefaultEventExecutorGroup(2);
+        this(handler, null);
+    }
+
+    /**
+     * @param handler the handler of the received messages
+     * @param receiveStatistics statistics to record the number of datagrams per read loop into, or null to skip counting
+     */
+    public UDPChannelInitializer(MessageHandler handler, BatchStatistics receiveStatistics) {
+        this(handler, receiveStatistics, UDPTransportConfig.withDefaults(), null);
+    }
+
+    /**
+     * @param handler the handler of the received messages
+     * @param receiveStatistics statistics to record the number of datagrams per read loop into, or null to skip counting
+     * @param config the transport configuration, which selects the threads on which the handler is invoked
+     * @param protocolExecutor the event loop which runs the handler in the event loop dispatch mode, ignored otherwise
+     */
+    public UDPChannelInitializer(MessageHandler handler, BatchStatistics receiveStatistics,
+                                 UDPTransportConfig config, EventExecutor protocolExecutor) {
         this.handler = handler;
+        this.receiveStatistics = receiveStatistics;
+        this.config = config;
+        // a single packet handler (and its worker pool) is shared between all the sockets bound to the port
+        this.packetHandler = new UDPPacketHandler(handler, config, protocolExecutor);
     }
 
     public io.netty.channel.ChannelInitializer<DatagramChannel> initializer() {
@@ -26,19 +56,76 @@ public class UDPChannelInitializer {
             @Override
             protected void initChannel(DatagramChannel datagramChannel) throws Exception {
                 ChannelPipeline pipeline = datagramChannel.pipeline();
-                packetHandler = new UDPPacketHandler(handler);
+                if (receiveStatistics != null) {
+                    pipeline.addLast("readBatchCounter", new ReadBatchCounter(receiveStatistics));
+                }
 
-                pipeline.addLast(eventExecutorGroup, "handler", packetHandler);
+                if (config.isSourceRateLimited()) {
+                    // drop the packets of flooding sources before anything else is done with them
+                    SourceRateLimiter rateLimiter = new SourceRateLimiter(config.getSourceRateLimit(), config.getSourceRateLimitBurst(),
+                            config.getMaxTrackedSources(), rateLimitedPackets);
+                    rateLimiters.add(rateLimiter);
+                    pipeline.addLast("rateLimiter", rateLimiter);
+                }
+
+                // the packet handler runs on the event loop, so that it can sort the packets into the priority lanes
+                // before they are queued for the worker threads
+                pipeline.addLast("handler", packetHandler);
             }
         };
     }
 
+    /**
+     * @return number of received packets dropped because the packet handler could not dispatch them
+     */
+    public long getRejectedPackets() {
+        return packetHandler.getRejectedPackets();
+    }
+
+    /**
+     * @return number of received packets dropped by the per source rate limiters
+     */
+    public long getRateLimitedPackets() {
+        return rateLimitedPackets.sum();
+    }
+
+    /**
+     * @return number of packets of the given source dropped by the per source rate limiters
+     */
+    public long getRateLimitedPackets(InetSocketAddress source) {
+        long droppedPackets = 0;
+        for (SourceRateLimiter rateLimiter : rateLimiters) {
+            droppedPackets += rateLimiter.droppedPackets(source);
+        }
+        return droppedPackets;
+    }
+
+    /**
+     * @return number of received packets tagged as urgent
+     */
+    public long getUrgentPackets() {
+        return packetHandler.getUrgentPackets();
+    }
+
+    /**
+     * @return number of received packets tagged as urgent which the packet handler could not dispatch
+     */
+    public long getRejectedUrgentPackets() {
+        return packetHandler.getRejectedUrgentPackets();
+    }
+
+    /**
+     * @return the ring buffer stage of the ring buffer dispatch mode, null in the other modes
+     */
+    public RingBufferPacketDispatcher getRingBufferDispatcher() {
+        return packetHandler.getRingBufferDispatcher();
+    }
+
     public void shutdown() {
         try {
-            eventExecutorGroup.shutdownGracefully().awaitUninterruptibly();
             packetHandler.shutdown();
         } catch (Exception e) {
-            log.error("Failed to shutdown event executor group", e);
+            log.error("Failed to shutdown the packet handler", e);
         }
     }
 }
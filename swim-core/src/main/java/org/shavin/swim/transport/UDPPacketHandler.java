@@ -1,44 +1,152 @@
 package org.shavin.swim.transport;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import org.shavin.swim.api.transport.MessageHandler;
+import org.shavin.swim.messages.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.InetSocketAddress;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
+@ChannelHandler.Sharable
 public class UDPPacketHandler extends SimpleChannelInboundHandler<DatagramPacket> {
     private final static Logger log = LoggerFactory.getLogger(UDPPacketHandler.class);
 
+    private final static int URGENT_WORKERS_COUNT = 2;
+    private final static int URGENT_LANE_CAPACITY = 1000;
+    // the urgent lane of the dispatch executor gets a pool of a quarter of the dispatch permits of its own
+    private final static int URGENT_DISPATCH_PERMITS_DIVISOR = 4;
+
     private final MessageHandler handler;
+    private final UDPTransportConfig.DispatchMode dispatchMode;
+    private final EventExecutor protocolExecutor;
+    private final boolean priorityLanes;
 
-    // separate worker pool for handling incoming UDP packets
-    private final ExecutorService workerPool = new ThreadPoolExecutor(
-            10, 20, 1, TimeUnit.MINUTES,
-            new LinkedBlockingQueue<>(10000),
-            new ThreadPoolExecutor.DiscardPolicy()
-    );
+    // separate worker pool for handling incoming UDP packets, only used by the worker pool dispatch mode
+    private final ExecutorService workerPool;
+    // high priority lane of the worker pool dispatch mode, so that urgent packets never wait behind the gossip data
+    private final ExecutorService urgentWorkerPool;
+    // executor running one task per packet in the virtual thread and executor dispatch modes
+    private final Executor dispatchExecutor;
+    private final boolean ownsDispatchExecutor;
+    // bound the number of packets handled at the same time by the dispatch executor, the urgent packets are bounded
+    // by a small pool of their own, so that neither the gossip data nor a flood of urgent packets starves the other
+    private final Semaphore dispatchPermits;
+    private final Semaphore urgentDispatchPermits;
+    // single consumer ring buffer stage, only used by the ring buffer dispatch mode
+    private final RingBufferPacketDispatcher ringBufferDispatcher;
+    private final LongAdder rejectedPackets = new LongAdder();
+    private final LongAdder urgentPackets = new LongAdder();
+    private final LongAdder rejectedUrgentPackets = new LongAdder();
 
     public UDPPacketHandler(MessageHandler handler) {
+        this(handler, UDPTransportConfig.withDefaults(), null);
+    }
+
+    /**
+     * @param handler the handler of the received messages
+     * @param config the transport configuration, which selects the threads on which the handler is invoked
+     * @param protocolExecutor the event loop which runs the handler in the event loop dispatch mode, ignored otherwise
+     */
+    public UDPPacketHandler(MessageHandler handler, UDPTransportConfig config, EventExecutor protocolExecutor) {
         this.handler = handler;
+        this.dispatchMode = config.getDispatchMode();
+        this.protocolExecutor = protocolExecutor;
+        this.priorityLanes = config.isPriorityLanes();
+
+        ExecutorService workerPool = null;
+        Executor dispatchExecutor = null;
+        boolean ownsDispatchExecutor = false;
+        switch (dispatchMode) {
+            case WORKER_POOL -> workerPool = new ThreadPoolExecutor(
+                    10, 20, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(10000),
+                    this::rejectPacketTask
+            );
+            case VIRTUAL_THREAD -> {
+                dispatchExecutor = newVirtualThreadExecutor();
+                ownsDispatchExecutor = true;
+            }
+            case EXECUTOR -> dispatchExecutor = config.getDispatchExecutor();
+            default -> {
+                // handled on the event loop, or by the ring buffer stage created below
+            }
+        }
+        this.workerPool = workerPool;
+        this.urgentWorkerPool = workerPool != null && priorityLanes ? new ThreadPoolExecutor(
+                URGENT_WORKERS_COUNT, URGENT_WORKERS_COUNT, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(URGENT_LANE_CAPACITY),
+                this::rejectPacketTask
+        ) : null;
+        this.dispatchExecutor = dispatchExecutor;
+        this.ownsDispatchExecutor = ownsDispatchExecutor;
+        this.dispatchPermits = dispatchExecutor != null ? new Semaphore(config.getMaxConcurrentDispatches()) : null;
+        this.urgentDispatchPermits = dispatchExecutor != null && priorityLanes
+                ? new Semaphore(Math.max(1, config.getMaxConcurrentDispatches() / URGENT_DISPATCH_PERMITS_DIVISOR))
+                : null;
+        this.ringBufferDispatcher = dispatchMode == UDPTransportConfig.DispatchMode.RING_BUFFER
+                ? new RingBufferPacketDispatcher(config.getRingBufferCapacity(), config.getRingBufferDrainBatchSize(), priorityLanes, this::handlePacket)
+                : null;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) throws Exception {
         ByteBuf buffer = msg.content();
 
+        if (dispatchMode == UDPTransportConfig.DispatchMode.EVENT_LOOP && protocolExecutor.inEventLoop()) {
+            // run to completion on the protocol event loop, the buffer is released by SimpleChannelInboundHandler
+            handlePacket(buffer, msg.sender());
+            return;
+        }
+
+        // failure detection messages are tagged as urgent by the sender, peek at the header to pick the lane
+        boolean urgent = priorityLanes && Message.Serializer.isUrgent(buffer);
+        if (urgent) {
+            urgentPackets.increment();
+        }
+
+        if (ringBufferDispatcher != null) {
+            // the ring buffer owns the retained buffer once the packet is accepted
+            buffer.retain();
+            if (!ringBufferDispatcher.dispatch(buffer, msg.sender(), urgent)) {
+                countRejected(urgent);
+                ReferenceCountUtil.release(buffer);
+            }
+            return;
+        }
+
+        // urgent packets are counted against their own concurrency limit, so that the other packets are shed first
+        Semaphore permits = urgent && urgentDispatchPermits != null ? urgentDispatchPermits : dispatchPermits;
+        if (permits != null && !permits.tryAcquire()) {
+            // too many packets are in flight already, drop this one like a full socket buffer would do
+            countRejected(urgent);
+            return;
+        }
+
         // retain the buffer content
         buffer.retain();
+        PacketTask packetTask = new PacketTask(buffer, msg.sender(), permits, urgent);
 
         try {
-            workerPool.submit(() -> processPacket(buffer, msg.sender()));
+            switch (dispatchMode) {
+                // the datagram arrived on a socket of another event loop, hop over to the protocol event loop
+                case EVENT_LOOP -> protocolExecutor.execute(packetTask);
+                case VIRTUAL_THREAD, EXECUTOR -> dispatchExecutor.execute(packetTask);
+                default -> (urgent && urgentWorkerPool != null ? urgentWorkerPool : workerPool).execute(packetTask);
+            }
+        } catch (RejectedExecutionException e) {
+            rejectPacketTask(packetTask, null);
         } catch (Exception e) {
-            ReferenceCountUtil.release(buffer);
+            packetTask.discard();
             log.warn("Failed to process packet from {}", msg.sender(), e);
         }
     }
@@ -48,26 +156,128 @@ public class UDPPacketHandler extends SimpleChannelInboundHandler<DatagramPacket
         log.error("Error in UDP Channel: {}", cause.getMessage());
     }
 
-    private void processPacket(ByteBuf buffer, InetSocketAddress sender) {
+    private void rejectPacketTask(Runnable task, ThreadPoolExecutor executor) {
+        if (task instanceof PacketTask packetTask) {
+            countRejected(packetTask.urgent);
+            packetTask.discard();
+        } else {
+            rejectedPackets.increment();
+        }
+    }
+
+    private void countRejected(boolean urgent) {
+        rejectedPackets.increment();
+        if (urgent) {
+            rejectedUrgentPackets.increment();
+        }
+    }
+
+    private void handlePacket(ByteBuf buffer, InetSocketAddress sender) {
         try {
             if (buffer.readableBytes() > 0) {
-                // extract the packet data into another byte array
-                byte[] bytes = new byte[buffer.readableBytes()];
-                buffer.readBytes(bytes);
-                handler.handle(bytes, sender);
+                // hand over the received buffer as it is, handlers which need a byte array copy it themselves
+                handler.handle(buffer, sender);
             }
         } catch (Exception e) {
             log.error("Failed to process packet from {}", sender, e);
-        } finally {
-            ReferenceCountUtil.release(buffer);
         }
     }
 
+    /**
+     * @return number of received packets dropped because the dispatch executor was saturated or rejected them
+     */
+    public long getRejectedPackets() {
+        return rejectedPackets.sum();
+    }
+
+    /**
+     * @return number of received packets tagged as urgent, which were served from the high priority lane
+     */
+    public long getUrgentPackets() {
+        return urgentPackets.sum();
+    }
+
+    /**
+     * @return number of received packets tagged as urgent which were dropped because the high priority lane was
+     *         saturated, they are included in {@link #getRejectedPackets()}
+     */
+    public long getRejectedUrgentPackets() {
+        return rejectedUrgentPackets.sum();
+    }
+
+    /**
+     * @return the ring buffer stage of the ring buffer dispatch mode, null in the other modes
+     */
+    public RingBufferPacketDispatcher getRingBufferDispatcher() {
+        return ringBufferDispatcher;
+    }
+
     public void shutdown() {
         try {
-            workerPool.shutdown();
+            if (ringBufferDispatcher != null) {
+                ringBufferDispatcher.shutdown();
+            }
+            if (workerPool != null) {
+                workerPool.shutdown();
+            }
+            if (urgentWorkerPool != null) {
+                urgentWorkerPool.shutdown();
+            }
+            // an executor supplied by the caller is left running, it is owned by the caller
+            if (ownsDispatchExecutor && dispatchExecutor instanceof ExecutorService executorService) {
+                executorService.shutdown();
+            }
         } catch (Exception e) {
             log.error("Failed to shutdown worker pool", e);
         }
     }
+
+    /**
+     * Create an executor which starts a new virtual thread per task. Virtual threads are only available from
+     * Java 21, so the factory method is looked up reflectively and a cached pool of daemon platform threads is
+     * used on older runtimes.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            log.warn("Virtual threads are not available on this runtime, falling back to a cached thread pool for packet dispatch");
+            return Executors.newCachedThreadPool(new DefaultThreadFactory("udp-packet-dispatch", true));
+        }
+    }
+
+    /**
+     * Handles a single received packet on the dispatch executor, and releases the packet buffer and the
+     * dispatch permit once done.
+     */
+    private final class PacketTask implements Runnable {
+        private final ByteBuf buffer;
+        private final InetSocketAddress sender;
+        // the pool of the permit held by the task, null if it holds none
+        private final Semaphore permits;
+        private final boolean urgent;
+
+        private PacketTask(ByteBuf buffer, InetSocketAddress sender, Semaphore permits, boolean urgent) {
+            this.buffer = buffer;
+            this.sender = sender;
+            this.permits = permits;
+            this.urgent = urgent;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handlePacket(buffer, sender);
+            } finally {
+                discard();
+            }
+        }
+
+        private void discard() {
+            ReferenceCountUtil.release(buffer);
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
 }
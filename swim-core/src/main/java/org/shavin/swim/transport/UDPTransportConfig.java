@@ -1,16 +1,443 @@
 package org.shavin.swim.transport;
 
+import java.util.concurrent.Executor;
+
+/**
+ * Configuration of the netty based UDP transport layer.
+ * Instances are immutable, use {@link #builder()} to customize the configuration or
+ * {@link #withDefaults()} to get the default configuration.
+ * @author shavin
+ */
 public class UDPTransportConfig {
-    private final int eventLoopThreadsCount = 1;
+
+    private final static int DEFAULT_EVENT_LOOP_THREADS_COUNT = 1;
+    private final static int DEFAULT_MAX_DATAGRAM_SIZE = 2048;
+    private final static int DEFAULT_RECEIVE_BATCH_SIZE = 16;
+    private final static int DEFAULT_MAX_CONCURRENT_DISPATCHES = 1024;
+    private final static int DEFAULT_RING_BUFFER_CAPACITY = 8192;
+    private final static int DEFAULT_RING_BUFFER_DRAIN_BATCH_SIZE = 64;
+    private final static int DEFAULT_MAX_TRACKED_SOURCES = 4096;
+
+    /**
+     * Netty transport implementation used for the datagram channels.
+     */
+    public enum TransportMode {
+        /** use the native epoll transport when the platform supports it, NIO otherwise */
+        AUTO,
+        /** use the native epoll transport, falls back to NIO with a warning when epoll is not available */
+        EPOLL,
+        /** always use the java NIO transport */
+        NIO
+    }
+
+    /**
+     * Threads on which the received datagrams are handed to the message handler.
+     */
+    public enum DispatchMode {
+        /** hand the datagrams over to a separate pool of worker threads, so a slow handler never blocks the event loops */
+        WORKER_POOL,
+        /**
+         * run the handler to completion on a single event loop, which is also exposed as the protocol executor of
+         * the transport, so that the handler and the protocol timers never run concurrently. The handler must not block.
+         */
+        EVENT_LOOP,
+        /**
+         * handle every datagram on its own virtual thread (java 21 or later), so that a blocking handler only parks
+         * its own virtual thread. Falls back to a cached pool of platform threads on older runtimes.
+         */
+        VIRTUAL_THREAD,
+        /** hand every datagram to the executor supplied with {@link Builder#withDispatchExecutor(Executor)} */
+        EXECUTOR,
+        /**
+         * publish the datagrams to a preallocated multi-producer / single-consumer ring buffer, drained in batches
+         * by a single consumer thread. Datagrams received while the ring buffer is full are dropped.
+         */
+        RING_BUFFER
+    }
+
+    private final TransportMode transportMode;
+    private final int eventLoopThreadsCount;
+    private final boolean reusePort;
+    private final boolean batchedIo;
+    private final int maxDatagramSize;
+    private final int receiveBatchSize;
+    private final boolean udpGro;
+    private final DispatchMode dispatchMode;
+    private final Executor dispatchExecutor;
+    private final int maxConcurrentDispatches;
+    private final int ringBufferCapacity;
+    private final int ringBufferDrainBatchSize;
+    private final boolean priorityLanes;
+    private final double sourceRateLimit;
+    private final int sourceRateLimitBurst;
+    private final int maxTrackedSources;
 
     public UDPTransportConfig() {
+        this(new Builder());
+    }
+
+    private UDPTransportConfig(Builder builder) {
+        this.transportMode = builder.transportMode;
+        this.eventLoopThreadsCount = builder.eventLoopThreadsCount;
+        this.reusePort = builder.reusePort;
+        this.batchedIo = builder.batchedIo;
+        this.maxDatagramSize = builder.maxDatagramSize;
+        this.receiveBatchSize = builder.receiveBatchSize;
+        this.udpGro = builder.udpGro;
+        this.dispatchMode = builder.dispatchMode;
+        this.dispatchExecutor = builder.dispatchExecutor;
+        this.maxConcurrentDispatches = builder.maxConcurrentDispatches;
+        this.ringBufferCapacity = builder.ringBufferCapacity;
+        this.ringBufferDrainBatchSize = builder.ringBufferDrainBatchSize;
+        this.priorityLanes = builder.priorityLanes;
+        this.sourceRateLimit = builder.sourceRateLimit;
+        this.sourceRateLimitBurst = builder.sourceRateLimitBurst;
+        this.maxTrackedSources = builder.maxTrackedSources;
     }
 
     public int getEventLoopThreadsCount() {
         return eventLoopThreadsCount;
     }
 
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * Whether the native transport binds one socket per event loop to the same port with {@code SO_REUSEPORT},
+     * so that the kernel spreads the inbound datagrams across the event loops.
+     * Ignored by the NIO transport, which always binds a single socket.
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Whether the transport gathers outgoing datagrams and flushes them once per event loop tick, and (with the
+     * native transport) receives several datagrams per {@code recvmmsg} call.
+     */
+    public boolean isBatchedIo() {
+        return batchedIo;
+    }
+
+    /**
+     * The largest datagram payload the transport expects to receive, used to size the receive buffers in batched mode.
+     */
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * Maximum number of datagrams received with a single {@code recvmmsg} call in batched mode.
+     */
+    public int getReceiveBatchSize() {
+        return receiveBatchSize;
+    }
+
+    /**
+     * Whether UDP generic receive offload is enabled on the native transport in batched mode.
+     */
+    public boolean isUdpGro() {
+        return udpGro;
+    }
+
+    /**
+     * The threads on which the received datagrams are handed to the message handler.
+     */
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * The executor which handles the datagrams in the {@code EXECUTOR} dispatch mode, null otherwise.
+     */
+    public Executor getDispatchExecutor() {
+        return dispatchExecutor;
+    }
+
+    /**
+     * Maximum number of datagrams handled at the same time in the {@code VIRTUAL_THREAD} and {@code EXECUTOR}
+     * dispatch modes. Datagrams received while the limit is reached are dropped and counted as rejected. With the
+     * priority lanes the urgent datagrams have a limit of their own of a quarter of this limit, at least one.
+     */
+    public int getMaxConcurrentDispatches() {
+        return maxConcurrentDispatches;
+    }
+
+    /**
+     * Number of packet slots of the ring buffer in the {@code RING_BUFFER} dispatch mode.
+     */
+    public int getRingBufferCapacity() {
+        return ringBufferCapacity;
+    }
+
+    /**
+     * Maximum number of datagrams the consumer thread drains from the ring buffer at once.
+     */
+    public int getRingBufferDrainBatchSize() {
+        return ringBufferDrainBatchSize;
+    }
+
+    /**
+     * Whether datagrams tagged as urgent (the failure detection messages) are served from a separate lane, both
+     * when they are received and when they are sent while the channel is not writable, so that they are never
+     * queued behind or shed together with the gossip data.
+     */
+    public boolean isPriorityLanes() {
+        return priorityLanes;
+    }
+
+    /**
+     * Whether the packets received from every source address are limited by a token bucket.
+     */
+    public boolean isSourceRateLimited() {
+        return sourceRateLimit > 0;
+    }
+
+    /**
+     * The sustained number of packets per second accepted from a single source address, zero when not limited.
+     */
+    public double getSourceRateLimit() {
+        return sourceRateLimit;
+    }
+
+    /**
+     * The number of packets a single source address may send in a burst above the sustained rate limit.
+     */
+    public int getSourceRateLimitBurst() {
+        return sourceRateLimitBurst;
+    }
+
+    /**
+     * The maximum number of source addresses tracked by the rate limiter of each socket. Packets of the sources
+     * beyond that are not limited until idle sources are evicted.
+     */
+    public int getMaxTrackedSources() {
+        return maxTrackedSources;
+    }
+
     public static UDPTransportConfig withDefaults() {
         return new UDPTransportConfig();
     }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private TransportMode transportMode = TransportMode.AUTO;
+        private int eventLoopThreadsCount = DEFAULT_EVENT_LOOP_THREADS_COUNT;
+        private boolean reusePort = true;
+        private boolean batchedIo = false;
+        private int maxDatagramSize = DEFAULT_MAX_DATAGRAM_SIZE;
+        private int receiveBatchSize = DEFAULT_RECEIVE_BATCH_SIZE;
+        private boolean udpGro = false;
+        private DispatchMode dispatchMode = DispatchMode.WORKER_POOL;
+        private Executor dispatchExecutor;
+        private int maxConcurrentDispatches = DEFAULT_MAX_CONCURRENT_DISPATCHES;
+        private int ringBufferCapacity = DEFAULT_RING_BUFFER_CAPACITY;
+        private int ringBufferDrainBatchSize = DEFAULT_RING_BUFFER_DRAIN_BATCH_SIZE;
+        private boolean priorityLanes = true;
+        private double sourceRateLimit = 0;
+        private int sourceRateLimitBurst = 0;
+        private int maxTrackedSources = DEFAULT_MAX_TRACKED_SOURCES;
+
+        /**
+         * Sets the netty transport implementation used for the datagram channels.
+         *
+         * @param transportMode the transport implementation, {@code AUTO} by default
+         * @return the updated builder instance
+         */
+        public Builder withTransportMode(TransportMode transportMode) {
+            this.transportMode = transportMode;
+            return this;
+        }
+
+        /**
+         * Sets the number of event loop threads used to receive and send datagrams. With the native transport
+         * and port reuse enabled, one socket is bound per event loop thread.
+         *
+         * @param eventLoopThreadsCount the number of event loop threads, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withEventLoopThreadsCount(int eventLoopThreadsCount) {
+            this.eventLoopThreadsCount = eventLoopThreadsCount;
+            return this;
+        }
+
+        /**
+         * Enables or disables binding one socket per event loop with {@code SO_REUSEPORT} on the native transport.
+         *
+         * @param reusePort true to shard the inbound datagrams across the event loops, true by default
+         * @return the updated builder instance
+         */
+        public Builder withReusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
+        /**
+         * Enables or disables batched datagram I/O. When enabled, outgoing datagrams are flushed together once per
+         * event loop tick (a single {@code sendmmsg} call on the native transport) and the native transport receives
+         * up to {@link #withReceiveBatchSize(int)} datagrams per {@code recvmmsg} call.
+         *
+         * @param batchedIo true to enable batched I/O, false by default
+         * @return the updated builder instance
+         */
+        public Builder withBatchedIo(boolean batchedIo) {
+            this.batchedIo = batchedIo;
+            return this;
+        }
+
+        /**
+         * Sets the largest datagram payload expected on the wire, which sizes each slot of the batched receive buffer.
+         *
+         * @param maxDatagramSize maximum datagram payload size in bytes, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withMaxDatagramSize(int maxDatagramSize) {
+            this.maxDatagramSize = maxDatagramSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of datagrams received with a single {@code recvmmsg} call in batched mode.
+         *
+         * @param receiveBatchSize datagrams per receive call, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withReceiveBatchSize(int receiveBatchSize) {
+            this.receiveBatchSize = receiveBatchSize;
+            return this;
+        }
+
+        /**
+         * Enables or disables UDP generic receive offload on the native transport in batched mode, which lets
+         * the kernel coalesce consecutive datagrams of a flow before they are split again into separate packets.
+         *
+         * @param udpGro true to enable GRO, false by default
+         * @return the updated builder instance
+         */
+        public Builder withUdpGro(boolean udpGro) {
+            this.udpGro = udpGro;
+            return this;
+        }
+
+        /**
+         * Sets the threads on which the received datagrams are handed to the message handler. With
+         * {@code EVENT_LOOP}, the gossip cluster also runs its probe ticks and timeouts on the same event loop.
+         *
+         * @param dispatchMode the dispatch mode, {@code WORKER_POOL} by default
+         * @return the updated builder instance
+         */
+        public Builder withDispatchMode(DispatchMode dispatchMode) {
+            this.dispatchMode = dispatchMode;
+            return this;
+        }
+
+        /**
+         * Sets the executor which handles the received datagrams and switches to the {@code EXECUTOR} dispatch mode.
+         * The executor is owned by the caller and is not shut down with the transport layer.
+         *
+         * @param dispatchExecutor the executor to run the message handler on
+         * @return the updated builder instance
+         */
+        public Builder withDispatchExecutor(Executor dispatchExecutor) {
+            this.dispatchExecutor = dispatchExecutor;
+            this.dispatchMode = DispatchMode.EXECUTOR;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of datagrams handled at the same time in the {@code VIRTUAL_THREAD} and
+         * {@code EXECUTOR} dispatch modes.
+         *
+         * @param maxConcurrentDispatches the concurrency limit, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withMaxConcurrentDispatches(int maxConcurrentDispatches) {
+            this.maxConcurrentDispatches = maxConcurrentDispatches;
+            return this;
+        }
+
+        /**
+         * Sets the size of the ring buffer used by the {@code RING_BUFFER} dispatch mode.
+         *
+         * @param ringBufferCapacity number of packet slots, must be a power of two
+         * @param ringBufferDrainBatchSize maximum number of datagrams drained at once, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withRingBuffer(int ringBufferCapacity, int ringBufferDrainBatchSize) {
+            this.ringBufferCapacity = ringBufferCapacity;
+            this.ringBufferDrainBatchSize = ringBufferDrainBatchSize;
+            return this;
+        }
+
+        /**
+         * Enables or disables the separate lane for the datagrams tagged as urgent. When enabled, urgent datagrams
+         * are handled by their own workers (or drained first from the ring buffer), have a concurrency limit of their
+         * own on the dispatch executor, and are still written when the channel is not writable, while the other
+         * datagrams are dropped.
+         *
+         * @param priorityLanes true to prioritise the urgent datagrams, true by default
+         * @return the updated builder instance
+         */
+        public Builder withPriorityLanes(boolean priorityLanes) {
+            this.priorityLanes = priorityLanes;
+            return this;
+        }
+
+        /**
+         * Limits the packets accepted from every source address with a token bucket. Packets over the limit are
+         * dropped on the event loop, before they are copied or deserialized.
+         *
+         * @param packetsPerSecond the sustained packet rate per source, zero disables the rate limiting (the default)
+         * @param burst the number of packets a source may send in a burst, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withSourceRateLimit(double packetsPerSecond, int burst) {
+            this.sourceRateLimit = packetsPerSecond;
+            this.sourceRateLimitBurst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of source addresses tracked by the rate limiter of each socket.
+         *
+         * @param maxTrackedSources the maximum number of tracked sources, must be a positive integer
+         * @return the updated builder instance
+         */
+        public Builder withMaxTrackedSources(int maxTrackedSources) {
+            this.maxTrackedSources = maxTrackedSources;
+            return this;
+        }
+
+        public UDPTransportConfig build() {
+            if (eventLoopThreadsCount <= 0) {
+                throw new IllegalArgumentException("Event loop threads count must be a positive integer.");
+            }
+            if (transportMode == null) {
+                throw new IllegalArgumentException("Transport mode must be specified.");
+            }
+            if (dispatchMode == null) {
+                throw new IllegalArgumentException("Dispatch mode must be specified.");
+            }
+            if (dispatchMode == DispatchMode.EXECUTOR && dispatchExecutor == null) {
+                throw new IllegalArgumentException("Dispatch executor must be specified for the executor dispatch mode.");
+            }
+            if (maxConcurrentDispatches <= 0) {
+                throw new IllegalArgumentException("Max concurrent dispatches must be a positive integer.");
+            }
+            if (sourceRateLimit < 0 || (sourceRateLimit > 0 && sourceRateLimitBurst <= 0) || maxTrackedSources <= 0) {
+                throw new IllegalArgumentException("Source rate limit must not be negative, with a positive burst and max tracked sources.");
+            }
+            if (ringBufferCapacity <= 0 || Integer.bitCount(ringBufferCapacity) != 1 || ringBufferDrainBatchSize <= 0) {
+                throw new IllegalArgumentException("Ring buffer capacity must be a power of two and the drain batch size a positive integer.");
+            }
+            if (maxDatagramSize <= 0 || receiveBatchSize <= 0) {
+                throw new IllegalArgumentException("Max datagram size and receive batch size must be positive integers.");
+            }
+            return new UDPTransportConfig(this);
+        }
+    }
 }
@@ -0,0 +1,287 @@
+package org.shavin.swim.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A hashed timing wheel for the protocol timeouts, e.g. the ack and indirect ack timeouts of the probes.
+ *
+ * <p>The wheel is an array of buckets, one per tick. A timeout is put into the bucket of the tick it expires at,
+ * modulo the number of buckets, and every tick only looks at the timeouts of its own bucket. Scheduling and
+ * cancelling a timeout are O(1), which makes the wheel cheaper than a delay queue for many short timeouts which are
+ * mostly cancelled before they expire.</p>
+ *
+ * <p>The timeouts are kept in pooled slots of parallel arrays, the buckets are doubly linked lists of slot indexes,
+ * so scheduling a timeout allocates nothing once the pool is large enough. A timeout is identified by a handle
+ * combining the slot with its generation, which is increased whenever the slot is freed, so a stale handle never
+ * cancels the timeout which reuses its slot.</p>
+ *
+ * <p>The wheel does not own a thread. {@link #advance()} must be called periodically, about once per tick, e.g. by a
+ * scheduled executor, and runs the expired timeouts on the calling thread. The timeouts can be scheduled and
+ * cancelled from any thread.</p>
+ *
+ * @param <T> the type of the target passed to the handler of a timeout
+ * @author shavin
+ */
+public class TimingWheel<T> {
+
+    /**
+     * Handle which never identifies a timeout, e.g. for a timeout which was not scheduled.
+     */
+    public final static long NO_TIMEOUT = -1L;
+
+    /**
+     * Called for an expired timeout with the target and the id it was scheduled with.
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        void expired(T target, long id);
+    }
+
+    private final static Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+    // bucket of a slot which is free, or which expired and is being handled
+    private final static int FREE = -1;
+    private final static int EXPIRED = -2;
+    private final static int NONE = -1;
+
+    private final long tickNanos;
+    private final int mask;
+    private final int[] bucketHeads;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    // the slots, see the class comment
+    private int[] buckets;
+    private int[] next;
+    private int[] previous;
+    private int[] generations;
+    private long[] deadlineTicks;
+    private long[] ids;
+    private Object[] targets;
+    private Handler<T>[] handlers;
+    private int freeHead = NONE;
+    private int size = 0;
+
+    // the last tick which was handled
+    private long currentTick = 0;
+
+    /**
+     * @param tickDuration the duration of a tick, which is the precision of the timeouts
+     * @param unit the unit of the tick duration
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two. Timeouts longer than a full turn of
+     *                      the wheel stay in their bucket for several turns.
+     * @param initialCapacity the number of pooled slots to start with
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, int initialCapacity) {
+        this(tickDuration, unit, ticksPerWheel, initialCapacity, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock the clock of the wheel in nanoseconds, e.g. a manual clock for tests
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, int initialCapacity, LongSupplier nanoClock) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick duration and ticks per wheel must be positive.");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this.mask = wheelSize - 1;
+        this.bucketHeads = new int[wheelSize];
+        Arrays.fill(bucketHeads, NONE);
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        allocateSlots(Math.max(initialCapacity, 16));
+    }
+
+    /**
+     * Schedule a timeout.
+     *
+     * @param handler the handler called when the timeout expires
+     * @param target the target passed to the handler
+     * @param id the id passed to the handler, e.g. the sequence number of a probe
+     * @param delay the delay after which the timeout expires
+     * @param unit the unit of the delay
+     * @return the handle of the timeout to cancel it with
+     */
+    public synchronized long schedule(Handler<T> handler, T target, long id, long delay, TimeUnit unit) {
+        if (freeHead == NONE) {
+            allocateSlots(generations.length * 2);
+        }
+        int slot = freeHead;
+        freeHead = next[slot];
+
+        // round up, a timeout never expires early
+        long elapsedNanos = nanoClock.getAsLong() - startNanos + unit.toNanos(delay);
+        long deadlineTick = Math.max((elapsedNanos + tickNanos - 1) / tickNanos, currentTick + 1);
+
+        handlers[slot] = handler;
+        targets[slot] = target;
+        ids[slot] = id;
+        deadlineTicks[slot] = deadlineTick;
+        link(slot, (int) (deadlineTick & mask));
+        size++;
+        return handle(slot);
+    }
+
+    /**
+     * Cancel a timeout, unless it already expired or was cancelled.
+     *
+     * @param handle the handle returned when the timeout was scheduled
+     * @return true if the timeout was cancelled and will never expire
+     */
+    public synchronized boolean cancel(long handle) {
+        if (handle == NO_TIMEOUT) {
+            return false;
+        }
+        int slot = (int) handle;
+        if (slot < 0 || slot >= generations.length || generations[slot] != (int) (handle >>> 32) || buckets[slot] < 0) {
+            return false;
+        }
+        unlink(slot);
+        free(slot);
+        return true;
+    }
+
+    /**
+     * @return the number of scheduled timeouts which neither expired nor were cancelled yet
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Handle all the ticks up to now and run the handlers of the expired timeouts on the calling thread. Ticks missed
+     * by a late call are caught up with. Must not be called concurrently.
+     *
+     * @return the number of expired timeouts
+     */
+    public int advance() {
+        int expiredHead = NONE;
+        synchronized (this) {
+            long nowTick = (nanoClock.getAsLong() - startNanos) / tickNanos;
+            // one full turn of the wheel visits every bucket, no need to walk more ticks than that
+            long fromTick = Math.max(currentTick + 1, nowTick - mask);
+            for (long tick = fromTick; tick <= nowTick; tick++) {
+                int slot = bucketHeads[(int) (tick & mask)];
+                while (slot != NONE) {
+                    int nextSlot = next[slot];
+                    if (deadlineTicks[slot] <= nowTick) {
+                        unlink(slot);
+                        // chain the expired slots through the next links, they can not be cancelled anymore
+                        buckets[slot] = EXPIRED;
+                        next[slot] = expiredHead;
+                        expiredHead = slot;
+                    }
+                    slot = nextSlot;
+                }
+            }
+            currentTick = Math.max(currentTick, nowTick);
+        }
+
+        // run the handlers without holding the lock, so they can schedule new timeouts
+        int expired = 0;
+        while (expiredHead != NONE) {
+            int slot = expiredHead;
+            Handler<T> handler;
+            T target;
+            long id;
+            synchronized (this) {
+                expiredHead = next[slot];
+                handler = handlers[slot];
+                target = target(slot);
+                id = ids[slot];
+                free(slot);
+            }
+            try {
+                handler.expired(target, id);
+            } catch (RuntimeException exception) {
+                // never let one handler drop the remaining expired timeouts
+                log.error("Failed to handle an expired timeout", exception);
+            }
+            expired++;
+        }
+        return expired;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T target(int slot) {
+        return (T) targets[slot];
+    }
+
+    private long handle(int slot) {
+        return ((long) generations[slot] << 32) | slot;
+    }
+
+    private void link(int slot, int bucket) {
+        int head = bucketHeads[bucket];
+        buckets[slot] = bucket;
+        previous[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            previous[head] = slot;
+        }
+        bucketHeads[bucket] = slot;
+    }
+
+    private void unlink(int slot) {
+        int previousSlot = previous[slot];
+        int nextSlot = next[slot];
+        if (previousSlot == NONE) {
+            bucketHeads[buckets[slot]] = nextSlot;
+        } else {
+            next[previousSlot] = nextSlot;
+        }
+        if (nextSlot != NONE) {
+            previous[nextSlot] = previousSlot;
+        }
+    }
+
+    private void free(int slot) {
+        // never hand out a negative generation, so a handle is never NO_TIMEOUT
+        generations[slot] = (generations[slot] + 1) & Integer.MAX_VALUE;
+        buckets[slot] = FREE;
+        handlers[slot] = null;
+        targets[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocateSlots(int capacity) {
+        int oldCapacity = generations == null ? 0 : generations.length;
+        if (oldCapacity == 0) {
+            buckets = new int[capacity];
+            next = new int[capacity];
+            previous = new int[capacity];
+            generations = new int[capacity];
+            deadlineTicks = new long[capacity];
+            ids = new long[capacity];
+            targets = new Object[capacity];
+            handlers = new Handler[capacity];
+        } else {
+            buckets = Arrays.copyOf(buckets, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            deadlineTicks = Arrays.copyOf(deadlineTicks, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            handlers = Arrays.copyOf(handlers, capacity);
+        }
+        // push the new slots to the free list
+        for (int slot = capacity - 1; slot >= oldCapacity; slot--) {
+            buckets[slot] = FREE;
+            next[slot] = freeHead;
+            freeHead = slot;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.event.ClusterEventListener;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.impl.CustomDataManager;
+import org.shavin.swim.impl.FragmentReassembler;
+import org.shavin.swim.impl.PacketBuilder;
+import org.shavin.swim.messages.CustomUserData;
+import org.shavin.swim.util.HashUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class FragmentReassemblerTest {
+
+    private static List<CustomUserData> fragments(byte[] data, int fragmentSize) {
+        long messageId = HashUtil.hash64(data);
+        int fragmentCount = (data.length + fragmentSize - 1) / fragmentSize;
+        List<CustomUserData> fragments = new ArrayList<>();
+        for (int i = 0; i < fragmentCount; i++) {
+            byte[] fragmentData = Arrays.copyOfRange(data, i * fragmentSize, Math.min(data.length, (i + 1) * fragmentSize));
+            fragments.add(new CustomUserData(messageId, i, fragmentCount, fragmentData));
+        }
+        return fragments;
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testReassemblesOutOfOrderFragmentsOnce() {
+        FragmentReassembler reassembler = new FragmentReassembler(100, 1000, 1000, 60_000);
+        byte[] data = randomData(950, 1);
+        List<CustomUserData> fragments = fragments(data, 100);
+        assertEquals(10, fragments.size());
+
+        // the fragments arrive in reverse order, some of them twice
+        for (int i = fragments.size() - 1; i > 0; i--) {
+            assertNull(reassembler.add(fragments.get(i)));
+            assertNull(reassembler.add(fragments.get(i)));
+        }
+        assertEquals(1, reassembler.incompleteMessages());
+        assertEquals(850, reassembler.bufferedBytes());
+
+        assertArrayEquals(data, reassembler.add(fragments.get(0)));
+        assertEquals(0, reassembler.incompleteMessages());
+        assertEquals(0, reassembler.bufferedBytes());
+
+        // the completed message is not reassembled again from late fragments
+        for (CustomUserData fragment : fragments) {
+            assertNull(reassembler.add(fragment));
+        }
+        assertEquals(0, reassembler.incompleteMessages());
+    }
+
+    @Test
+    public void testBudgetAndTimeoutBoundTheBuffers() throws InterruptedException {
+        FragmentReassembler reassembler = new FragmentReassembler(100, 1000, 2000, 200);
+
+        // three incomplete messages do not fit into the budget of two messages, the oldest one is dropped
+        List<List<CustomUserData>> messages = new ArrayList<>();
+        for (int m = 0; m < 3; m++) {
+            List<CustomUserData> fragments = fragments(randomData(1000, m), 100);
+            messages.add(fragments);
+            for (int i = 1; i < fragments.size(); i++) {
+                reassembler.add(fragments.get(i));
+            }
+            assertTrue(reassembler.bufferedBytes() <= 2000);
+        }
+        assertEquals(2, reassembler.incompleteMessages());
+        assertNull(reassembler.add(messages.get(0).get(0)));
+        assertNotNull(reassembler.add(messages.get(2).get(0)));
+
+        // the rest of the incomplete messages time out
+        Thread.sleep(300);
+        assertEquals(2, reassembler.prune());
+        assertEquals(0, reassembler.incompleteMessages());
+        assertEquals(0, reassembler.bufferedBytes());
+    }
+
+    @Test
+    public void testInvalidFragmentsAreDropped() {
+        FragmentReassembler reassembler = new FragmentReassembler(100, 1000, 1000, 60_000);
+        byte[] data = randomData(300, 3);
+
+        // more fragments than the largest message has, and a fragment index out of range
+        assertNull(reassembler.add(new CustomUserData(HashUtil.hash64(data), 0, 11, new byte[100])));
+        assertNull(reassembler.add(new CustomUserData(HashUtil.hash64(data), 3, 3, new byte[100])));
+        assertEquals(0, reassembler.incompleteMessages());
+
+        // a message which does not match its hash is not delivered
+        List<CustomUserData> fragments = fragments(data, 100);
+        fragments.get(1).getData()[0]++;
+        for (CustomUserData fragment : fragments) {
+            assertNull(reassembler.add(fragment));
+        }
+        assertEquals(0, reassembler.incompleteMessages());
+    }
+
+    @Test
+    public void testLargeDataIsDeliveredWhole() {
+        List<byte[]> received = new ArrayList<>();
+        ClusterEventListener listener = new ClusterEventListener() {
+            @Override
+            public void onMemberJoined(MemberNode node) {
+            }
+
+            @Override
+            public void onMemberFailed(MemberNode node) {
+            }
+
+            @Override
+            public void onMemberRevived(MemberNode node) {
+            }
+
+            @Override
+            public void onMemberLeft(MemberNode node) {
+            }
+
+            @Override
+            public void onReceiveData(byte[] data) {
+                received.add(data);
+            }
+        };
+        CustomDataManager sender = new CustomDataManager(List.of(), List.<MemberNode>of());
+        CustomDataManager receiver = new CustomDataManager(List.of(listener), List.<MemberNode>of());
+
+        byte[] data = randomData(10_000, 4);
+        sender.broadcastData(data);
+        assertThrows(IllegalArgumentException.class, () -> sender.broadcastData(new byte[CustomDataManager.DEFAULT_MAX_DATA_SIZE_IN_BYTES + 1]));
+
+        // every packet carries a fragment, the fragments take turns
+        int packets = 0;
+        List<CustomUserData> batch;
+        while (!(batch = sender.getDataToSend(PacketBuilder.MAX_PACKET_SIZE - 100)).isEmpty()) {
+            assertEquals(1, batch.size());
+            receiver.onReceive(batch);
+            packets++;
+            if (packets == 10) {
+                assertArrayEquals(data, received.get(0));
+            }
+        }
+        System.out.println(packets + " packets to disseminate " + data.length + " bytes");
+        assertEquals(1, received.size());
+        assertEquals(0, receiver.reassembler().incompleteMessages());
+    }
+}
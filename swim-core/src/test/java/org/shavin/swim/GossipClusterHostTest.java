@@ -0,0 +1,68 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.GossipCluster;
+import org.shavin.swim.api.GossipClusterBuilder;
+import org.shavin.swim.api.GossipClusterHost;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GossipClusterHostTest {
+
+    private final static int NODES = 30;
+    private final static int BASE_PORT = 17100;
+
+    @Test
+    public void testHostedNodesShareTheirThreads() throws InterruptedException {
+        int threadsBefore = Thread.activeCount();
+        GossipClusterHost host = new GossipClusterHost(2);
+        List<GossipCluster> clusters = new ArrayList<>();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                GossipClusterBuilder builder = new GossipClusterBuilder()
+                        .withNodeId(i + 1)
+                        .onPort(BASE_PORT + i)
+                        .withPingIntervalInMs(200)
+                        .withHost(host);
+                if (i > 0) {
+                    builder.withSeed("127.0.0.1", BASE_PORT);
+                }
+                GossipCluster cluster = builder.build();
+                cluster.start();
+                clusters.add(cluster);
+            }
+
+            // the nodes run on the threads of the host, not on threads of their own
+            int threadsAfter = Thread.activeCount();
+            System.out.println((threadsAfter - threadsBefore) + " new threads for " + NODES + " nodes");
+            assertTrue(threadsAfter - threadsBefore < 10, "The hosted nodes must not start threads of their own");
+
+            // every node learns about every other node through its own event store
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (System.currentTimeMillis() < deadline && !converged(clusters)) {
+                Thread.sleep(500);
+            }
+            for (GossipCluster cluster : clusters) {
+                assertEquals(NODES - 1, cluster.getMembers().size(), "Node " + cluster.getNodeId() + " must know every other node");
+            }
+
+            // the nodes leave none of their timeouts behind on the timing wheel of the host
+            clusters.forEach(GossipCluster::shutdown);
+            deadline = System.currentTimeMillis() + 5_000;
+            while (System.currentTimeMillis() < deadline && host.scheduledTimeouts() > 0) {
+                Thread.sleep(100);
+            }
+            assertEquals(0, host.scheduledTimeouts(), "The stopped nodes must cancel their timeouts");
+        } finally {
+            clusters.forEach(GossipCluster::shutdown);
+            host.shutdown();
+        }
+    }
+
+    private static boolean converged(List<GossipCluster> clusters) {
+        return clusters.stream().allMatch(cluster -> cluster.getMembers().size() == NODES - 1);
+    }
+}
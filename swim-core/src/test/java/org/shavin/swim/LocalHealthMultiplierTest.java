@@ -0,0 +1,42 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.impl.LocalHealthMultiplier;
+
+public class LocalHealthMultiplierTest {
+
+    @Test
+    public void testMultiplierScalesTimeouts() {
+        LocalHealthMultiplier localHealth = new LocalHealthMultiplier(3);
+        assertEquals(0, localHealth.value());
+        assertEquals(1000, localHealth.scale(1000));
+
+        // a healthy node never goes below zero
+        localHealth.onProbeSucceeded();
+        assertEquals(0, localHealth.value());
+
+        localHealth.onProbeFailed();
+        localHealth.onRefutation();
+        assertEquals(2, localHealth.value());
+        assertEquals(3000, localHealth.scale(1000));
+
+        // saturates at the limit
+        localHealth.onMissedNack();
+        localHealth.onProbeFailed();
+        localHealth.onProbeFailed();
+        assertEquals(3, localHealth.value());
+        assertEquals(4000, localHealth.scale(1000));
+
+        // every successful probe lowers the multiplier by one
+        localHealth.onProbeSucceeded();
+        assertEquals(2, localHealth.value());
+
+        // a limit of zero disables the adaptation
+        LocalHealthMultiplier disabled = new LocalHealthMultiplier(0);
+        disabled.onProbeFailed();
+        assertEquals(1000, disabled.scale(1000));
+        assertThrows(IllegalArgumentException.class, () -> new LocalHealthMultiplier(-1));
+    }
+}
@@ -0,0 +1,57 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.member.MemberSampler;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.List;
+
+public class MemberSamplerTest {
+
+    @Test
+    public void testSamplesDistinctEligibleMembers() {
+        MemberNode[] members = new MemberNode[10];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new MemberNode(i + 1, new InetSocketAddress("127.0.0.1", 5001 + i),
+                    i % 2 == 0 ? MemberNode.MemberStatus.UP : MemberNode.MemberStatus.DOWN);
+        }
+
+        for (int round = 0; round < 100; round++) {
+            List<MemberNode> sample = MemberSampler.sample(members, 3, member -> member.isHealthy() && member.id() != 1);
+            assertEquals(3, sample.size());
+            assertEquals(3, new HashSet<>(sample).size());
+            sample.forEach(member -> {
+                assertTrue(member.isHealthy());
+                assertNotEquals(1, member.id());
+            });
+        }
+
+        // fewer eligible members than asked for
+        assertEquals(4, MemberSampler.sample(members, 10, member -> member.isHealthy() && member.id() != 1).size());
+        assertTrue(MemberSampler.sample(members, 3, member -> false).isEmpty());
+        assertTrue(MemberSampler.sample(new MemberNode[0], 3, member -> true).isEmpty());
+    }
+
+    @Test
+    public void testSamplesAreSpreadOverAllMembers() {
+        MemberNode[] members = new MemberNode[100];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new MemberNode(i + 1, new InetSocketAddress("127.0.0.1", 5001 + i), MemberNode.MemberStatus.UP);
+        }
+
+        int[] picks = new int[members.length];
+        for (int round = 0; round < 10000; round++) {
+            MemberSampler.sample(members, 3, MemberNode::isHealthy).forEach(member -> picks[member.id() - 1]++);
+        }
+
+        // 300 picks per member are expected, the head of the array is not favoured
+        System.out.println("first members picked " + picks[0] + ", " + picks[1] + ", " + picks[2] + " times");
+        for (int i = 0; i < picks.length; i++) {
+            assertTrue(picks[i] > 150 && picks[i] < 450, "member " + (i + 1) + " picked " + picks[i] + " times");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.member.MemberSelection;
+import org.shavin.swim.member.MembershipTable;
+import org.shavin.swim.member.RandomMemberSelector;
+import org.shavin.swim.member.RandomizedRoundRobinMemberSelector;
+import org.shavin.swim.member.RoundRobinMemberSelector;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+public class MemberSelectionTest {
+
+    @Test
+    public void testRandomizedRoundRobinProbesEveryMemberOncePerPass() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberSelection memberSelection = new RandomizedRoundRobinMemberSelector(membershipTable, 0);
+        for (int id = 1; id <= 100; id++) {
+            membershipTable.add(new MemberNode(id, new InetSocketAddress("127.0.0.1", 20000 + id), MemberNode.MemberStatus.UP));
+            memberSelection.memberAdded(membershipTable.get(id));
+        }
+        membershipTable.transition(membershipTable.get(7), MemberNode.MemberStatus.DOWN, 0);
+        membershipTable.remove(8);
+
+        // every healthy member is selected exactly once in the first pass, whatever the order
+        Set<Integer> selected = new HashSet<>();
+        for (int i = 0; i < 98; i++) {
+            assertTrue(selected.add(memberSelection.selectNext().id()));
+        }
+        assertFalse(selected.contains(7));
+        assertFalse(selected.contains(8));
+
+        // a member added in the middle of a pass is selected within the next pass
+        membershipTable.add(new MemberNode(101, new InetSocketAddress("127.0.0.1", 20101), MemberNode.MemberStatus.UP));
+        memberSelection.memberAdded(membershipTable.get(101));
+        selected.clear();
+        for (int i = 0; i < 2 * 99; i++) {
+            selected.add(memberSelection.selectNext().id());
+        }
+        assertTrue(selected.contains(101));
+        System.out.println(selected.size() + " members selected");
+    }
+
+    @Test
+    public void testRandomizedRoundRobinInsertsIntoTheRestOfThePass() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberSelection memberSelection = new RandomizedRoundRobinMemberSelector(membershipTable, 0);
+        for (int id = 1; id <= 50; id++) {
+            membershipTable.add(new MemberNode(id, new InetSocketAddress("127.0.0.1", 20000 + id), MemberNode.MemberStatus.UP));
+            memberSelection.memberAdded(membershipTable.get(id));
+        }
+
+        // members added in the middle of a pass are probed in the rest of it, and no member is probed twice
+        Set<Integer> selected = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            assertTrue(selected.add(memberSelection.selectNext().id()));
+        }
+        for (int id = 51; id <= 100; id++) {
+            membershipTable.add(new MemberNode(id, new InetSocketAddress("127.0.0.1", 20000 + id), MemberNode.MemberStatus.UP));
+            memberSelection.memberAdded(membershipTable.get(id));
+        }
+        for (int i = 25; i < 100; i++) {
+            assertTrue(selected.add(memberSelection.selectNext().id()));
+        }
+        assertEquals(100, selected.size());
+
+        // a member removed and added again before the next shuffle is not probed twice
+        membershipTable.remove(42);
+        membershipTable.add(new MemberNode(42, new InetSocketAddress("127.0.0.1", 20042), MemberNode.MemberStatus.UP));
+        memberSelection.memberAdded(membershipTable.get(42));
+        selected.clear();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(selected.add(memberSelection.selectNext().id()));
+        }
+    }
+
+    @Test
+    public void testSelectionWithoutHealthyMembers() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberSelection[] memberSelections = {
+                new RandomizedRoundRobinMemberSelector(membershipTable, 0),
+                new RoundRobinMemberSelector(membershipTable.members(), 0),
+                new RandomMemberSelector(membershipTable.members(), 0)
+        };
+        // enough unhealthy members to overflow the stack of a recursive selection
+        for (int id = 1; id <= 20000; id++) {
+            membershipTable.add(new MemberNode(id, new InetSocketAddress("127.0.0.1", 1 + id % 60000), MemberNode.MemberStatus.DOWN));
+            for (MemberSelection memberSelection : memberSelections) {
+                memberSelection.memberAdded(membershipTable.get(id));
+            }
+        }
+
+        for (MemberSelection memberSelection : memberSelections) {
+            assertNull(memberSelection.selectNext(), memberSelection.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.impl.MembershipEventStore;
+import org.shavin.swim.impl.PacketBuilder;
+import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MembershipEventStoreTest {
+
+    private static MembershipEvent event(MembershipEvent.Type type, int nodeId, int incarnationNumber) {
+        return new MembershipEvent(type, nodeId, NodeAddress.ofIPv4(0x0A000000 | nodeId, 7000), incarnationNumber);
+    }
+
+    @Test
+    public void testLeastTransmittedEventsGoFirst() {
+        MembershipEventStore eventStore = new MembershipEventStore(List.<MemberNode>of());
+        for (int nodeId = 1; nodeId <= 100; nodeId++) {
+            eventStore.enqueueEvent(event(MembershipEvent.Type.JOIN, nodeId, 0));
+        }
+
+        // more events are buffered than fit into one message, the newest ones go first
+        List<MembershipEvent> firstBatch = eventStore.getRecentEventsAndIncrement(PacketBuilder.MAX_PACKET_SIZE);
+        System.out.println(firstBatch.size() + " events in the first batch");
+        assertTrue(firstBatch.size() < 100);
+        assertEquals(100, firstBatch.get(0).nodeId());
+
+        // the events left out go first in the next batch
+        List<MembershipEvent> secondBatch = eventStore.getRecentEventsAndIncrement(PacketBuilder.MAX_PACKET_SIZE);
+        Set<Integer> transmitted = new HashSet<>();
+        firstBatch.forEach(event -> transmitted.add(event.nodeId()));
+        for (int i = 0; i < 100 - firstBatch.size(); i++) {
+            assertFalse(transmitted.contains(secondBatch.get(i).nodeId()));
+            transmitted.add(secondBatch.get(i).nodeId());
+        }
+        assertEquals(100, transmitted.size());
+    }
+
+    @Test
+    public void testEventsAreDroppedAfterTheThreshold() {
+        MembershipEventStore eventStore = new MembershipEventStore(List.<MemberNode>of());
+        eventStore.enqueueEvent(event(MembershipEvent.Type.JOIN, 1, 0));
+
+        // ceil(3 * ln(10 + 1)) transmissions for a cluster smaller than ten members
+        int transmissions = 0;
+        while (!eventStore.getRecentEventsAndIncrement(PacketBuilder.MAX_PACKET_SIZE).isEmpty()) {
+            transmissions++;
+        }
+        assertEquals((int) Math.ceil(3 * Math.log(11)), transmissions);
+        assertEquals(0, eventStore.size());
+    }
+
+    @Test
+    public void testNewerEventsInvalidateOlderOnes() {
+        MembershipEventStore eventStore = new MembershipEventStore(List.<MemberNode>of());
+        eventStore.enqueueEvent(event(MembershipEvent.Type.JOIN, 1, 0));
+        eventStore.enqueueEvent(event(MembershipEvent.Type.JOIN, 2, 0));
+        eventStore.getRecentEventsAndIncrement(PacketBuilder.MAX_PACKET_SIZE);
+
+        // the failure replaces the join and is transmitted from scratch, an outdated restore is ignored
+        eventStore.enqueueEvent(event(MembershipEvent.Type.FAILURE, 1, 0));
+        eventStore.enqueueEvent(event(MembershipEvent.Type.RESTORE, 1, 0));
+        assertEquals(2, eventStore.size());
+
+        List<MembershipEvent> batch = eventStore.getRecentEventsAndIncrement(PacketBuilder.MAX_PACKET_SIZE);
+        assertEquals(MembershipEvent.Type.FAILURE, batch.get(0).type());
+        assertEquals(1, batch.get(0).disseminationCount());
+        assertEquals(2, batch.get(1).nodeId());
+        assertEquals(2, batch.get(1).disseminationCount());
+    }
+}
@@ -3,7 +3,9 @@ package org.shavin.swim;
 import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.Test;
+import org.shavin.swim.member.AddressCache;
 import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
 
 import java.net.InetSocketAddress;
 
@@ -25,4 +27,30 @@ public class MembershipEventTest {
 
     }
 
+    @Test
+    public void testNodeAddress() {
+        // 10.0.0.1:40000, a port above the range of a signed short
+        NodeAddress rawAddress = NodeAddress.ofIPv4(0x0A000001, 40000);
+        NodeAddress resolvedAddress = NodeAddress.of(new InetSocketAddress("10.0.0.1", 40000));
+        System.out.println(rawAddress);
+
+        assertTrue(rawAddress.isIPv4());
+        assertEquals(resolvedAddress, rawAddress);
+        assertEquals(resolvedAddress.hashCode(), rawAddress.hashCode());
+        assertEquals(new InetSocketAddress("10.0.0.1", 40000), rawAddress.socketAddress());
+        // the socket address is built once and reused
+        assertSame(rawAddress.socketAddress(), rawAddress.socketAddress());
+        assertEquals("10.0.0.1", rawAddress.hostString());
+
+        // an interned address is shared by all the equal addresses
+        AddressCache addressCache = new AddressCache(1);
+        assertSame(rawAddress, addressCache.intern(rawAddress));
+        assertSame(rawAddress, addressCache.intern(resolvedAddress));
+
+        // a full cache hands out the address as it is
+        NodeAddress otherAddress = NodeAddress.ofIPv4(0x0A000002, 40000);
+        assertSame(otherAddress, addressCache.intern(otherAddress));
+        assertEquals(1, addressCache.size());
+    }
+
 }
@@ -0,0 +1,223 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.api.member.MembershipSnapshot;
+import org.shavin.swim.member.MembershipTable;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MembershipTableTest {
+
+    @Test
+    public void testLookupByIdAndAddress() {
+        MembershipTable membershipTable = new MembershipTable(0);
+
+        // enough members to grow the id index a few times, including negative ids
+        for (int id = -500; id <= 500; id++) {
+            if (id == 0) {
+                continue;
+            }
+            assertTrue(membershipTable.add(new MemberNode(id, new InetSocketAddress("127.0.0.1", 20000 + id), MemberNode.MemberStatus.UP)));
+        }
+        System.out.println(membershipTable.size() + " members");
+
+        assertEquals(1000, membershipTable.size());
+        assertEquals(1000, membershipTable.count(MemberNode.MemberStatus.UP));
+        for (int id = -500; id <= 500; id++) {
+            if (id == 0) {
+                continue;
+            }
+            assertEquals(id, membershipTable.get(id).id());
+            assertEquals(id, membershipTable.getByAddress(new InetSocketAddress("127.0.0.1", 20000 + id)).id());
+        }
+        assertNull(membershipTable.get(501));
+        assertNull(membershipTable.getByAddress(new InetSocketAddress("127.0.0.1", 30000)));
+
+        // duplicates and the local node are never added
+        assertFalse(membershipTable.add(new MemberNode(1, new InetSocketAddress("127.0.0.1", 1), MemberNode.MemberStatus.UP)));
+        assertFalse(membershipTable.add(new MemberNode(0, new InetSocketAddress("127.0.0.1", 2), MemberNode.MemberStatus.UP)));
+        assertEquals(1000, membershipTable.size());
+
+        // removing members keeps the remaining ones reachable
+        for (int id = 1; id <= 500; id += 2) {
+            assertEquals(id, membershipTable.remove(id).id());
+        }
+        assertNull(membershipTable.remove(1));
+        assertEquals(750, membershipTable.size());
+        for (int id = -500; id <= 500; id++) {
+            boolean removed = id == 0 || (id > 0 && id % 2 == 1);
+            assertEquals(!removed, membershipTable.contains(id), "member " + id);
+            assertEquals(!removed, membershipTable.getByAddress(new InetSocketAddress("127.0.0.1", 20000 + id)) != null, "member " + id);
+        }
+    }
+
+    @Test
+    public void testLookupByIPv6Address() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        for (int id = 1; id <= 10; id++) {
+            membershipTable.add(new MemberNode(id, new InetSocketAddress("::" + id, 5000), MemberNode.MemberStatus.UP));
+            membershipTable.add(new MemberNode(100 + id, new InetSocketAddress("10.0.0." + id, 5000), MemberNode.MemberStatus.UP));
+        }
+        membershipTable.remove(3);
+        membershipTable.remove(104);
+
+        // the positions of the members after the removed ones are updated
+        for (int id = 1; id <= 10; id++) {
+            MemberNode ipv6Member = membershipTable.getByAddress(new InetSocketAddress("::" + id, 5000));
+            MemberNode ipv4Member = membershipTable.getByAddress(new InetSocketAddress("10.0.0." + id, 5000));
+            assertEquals(id == 3 ? null : id, ipv6Member == null ? null : ipv6Member.id());
+            assertEquals(id == 4 ? null : 100 + id, ipv4Member == null ? null : ipv4Member.id());
+        }
+        assertEquals(18, membershipTable.members().size());
+    }
+
+    @Test
+    public void testStatusCounts() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberNode first = new MemberNode(1, new InetSocketAddress("127.0.0.1", 5001), MemberNode.MemberStatus.UP);
+        MemberNode second = new MemberNode(2, new InetSocketAddress("127.0.0.1", 5002), MemberNode.MemberStatus.UP);
+        membershipTable.add(first);
+        membershipTable.add(second);
+
+        assertTrue(membershipTable.transition(first, MemberNode.MemberStatus.SUSPICIOUS, 0));
+        assertFalse(membershipTable.transition(first, MemberNode.MemberStatus.SUSPICIOUS, 0));
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.UP));
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.SUSPICIOUS));
+
+        assertTrue(membershipTable.transition(first, MemberNode.MemberStatus.DOWN, 0));
+        assertEquals(0, membershipTable.count(MemberNode.MemberStatus.SUSPICIOUS));
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.DOWN));
+
+        membershipTable.remove(2);
+        assertEquals(0, membershipTable.count(MemberNode.MemberStatus.UP));
+
+        // a removed member left for good and does not count anymore
+        assertFalse(membershipTable.transition(second, MemberNode.MemberStatus.DOWN, 5));
+        assertEquals(MemberNode.MemberStatus.LEAVED, second.status());
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.DOWN));
+    }
+
+    @Test
+    public void testTransitionPrecedence() {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberNode memberNode = new MemberNode(1, new InetSocketAddress("127.0.0.1", 5001), MemberNode.MemberStatus.UP);
+        membershipTable.add(memberNode);
+
+        // a suspicion of the current incarnation overrides the member being alive, not the other way around
+        assertTrue(membershipTable.transition(memberNode, MemberNode.MemberStatus.SUSPICIOUS, 0));
+        assertFalse(membershipTable.transition(memberNode, MemberNode.MemberStatus.UP, 0));
+        // the member refutes the suspicion with a new incarnation
+        assertTrue(membershipTable.transition(memberNode, MemberNode.MemberStatus.UP, 1));
+        assertEquals(1, memberNode.incarnationNumber());
+        // outdated news are ignored
+        assertFalse(membershipTable.transition(memberNode, MemberNode.MemberStatus.DOWN, 0));
+        assertTrue(membershipTable.transition(memberNode, MemberNode.MemberStatus.DOWN, 1));
+        assertEquals(MemberNode.MemberStatus.DOWN, memberNode.status());
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.DOWN));
+        assertEquals(0, membershipTable.count(MemberNode.MemberStatus.UP));
+    }
+
+    @Test
+    public void testConcurrentTransitionsAppliedOnce() throws Exception {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberNode memberNode = new MemberNode(1, new InetSocketAddress("127.0.0.1", 5001), MemberNode.MemberStatus.UP);
+        membershipTable.add(memberNode);
+
+        int threads = 8;
+        int rounds = 1000;
+        AtomicInteger applied = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // every thread declares the same suspicions and refutations
+                    for (int incarnationNumber = 0; incarnationNumber < rounds; incarnationNumber++) {
+                        if (membershipTable.transition(memberNode, MemberNode.MemberStatus.SUSPICIOUS, incarnationNumber)) {
+                            applied.incrementAndGet();
+                        }
+                        if (membershipTable.transition(memberNode, MemberNode.MemberStatus.UP, incarnationNumber + 1)) {
+                            applied.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println(applied.get() + " transitions applied, " + memberNode);
+
+        // no transition is applied twice, and the status counts are consistent with the member
+        assertTrue(applied.get() <= 2 * rounds);
+        assertEquals(rounds, memberNode.incarnationNumber());
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.UP) + membershipTable.count(MemberNode.MemberStatus.SUSPICIOUS));
+        assertEquals(1, membershipTable.count(memberNode.status()));
+    }
+
+    @Test
+    public void testSnapshotsAndDiffs() throws Exception {
+        MembershipTable membershipTable = new MembershipTable(0);
+        MemberNode first = new MemberNode(1, new InetSocketAddress("127.0.0.1", 5001), MemberNode.MemberStatus.UP);
+        MemberNode second = new MemberNode(2, new InetSocketAddress("127.0.0.1", 5002), MemberNode.MemberStatus.UP);
+        membershipTable.add(first);
+        membershipTable.add(second);
+
+        MembershipSnapshot before = membershipTable.snapshot();
+        System.out.println(before);
+        assertEquals(2, before.epoch());
+        assertEquals(2, before.size());
+        // the snapshot is reused until the table changes
+        assertSame(before, membershipTable.snapshot());
+
+        // a waiting reader is woken up by the next change
+        CompletableFuture<MembershipSnapshot> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return membershipTable.awaitChange(before.epoch(), 5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        membershipTable.transition(first, MemberNode.MemberStatus.DOWN, 1);
+        membershipTable.remove(2);
+        membershipTable.add(new MemberNode(3, new InetSocketAddress("127.0.0.1", 5003), MemberNode.MemberStatus.UP));
+        assertTrue(waiter.get(5, TimeUnit.SECONDS).epoch() > before.epoch());
+
+        MembershipSnapshot after = membershipTable.snapshot();
+        assertEquals(5, after.epoch());
+        // the old snapshot is not affected by the changes
+        assertEquals(MemberNode.MemberStatus.UP, before.get(1).status());
+        assertEquals(MemberNode.MemberStatus.DOWN, after.get(1).status());
+        assertEquals(1, after.get(1).incarnationNumber());
+        assertNull(after.get(2));
+
+        MembershipSnapshot.Diff diff = after.diff(before);
+        System.out.println(diff);
+        assertEquals(3, diff.added().get(0).id());
+        assertEquals(2, diff.removed().get(0).id());
+        assertEquals(1, diff.changed().get(0).id());
+        assertTrue(after.diff(after).isEmpty());
+
+        // no change within the timeout returns the current snapshot
+        assertSame(after, membershipTable.awaitChange(after.epoch(), 10, TimeUnit.MILLISECONDS));
+    }
+}
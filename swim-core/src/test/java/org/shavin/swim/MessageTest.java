@@ -5,12 +5,18 @@ import static org.junit.jupiter.api.Assertions.*;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import org.junit.jupiter.api.Test;
+import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
 import org.shavin.swim.messages.Message;
+import org.shavin.swim.messages.MessageFlags;
+import org.shavin.swim.messages.MessageVersion;
 import org.shavin.swim.messages.PingAckMessage;
 import org.shavin.swim.messages.PingAckMessageBuilder;
 import org.shavin.swim.messages.PingRequestMessage;
+import org.shavin.swim.messages.ReplicatedMapMessage;
 
 import java.io.IOException;
+import java.util.List;
 
 public class MessageTest {
 
@@ -75,4 +81,110 @@ public class MessageTest {
 
     }
 
+    @Test
+    public void testUrgentFlag() throws IOException {
+        // failure detection messages are tagged as urgent, plain pings carrying gossip data are not
+        Message ackMessage = PingAckMessageBuilder.pingAckMessageForNode(1, 2, 3000L);
+        Message pingMessage = PingAckMessageBuilder.pingMessageForNode(1, 2, 3000L);
+        Message requestMessage = PingRequestMessage.Builder.pingRequestMessageFor(1, 2, 3, 3000L);
+
+        assertTrue(ackMessage.header().flags().hasFlag(MessageFlags.MessageFlag.URGENT_BIT));
+        assertFalse(pingMessage.header().flags().hasFlag(MessageFlags.MessageFlag.URGENT_BIT));
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        Message.Serializer.serialize(ackMessage, buf);
+        assertTrue(Message.Serializer.isUrgent(buf));
+        // peeking at the flags must not move the reader index
+        assertEquals(PingAckMessage.class, Message.Serializer.deserialize(buf).payload().getClass());
+
+        buf.clear();
+        Message.Serializer.serialize(pingMessage, buf);
+        assertFalse(Message.Serializer.isUrgent(buf));
+
+        buf.clear();
+        Message.Serializer.serialize(requestMessage, buf);
+        assertTrue(Message.Serializer.isUrgent(buf));
+        buf.release();
+    }
+
+    @Test
+    public void testUnsupportedVersionIsRejected() throws IOException {
+        Message pingMessage = PingAckMessageBuilder.pingMessageForNode(1, 2, 3000L);
+        assertEquals(MessageVersion.DEFAULT_VERSION, pingMessage.header().version());
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        Message.Serializer.serialize(pingMessage, buf);
+        // the payload of a version 1 node is laid out differently and must not be read
+        buf.setByte(Integer.BYTES, MessageVersion.VERSION_1.getId());
+        assertThrows(IOException.class, () -> Message.Serializer.deserialize(buf));
+
+        buf.clear();
+        Message.Serializer.serialize(pingMessage, buf);
+        assertEquals(MessageVersion.VERSION_2, Message.Serializer.deserialize(buf).header().version());
+        buf.release();
+    }
+
+    @Test
+    public void testPiggybackedEventAddresses() throws IOException {
+        MembershipEvent event = new MembershipEvent(MembershipEvent.Type.JOIN, 7, NodeAddress.ofIPv4(0x7F000001, 50000), 3);
+        PingAckMessage ackMessage = (PingAckMessage) PingAckMessageBuilder.pingAckMessageForNode(1, 2, 3L).payload();
+        Message piggybackMessage = PingAckMessageBuilder.attachPiggybacks(ackMessage, List.of(event));
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        Message.Serializer.serialize(piggybackMessage, buf);
+        Message deserializedMessage = Message.Serializer.deserialize(buf);
+        buf.release();
+
+        List<MembershipEvent> events = ((PingAckMessage) deserializedMessage.payload()).events();
+        System.out.println(events);
+
+        assertEquals(1, events.size());
+        assertEquals(7, events.get(0).nodeId());
+        assertEquals(event.address(), events.get(0).address());
+        assertEquals(50000, events.get(0).port());
+        assertEquals("127.0.0.1", events.get(0).hostAddress());
+        assertEquals(3, events.get(0).incarnationNumber());
+    }
+
+    @Test
+    public void testPiggybackedSuspicionsOnPing() throws IOException {
+        MembershipEvent suspectEvent = new MembershipEvent(MembershipEvent.Type.SUSPECT, 7, NodeAddress.ofIPv4(0x7F000001, 50000), 3, 9);
+        MembershipEvent aliveEvent = new MembershipEvent(MembershipEvent.Type.ALIVE, 8, NodeAddress.ofIPv4(0, 50001), 4);
+        Message pingMessage = PingAckMessageBuilder.pingMessageForNode(1, 2, 3L, List.of(suspectEvent, aliveEvent), List.of());
+
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        Message.Serializer.serialize(pingMessage, buf);
+        Message deserializedMessage = Message.Serializer.deserialize(buf);
+        buf.release();
+
+        List<MembershipEvent> events = ((PingAckMessage) deserializedMessage.payload()).events();
+        System.out.println(events);
+
+        // only the SUSPECT event carries its origin node id
+        assertEquals(2, events.size());
+        assertEquals(MembershipEvent.Type.SUSPECT, events.get(0).type());
+        assertEquals(9, events.get(0).originNodeId());
+        assertEquals(3, events.get(0).incarnationNumber());
+        assertEquals(MembershipEvent.Type.ALIVE, events.get(1).type());
+        assertEquals(MembershipEvent.NO_ORIGIN, events.get(1).originNodeId());
+        assertEquals(4, events.get(1).incarnationNumber());
+    }
+
+    @Test
+    public void testInvalidMapEntryLengthIsRejected() throws IOException {
+        byte[] entry = new byte[16];
+        Message entriesMessage = ReplicatedMapMessage.Builder.entriesMessageFor(1, 2, List.of(entry));
+
+        for (int entryLength : new int[] {-1, Integer.MAX_VALUE}) {
+            ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+            Message.Serializer.serialize(entriesMessage, buf);
+            // overwrite the length in front of the entry, the last field of the message
+            buf.setInt(buf.writerIndex() - entry.length - Integer.BYTES, entryLength);
+            try {
+                assertThrows(IOException.class, () -> Message.Serializer.deserialize(buf));
+            } finally {
+                buf.release();
+            }
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.member.MembershipTable;
+import org.shavin.swim.member.NodeAddress;
+import org.shavin.swim.member.OffHeapMemberStore;
+
+import java.net.InetSocketAddress;
+
+public class OffHeapMemberStoreTest {
+
+    @Test
+    public void testViewsReadAndWriteTheStore() {
+        OffHeapMemberStore store = new OffHeapMemberStore(16);
+
+        // enough members to grow the columns a few times
+        MemberNode[] views = new MemberNode[1000];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = store.add(new MemberNode(i + 1, new InetSocketAddress("10.0." + (i / 256) + "." + (i % 256), 7000 + i), MemberNode.MemberStatus.UP));
+        }
+        System.out.println(views[999] + " in " + store.offHeapBytes() + " off-heap bytes");
+
+        assertEquals(1000, store.size());
+        assertTrue(store.capacity() >= 1000);
+        for (int i = 0; i < views.length; i++) {
+            assertEquals(i + 1, views[i].id());
+            assertEquals(new InetSocketAddress("10.0." + (i / 256) + "." + (i % 256), 7000 + i), views[i].address());
+            assertTrue(views[i].isHealthy());
+        }
+
+        views[10].setStatus(MemberNode.MemberStatus.SUSPICIOUS);
+        views[10].increaseIncarnationNumber();
+        assertEquals(MemberNode.MemberStatus.SUSPICIOUS, views[10].status());
+        assertEquals(1, views[10].incarnationNumber());
+        assertFalse(views[10].isHealthy());
+        // the neighbouring slots are untouched
+        assertEquals(MemberNode.MemberStatus.UP, views[9].status());
+        assertEquals(0, views[11].incarnationNumber());
+
+        // the view of a removed member reports it as left, even after its slot is reused
+        assertTrue(store.remove(views[10]));
+        assertFalse(store.remove(views[10]));
+        MemberNode reused = store.add(new MemberNode(5000, new InetSocketAddress("10.1.0.1", 9000), MemberNode.MemberStatus.DOWN));
+        assertEquals(MemberNode.MemberStatus.LEAVED, views[10].status());
+        views[10].setStatus(MemberNode.MemberStatus.UP);
+        assertEquals(MemberNode.MemberStatus.DOWN, reused.status());
+        assertEquals(new InetSocketAddress("10.1.0.1", 9000), reused.address());
+        assertEquals(1000, store.size());
+    }
+
+    @Test
+    public void testMembershipTableWithOffHeapStore() {
+        MembershipTable membershipTable = new MembershipTable(0, new OffHeapMemberStore(4));
+        MemberNode memberNode = new MemberNode(1, new InetSocketAddress("127.0.0.1", 5001), MemberNode.MemberStatus.UP);
+        assertTrue(membershipTable.add(memberNode));
+
+        // the table keeps no member node, it hands out a new view of the stored member on every lookup
+        MemberNode view = membershipTable.get(1);
+        assertNotSame(memberNode, view);
+        assertNotSame(view, membershipTable.get(1));
+        assertEquals(memberNode, view);
+        assertEquals(view, membershipTable.getByAddress(new InetSocketAddress("127.0.0.1", 5001)));
+        assertEquals(view, membershipTable.members().get(0));
+
+        assertTrue(membershipTable.transition(view, MemberNode.MemberStatus.DOWN, 1));
+        assertFalse(membershipTable.transition(view, MemberNode.MemberStatus.SUSPICIOUS, 1));
+        assertEquals(MemberNode.MemberStatus.DOWN, membershipTable.get(1).status());
+        assertEquals(1, membershipTable.count(MemberNode.MemberStatus.DOWN));
+        assertEquals(1, membershipTable.snapshot().get(1).incarnationNumber());
+
+        assertEquals(view, membershipTable.remove(1));
+        assertEquals(0, membershipTable.count(MemberNode.MemberStatus.DOWN));
+        assertEquals(MemberNode.MemberStatus.LEAVED, view.status());
+        assertNull(membershipTable.getByAddress(new InetSocketAddress("127.0.0.1", 5001)));
+    }
+
+    @Test
+    public void testReferencesOfStoredMembers() {
+        OffHeapMemberStore store = new OffHeapMemberStore(4);
+        long reference = store.insert(new MemberNode(7, new InetSocketAddress("10.0.0.7", 7007), MemberNode.MemberStatus.UP));
+        long ipv6Reference = store.insert(new MemberNode(8, new InetSocketAddress("::1", 7008), MemberNode.MemberStatus.UP));
+
+        // the address key is read from the columns without creating the address
+        assertEquals(NodeAddress.of(new InetSocketAddress("10.0.0.7", 7007)).key(), store.addressKey(reference));
+        assertEquals(NodeAddress.NO_KEY, store.addressKey(ipv6Reference));
+        assertEquals(new InetSocketAddress("::1", 7008), store.view(8, ipv6Reference).address());
+
+        MemberNode view = store.view(7, reference);
+        assertTrue(view.isHealthy());
+        assertTrue(store.remove(reference));
+        assertFalse(store.remove(reference));
+        assertFalse(store.remove(view));
+        // a view created from a stale reference reports the member as left
+        store.insert(new MemberNode(9, new InetSocketAddress("10.0.0.9", 7009), MemberNode.MemberStatus.UP));
+        assertEquals(MemberNode.MemberStatus.LEAVED, store.view(7, reference).status());
+    }
+
+    @Test
+    public void testStaleViewsHaveNoAddress() {
+        OffHeapMemberStore store = new OffHeapMemberStore(4);
+        MemberNode ipv4View = store.add(new MemberNode(1, new InetSocketAddress("10.0.0.1", 7001), MemberNode.MemberStatus.UP));
+        MemberNode ipv6View = store.add(new MemberNode(2, new InetSocketAddress("::2", 7002), MemberNode.MemberStatus.UP));
+        MemberNode readView = store.add(new MemberNode(3, new InetSocketAddress("10.0.0.3", 7003), MemberNode.MemberStatus.UP));
+        assertEquals(new InetSocketAddress("10.0.0.3", 7003), readView.address());
+
+        assertTrue(store.remove(ipv4View));
+        assertTrue(store.remove(ipv6View));
+        assertTrue(store.remove(readView));
+        // the slots are reused by other members, the stale views must not report their addresses
+        store.add(new MemberNode(4, new InetSocketAddress("10.0.0.4", 7004), MemberNode.MemberStatus.UP));
+        store.add(new MemberNode(5, new InetSocketAddress("10.0.0.5", 7005), MemberNode.MemberStatus.UP));
+        assertNull(ipv4View.address());
+        assertNull(ipv6View.address());
+        // an address read before the removal is the address of the removed member
+        assertEquals(new InetSocketAddress("10.0.0.3", 7003), readView.address());
+    }
+}
@@ -0,0 +1,67 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.member.MemberNode;
+import org.shavin.swim.impl.CustomDataManager;
+import org.shavin.swim.impl.MembershipEventStore;
+import org.shavin.swim.impl.PacketBuilder;
+import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
+import org.shavin.swim.messages.Message;
+import org.shavin.swim.messages.PingAckMessage;
+import org.shavin.swim.messages.PingAckMessageBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+public class PacketBuilderTest {
+
+    private static int serializedSize(Message message) throws IOException {
+        ByteBuf buf = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            Message.Serializer.serialize(message, buf);
+            // the size is known exactly before the message is serialized
+            assertEquals(Message.Serializer.serializedSize(message), buf.readableBytes());
+            return buf.readableBytes();
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testPiggybacksShareOnePacket() throws IOException {
+        MembershipEventStore eventStore = new MembershipEventStore(List.<MemberNode>of());
+        CustomDataManager customDataManager = new CustomDataManager(List.of(), List.<MemberNode>of());
+        PacketBuilder packetBuilder = new PacketBuilder(eventStore, customDataManager);
+
+        for (int i = 0; i < 3; i++) {
+            customDataManager.broadcastData(new byte[200 + i]);
+        }
+        for (int nodeId = 1; nodeId <= 50; nodeId++) {
+            eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.SUSPECT, nodeId, NodeAddress.ofIPv4(0x0A000000 | nodeId, 7000), 0, 99));
+        }
+
+        // the events go first, the user data fills the rest of the packet
+        Message pingMessage = packetBuilder.pingMessage(1, 2, 3L);
+        PingAckMessage ping = (PingAckMessage) pingMessage.payload();
+        int pingSize = serializedSize(pingMessage);
+        System.out.println(ping.events().size() + " events and " + ping.getCustomUserData().size() + " user data in " + pingSize + " bytes");
+        assertEquals(50, ping.events().size());
+        assertEquals(1, ping.getCustomUserData().size());
+        assertTrue(pingSize <= PacketBuilder.MAX_PACKET_SIZE);
+
+        // an ack is filled with events up to the same budget
+        for (int nodeId = 51; nodeId <= 150; nodeId++) {
+            eventStore.enqueueEvent(new MembershipEvent(MembershipEvent.Type.JOIN, nodeId, NodeAddress.ofIPv4(0x0A000000 | nodeId, 7000), 0));
+        }
+        Message ackMessage = packetBuilder.ackMessage(PingAckMessageBuilder.pingAckMessageForNode(2, 1, 3L));
+        int ackSize = serializedSize(ackMessage);
+        System.out.println(((PingAckMessage) ackMessage.payload()).events().size() + " events in " + ackSize + " bytes");
+        assertTrue(ackSize <= PacketBuilder.MAX_PACKET_SIZE);
+        assertTrue(ackSize > PacketBuilder.MAX_PACKET_SIZE - MembershipEvent.SERIALIZED_SIZE);
+    }
+}
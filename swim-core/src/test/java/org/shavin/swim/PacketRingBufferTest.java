@@ -0,0 +1,81 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.transport.PacketRingBuffer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PacketRingBufferTest {
+
+    private final InetSocketAddress sender = new InetSocketAddress("127.0.0.1", 7000);
+
+    @Test
+    public void testOfferAndDrainInOrder() {
+        PacketRingBuffer ringBuffer = new PacketRingBuffer(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(Unpooled.wrappedBuffer(new byte[]{(byte) i}), sender));
+        }
+        // the fifth packet does not fit until the consumer drains the ring buffer
+        assertFalse(ringBuffer.offer(Unpooled.wrappedBuffer(new byte[]{4}), sender));
+        assertEquals(1, ringBuffer.overflowCount());
+        assertEquals(4, ringBuffer.occupancy());
+
+        List<Byte> drained = new ArrayList<>();
+        assertEquals(3, ringBuffer.drain((buffer, address) -> drained.add(buffer.getByte(0)), 3));
+        assertEquals(List.of((byte) 0, (byte) 1, (byte) 2), drained);
+        assertEquals(1, ringBuffer.occupancy());
+
+        // the freed slots are reused by the next lap
+        assertTrue(ringBuffer.offer(Unpooled.wrappedBuffer(new byte[]{5}), sender));
+        assertEquals(2, ringBuffer.drain((buffer, address) -> drained.add(buffer.getByte(0)), 10));
+        assertEquals(List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 5), drained);
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        int producersCount = 4;
+        int packetsPerProducer = 50000;
+        PacketRingBuffer ringBuffer = new PacketRingBuffer(1024);
+
+        Thread[] producers = new Thread[producersCount];
+        for (int p = 0; p < producersCount; p++) {
+            int producerId = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < packetsPerProducer; i++) {
+                    ByteBuf buffer = Unpooled.buffer(8).writeInt(producerId).writeInt(i);
+                    while (!ringBuffer.offer(buffer, sender)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        // every producer's packets must be drained exactly once and in the order they were published
+        int[] nextExpected = new int[producersCount];
+        int total = 0;
+        while (total < producersCount * packetsPerProducer) {
+            total += ringBuffer.drain((buffer, address) -> {
+                int producerId = buffer.getInt(0);
+                assertEquals(nextExpected[producerId]++, buffer.getInt(4));
+            }, 64);
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        System.out.println("overflows while draining: " + ringBuffer.overflowCount());
+        assertTrue(ringBuffer.isEmpty());
+        for (int p = 0; p < producersCount; p++) {
+            assertEquals(packetsPerProducer, nextExpected[p]);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.impl.PendingProbeTable;
+import org.shavin.swim.util.TimingWheel;
+
+import java.util.concurrent.TimeUnit;
+
+public class PendingProbeTableTest {
+
+    @Test
+    public void testAcksCompleteTheirProbeOnce() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 64, 16);
+        PendingProbeTable pendingProbes = new PendingProbeTable(16, timingWheel);
+
+        long timeout = timingWheel.schedule((target, id) -> fail("cancelled timeout expired"), "probe", 1, 1, TimeUnit.SECONDS);
+        pendingProbes.register(1, 7, timeout);
+        assertTrue(pendingProbes.isPending(1));
+
+        // an ack from another member or with another sequence number does not complete the probe
+        assertEquals(-1, pendingProbes.complete(1, 8));
+        assertEquals(-1, pendingProbes.complete(2, 7));
+
+        long roundTripTime = pendingProbes.complete(1, 7);
+        System.out.println("round trip time " + roundTripTime + " ns");
+        assertTrue(roundTripTime >= 0);
+        assertEquals(roundTripTime, pendingProbes.lastRoundTripTime());
+        assertEquals(roundTripTime, pendingProbes.smoothedRoundTripTime());
+        // the timeout is cancelled, a duplicate ack and the timeout handler find nothing
+        assertEquals(0, timingWheel.size());
+        assertEquals(-1, pendingProbes.complete(1, 7));
+        assertFalse(pendingProbes.expire(1));
+        assertFalse(pendingProbes.isPending(1));
+    }
+
+    @Test
+    public void testWrappedAndExpiredProbes() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 64, 16);
+        PendingProbeTable pendingProbes = new PendingProbeTable(16, timingWheel);
+
+        pendingProbes.register(3, 7, TimingWheel.NO_TIMEOUT);
+        assertTrue(pendingProbes.expire(3));
+        // a late ack of an expired probe is rejected
+        assertEquals(-1, pendingProbes.complete(3, 7));
+
+        // the probe 19 takes the slot of the probe 3, a wrapped ack of the old probe is rejected
+        pendingProbes.register(3, 7, TimingWheel.NO_TIMEOUT);
+        pendingProbes.register(19, 9, TimingWheel.NO_TIMEOUT);
+        assertEquals(-1, pendingProbes.complete(3, 7));
+        assertFalse(pendingProbes.isPending(3));
+        assertTrue(pendingProbes.complete(19, 9) >= 0);
+
+        long timeout = timingWheel.schedule((target, id) -> fail("cancelled timeout expired"), "probe", 20, 1, TimeUnit.SECONDS);
+        pendingProbes.register(20, 9, timeout);
+        assertTrue(pendingProbes.remove(20));
+        assertFalse(pendingProbes.remove(20));
+        assertEquals(0, timingWheel.size());
+
+        // removing all the probes cancels all their timeouts
+        for (long sequenceNumber = 21; sequenceNumber < 25; sequenceNumber++) {
+            pendingProbes.register(sequenceNumber, 9, timingWheel.schedule((target, id) -> fail("cancelled timeout expired"), "probe", sequenceNumber, 1, TimeUnit.SECONDS));
+        }
+        assertEquals(4, pendingProbes.removeAll());
+        assertEquals(0, timingWheel.size());
+        assertFalse(pendingProbes.isPending(21));
+    }
+
+    @Test
+    public void testMissedNacks() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 64, 16);
+        PendingProbeTable pendingProbes = new PendingProbeTable(16, timingWheel);
+
+        // a ping request sent through three intermediaries
+        pendingProbes.register(5, 7, TimingWheel.NO_TIMEOUT, 3);
+        assertEquals(3, pendingProbes.missedNacks(5));
+
+        // a NACK about another member or for another probe is not counted
+        assertFalse(pendingProbes.nack(5, 8));
+        assertFalse(pendingProbes.nack(6, 7));
+        assertTrue(pendingProbes.nack(5, 7));
+        assertTrue(pendingProbes.nack(5, 7));
+        assertEquals(1, pendingProbes.missedNacks(5));
+
+        // a probe which is not pending misses no NACKs
+        assertTrue(pendingProbes.expire(5));
+        assertEquals(0, pendingProbes.missedNacks(5));
+        assertFalse(pendingProbes.nack(5, 7));
+
+        // the slot starts counting again for the next probe
+        pendingProbes.register(21, 7, TimingWheel.NO_TIMEOUT, 2);
+        assertEquals(2, pendingProbes.missedNacks(21));
+    }
+}
@@ -0,0 +1,160 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.api.GossipCluster;
+import org.shavin.swim.api.GossipClusterBuilder;
+import org.shavin.swim.impl.LwwReplicatedMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ReplicatedMapTest {
+
+    private static byte[] bytes(String value) {
+        return value.getBytes();
+    }
+
+    @Test
+    public void testConcurrentWritesConverge() {
+        List<byte[]> deltas1 = new ArrayList<>();
+        List<byte[]> deltas2 = new ArrayList<>();
+        LwwReplicatedMap map1 = new LwwReplicatedMap(1, deltas1::add);
+        LwwReplicatedMap map2 = new LwwReplicatedMap(2, deltas2::add);
+
+        // both nodes write the same key before they see the write of the other one
+        map1.put("config", bytes("one"));
+        map2.put("config", bytes("two"));
+        deltas1.forEach(map2::merge);
+        deltas2.forEach(map1::merge);
+
+        // the same write wins on both nodes
+        assertArrayEquals(map1.get("config"), map2.get("config"));
+        assertArrayEquals(map1.digest(), map2.digest());
+
+        // a replayed delta changes nothing
+        assertFalse(map1.merge(deltas1.get(0)));
+        assertFalse(map1.merge(deltas2.get(0)));
+
+        // a later write wins over both, whichever node writes it
+        map2.put("config", bytes("three"));
+        assertTrue(map1.merge(deltas2.get(1)));
+        assertEquals("three", new String(map1.get("config")));
+
+        assertThrows(IllegalArgumentException.class, () -> map1.put("large", new byte[LwwReplicatedMap.MAX_ENTRY_SIZE]));
+    }
+
+    @Test
+    public void testListenersSeeWritesAndRemovals() {
+        List<byte[]> deltas = new ArrayList<>();
+        LwwReplicatedMap map1 = new LwwReplicatedMap(1, deltas::add);
+        LwwReplicatedMap map2 = new LwwReplicatedMap(2, delta -> {});
+        List<String> changes = new ArrayList<>();
+        map2.addListener("leader", (key, value) -> changes.add(key + "=" + (value == null ? null : new String(value))));
+        map2.addListener((key, value) -> changes.add("*" + key));
+
+        map1.put("leader", bytes("node-1"));
+        map1.put("other", bytes("x"));
+        map1.remove("leader");
+        deltas.forEach(map2::merge);
+
+        assertEquals(List.of("*leader", "leader=node-1", "*other", "*leader", "leader=null"), changes);
+        assertNull(map2.get("leader"));
+        assertEquals(1, map2.size());
+        assertEquals(1, map2.snapshot().size());
+        // the removal is remembered, so an older write of the key is not applied again
+        assertFalse(map2.merge(deltas.get(0)));
+    }
+
+    @Test
+    public void testListenersSeeConcurrentMergesInApplyOrder() throws InterruptedException {
+        List<byte[]> deltas = new ArrayList<>();
+        LwwReplicatedMap writer = new LwwReplicatedMap(1, deltas::add);
+        for (int i = 0; i < 2000; i++) {
+            writer.put("config", bytes("v" + i));
+        }
+
+        LwwReplicatedMap map = new LwwReplicatedMap(2, delta -> {});
+        AtomicReference<byte[]> lastSeen = new AtomicReference<>();
+        map.addListener("config", (key, value) -> lastSeen.set(value));
+
+        // the writes arrive on two threads in opposite orders
+        Thread forward = new Thread(() -> deltas.forEach(map::merge));
+        Thread backward = new Thread(() -> {
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                map.merge(deltas.get(i));
+            }
+        });
+        forward.start();
+        backward.start();
+        forward.join();
+        backward.join();
+
+        // the listener saw the newest write last
+        assertEquals("v1999", new String(map.get("config")));
+        assertArrayEquals(map.get("config"), lastSeen.get());
+    }
+
+    @Test
+    public void testDigestsLimitTheExchangedEntries() {
+        LwwReplicatedMap map1 = new LwwReplicatedMap(1, delta -> {});
+        LwwReplicatedMap map2 = new LwwReplicatedMap(2, delta -> {});
+        for (int i = 0; i < 1000; i++) {
+            map1.put("key-" + i, bytes("value-" + i));
+        }
+
+        // an empty node receives every entry
+        List<byte[]> entries = map1.entriesDifferingFrom(map2.digest());
+        assertEquals(1000, entries.size());
+        entries.forEach(map2::merge);
+        assertArrayEquals(map1.digest(), map2.digest());
+        assertEquals(0, map1.entriesDifferingFrom(map2.digest()).size());
+
+        // a missed write only costs the entries of its bucket
+        map1.put("key-7", bytes("changed"));
+        entries = map1.entriesDifferingFrom(map2.digest());
+        System.out.println(entries.size() + " entries exchanged for one missed write");
+        assertTrue(entries.size() < 1000 / LwwReplicatedMap.DIGEST_BUCKETS * 3);
+        entries.forEach(map2::merge);
+        assertEquals("changed", new String(map2.get("key-7")));
+        assertArrayEquals(map1.digest(), map2.digest());
+    }
+
+    @Test
+    public void testLateJoinerCatchesUp() throws InterruptedException {
+        GossipCluster g1 = new GossipClusterBuilder().withNodeId(1).onPort(17300).withPingIntervalInMs(200).build();
+        GossipCluster g2 = new GossipClusterBuilder().withNodeId(2).onPort(17301).withPingIntervalInMs(200).withSeed("127.0.0.1", 17300).build();
+        GossipCluster g3 = new GossipClusterBuilder().withNodeId(3).onPort(17302).withPingIntervalInMs(200).withSeed("127.0.0.1", 17300).build();
+        try {
+            g1.start();
+            g2.start();
+            g1.replicatedMap().put("routes", bytes("v1"));
+
+            // the write is disseminated to the running node
+            assertTrue(await(g2, "routes", "v1"), "The running node must receive the write");
+
+            // the late joiner has missed the dissemination and is repaired by the anti-entropy
+            Thread.sleep(5000);
+            g3.start();
+            assertTrue(await(g3, "routes", "v1"), "The late joiner must catch up with the map");
+        } finally {
+            g1.shutdown();
+            g2.shutdown();
+            g3.shutdown();
+        }
+    }
+
+    private static boolean await(GossipCluster cluster, String key, String value) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            byte[] current = cluster.replicatedMap().get(key);
+            if (current != null && value.equals(new String(current))) {
+                return true;
+            }
+            Thread.sleep(200);
+        }
+        return false;
+    }
+}
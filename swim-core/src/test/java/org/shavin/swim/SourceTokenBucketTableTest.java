@@ -0,0 +1,86 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.transport.SourceRateLimiter;
+import org.shavin.swim.transport.SourceTokenBucketTable;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+public class SourceTokenBucketTableTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        SourceTokenBucketTable table = new SourceTokenBucketTable(10, 5, 100);
+        long now = 0;
+
+        // a new source starts with a full bucket
+        for (int i = 0; i < 5; i++) {
+            assertTrue(table.tryAcquire(42L, now));
+        }
+        assertFalse(table.tryAcquire(42L, now));
+        assertEquals(1, table.droppedPackets(42L));
+
+        // ten packets per second, so one more token is available after 100ms
+        now += TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(table.tryAcquire(42L, now));
+        assertFalse(table.tryAcquire(42L, now));
+        assertEquals(2, table.droppedPackets(42L));
+
+        // other sources have buckets of their own
+        assertTrue(table.tryAcquire(43L, now));
+        assertEquals(0, table.droppedPackets(43L));
+    }
+
+    @Test
+    public void testIdleEvictionKeepsActiveSources() {
+        SourceTokenBucketTable table = new SourceTokenBucketTable(1, 1, 10000);
+        int sourcesCount = 1000;
+
+        // even sources are seen at the beginning, odd sources later on
+        for (long key = 1; key <= sourcesCount; key++) {
+            table.tryAcquire(key, key % 2 == 0 ? 0 : 1000);
+        }
+        assertEquals(sourcesCount, table.size());
+
+        assertEquals(sourcesCount / 2, table.evictIdle(500));
+        assertEquals(sourcesCount / 2, table.size());
+
+        // the remaining sources must still be found after the entries were shifted around
+        for (long key = 1; key <= sourcesCount; key += 2) {
+            assertFalse(table.tryAcquire(key, 1000), "source " + key + " must still have an empty bucket");
+            assertEquals(1, table.droppedPackets(key));
+        }
+        assertEquals(sourcesCount / 2, table.size());
+    }
+
+    @Test
+    public void testFailOpenWhenFull() {
+        SourceTokenBucketTable table = new SourceTokenBucketTable(1, 1, 2);
+        assertTrue(table.tryAcquire(1L, 0));
+        assertTrue(table.tryAcquire(2L, 0));
+
+        // the third source can not be tracked, its packets are not limited
+        assertTrue(table.tryAcquire(3L, 0));
+        assertTrue(table.tryAcquire(3L, 0));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testSourceKeysIgnoreThePort() {
+        // the IPv4 address is the key itself, whatever the port
+        long ipv4Key = SourceRateLimiter.sourceKey(new InetSocketAddress("10.1.2.3", 7000));
+        assertEquals(0x0A010203L, ipv4Key);
+        assertEquals(ipv4Key, SourceRateLimiter.sourceKey(new InetSocketAddress("10.1.2.3", 7001)));
+        assertEquals(0xFFFFFFFFL, SourceRateLimiter.sourceKey(new InetSocketAddress("255.255.255.255", 7000)));
+
+        // IPv6 keys have the highest bit set, so they never collide with an IPv4 key
+        long ipv6Key = SourceRateLimiter.sourceKey(new InetSocketAddress("::a01:203", 7000));
+        assertTrue(ipv6Key < 0);
+        assertEquals(ipv6Key, SourceRateLimiter.sourceKey(new InetSocketAddress("::a01:203", 7001)));
+        assertNotEquals(ipv6Key, SourceRateLimiter.sourceKey(new InetSocketAddress("::a01:204", 7000)));
+        assertNotEquals(ipv6Key, SourceRateLimiter.sourceKey(new InetSocketAddress("1::a01:203", 7000)));
+    }
+}
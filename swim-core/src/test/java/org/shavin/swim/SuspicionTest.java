@@ -0,0 +1,69 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.impl.Suspicion;
+import org.shavin.swim.member.MembershipEvent;
+import org.shavin.swim.member.NodeAddress;
+
+public class SuspicionTest {
+
+    @Test
+    public void testConfirmationsShortenTheTimeout() {
+        Suspicion suspicion = new Suspicion(2, 1, 3, 1000, 6000);
+        System.out.println(suspicion.timeoutInMs());
+
+        // a suspicion without confirmations waits the longest
+        assertEquals(0, suspicion.confirmations());
+        assertEquals(6000, suspicion.timeoutInMs());
+
+        // the origin of the suspicion and a repeated confirmation are not counted
+        assertFalse(suspicion.confirm(1));
+        assertTrue(suspicion.confirm(2));
+        assertFalse(suspicion.confirm(2));
+        assertEquals(1, suspicion.confirmations());
+        // log(2) / log(4) of the way down to the minimum
+        assertEquals(3500, suspicion.timeoutInMs());
+
+        long previousTimeout = suspicion.timeoutInMs();
+        assertTrue(suspicion.confirm(3));
+        assertTrue(suspicion.timeoutInMs() < previousTimeout);
+
+        // all the expected confirmations bring the timeout down to the minimum, further ones are ignored
+        assertTrue(suspicion.confirm(4));
+        assertEquals(1000, suspicion.timeoutInMs());
+        assertFalse(suspicion.confirm(5));
+        assertEquals(3, suspicion.confirmations());
+        assertTrue(suspicion.remainingInMs() <= 1000);
+    }
+
+    @Test
+    public void testNoExpectedConfirmations() {
+        // a cluster too small for confirmations uses the minimum timeout right away
+        Suspicion suspicion = new Suspicion(0, 1, 0, 1000, 6000);
+        assertEquals(1000, suspicion.timeoutInMs());
+        assertFalse(suspicion.confirm(2));
+    }
+
+    @Test
+    public void testSuspicionEventPrecedence() {
+        NodeAddress address = NodeAddress.ofIPv4(0x7F000001, 50000);
+        MembershipEvent suspectEvent = new MembershipEvent(MembershipEvent.Type.SUSPECT, 7, address, 3, 1);
+        MembershipEvent confirmingEvent = new MembershipEvent(MembershipEvent.Type.SUSPECT, 7, address, 3, 2);
+        MembershipEvent aliveEvent = new MembershipEvent(MembershipEvent.Type.ALIVE, 7, address, 3);
+        MembershipEvent refutingEvent = new MembershipEvent(MembershipEvent.Type.ALIVE, 7, address, 4);
+        MembershipEvent failureEvent = new MembershipEvent(MembershipEvent.Type.FAILURE, 7, address, 3);
+
+        // a suspicion overrides the alive member of the same incarnation, only a newer incarnation refutes it
+        assertTrue(suspectEvent.overrides(aliveEvent));
+        assertFalse(aliveEvent.overrides(suspectEvent));
+        assertTrue(refutingEvent.overrides(suspectEvent));
+        assertTrue(failureEvent.overrides(suspectEvent));
+
+        // a suspicion from another node confirms it, the same origin does not
+        assertTrue(confirmingEvent.confirms(suspectEvent));
+        assertFalse(suspectEvent.confirms(suspectEvent));
+        assertFalse(refutingEvent.confirms(suspectEvent));
+    }
+}
@@ -0,0 +1,73 @@
+package org.shavin.swim;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.shavin.swim.util.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testTimeoutsExpireInOrderAndNeverEarly() {
+        AtomicLong clock = new AtomicLong();
+        TimingWheel<String> wheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 8, 4, clock::get);
+        List<String> expired = new ArrayList<>();
+        TimingWheel.Handler<String> handler = (target, id) -> expired.add(target + id);
+
+        wheel.schedule(handler, "a", 1, 25, TimeUnit.MILLISECONDS);
+        wheel.schedule(handler, "b", 2, 50, TimeUnit.MILLISECONDS);
+        // longer than a full turn of the wheel, shares the bucket of the first timeout
+        wheel.schedule(handler, "c", 3, 110, TimeUnit.MILLISECONDS);
+        assertEquals(3, wheel.size());
+
+        clock.set(TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(0, wheel.advance());
+        clock.set(TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(1, wheel.advance());
+        assertEquals(List.of("a1"), expired);
+
+        // a late call catches up with the missed ticks
+        clock.set(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, wheel.advance());
+        clock.set(TimeUnit.MILLISECONDS.toNanos(110));
+        assertEquals(1, wheel.advance());
+        assertEquals(List.of("a1", "b2", "c3"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancelledTimeoutsNeverExpire() {
+        AtomicLong clock = new AtomicLong();
+        TimingWheel<String> wheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 8, 4, clock::get);
+        List<Long> expired = new ArrayList<>();
+
+        // more timeouts than pooled slots, the pool grows
+        long[] handles = new long[100];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = wheel.schedule((target, id) -> expired.add(id), "probe", i, 10 + i, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < handles.length; i += 2) {
+            assertTrue(wheel.cancel(handles[i]));
+        }
+        assertFalse(wheel.cancel(handles[0]));
+        assertFalse(wheel.cancel(TimingWheel.NO_TIMEOUT));
+        assertEquals(50, wheel.size());
+
+        // a stale handle does not cancel the timeout reusing its slot
+        long reused = wheel.schedule((target, id) -> expired.add(id), "probe", 1000, 10, TimeUnit.MILLISECONDS);
+        assertFalse(wheel.cancel(handles[0]));
+
+        clock.set(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(51, wheel.advance());
+        assertFalse(wheel.cancel(reused));
+        System.out.println(expired.size() + " timeouts expired");
+        assertTrue(expired.contains(1000L));
+        assertTrue(expired.stream().filter(id -> id < 1000).allMatch(id -> id % 2 == 1));
+        assertEquals(0, wheel.size());
+    }
+}
@@ -1,6 +1,8 @@
 package org.shavin.swim;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoopGroup;
@@ -8,19 +10,25 @@ import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.util.concurrent.EventExecutor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.shavin.swim.api.transport.MessageHandler;
+import org.shavin.swim.messages.Message;
+import org.shavin.swim.messages.PingAckMessageBuilder;
 import org.shavin.swim.transport.NettyUdpTransportLayer;
 import org.shavin.swim.transport.UDPTransportConfig;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -88,6 +96,300 @@ public class UDPTransportTest {
         transportLayer.stop();
     }
 
+    @Test
+    void testReceiveWithReusePortSockets() throws Exception {
+        int transportPort = 9003;
+        int packetsCount = 200;
+
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withTransportMode(UDPTransportConfig.TransportMode.AUTO)
+                .withEventLoopThreadsCount(4)
+                .withReusePort(true)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(packetsCount);
+        transportLayer = new NettyUdpTransportLayer(config);
+        transportLayer.start(transportPort, (data, sender) -> latch.countDown()).get();
+
+        // send packets from several source ports, so that the kernel can spread them between the sockets
+        for (int i = 0; i < packetsCount; i++) {
+            try (DatagramChannel sender = DatagramChannel.open()) {
+                sender.send(ByteBuffer.wrap(new byte[]{(byte) i}), new InetSocketAddress("127.0.0.1", transportPort));
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "All the datagrams must be received");
+
+        transportLayer.stop();
+    }
+
+    @Test
+    void testBatchedSendAndReceive() throws Exception {
+        int senderPort = 9004;
+        int receiverPort = 9005;
+        int packetsCount = 100;
+
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withBatchedIo(true)
+                .withReceiveBatchSize(8)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(packetsCount);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> latch.countDown()).get();
+
+        transportLayer = new NettyUdpTransportLayer(config);
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        for (int i = 0; i < packetsCount; i++) {
+            transportLayer.send(new InetSocketAddress("127.0.0.1", receiverPort), new byte[]{(byte) i});
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "All the batched datagrams must be received");
+        System.out.println("send batches: " + transportLayer.getSendBatchStatistics());
+        System.out.println("receive batches: " + receiver.getReceiveBatchStatistics());
+
+        assertEquals(packetsCount, transportLayer.getSendBatchStatistics().totalPackets());
+        assertEquals(packetsCount, receiver.getReceiveBatchStatistics().totalPackets());
+
+        transportLayer.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void testEventLoopDispatch() throws Exception {
+        int senderPort = 9006;
+        int receiverPort = 9007;
+        int packetsCount = 200;
+
+        // several sockets share the port, but all the datagrams must be handled on the single protocol event loop
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withEventLoopThreadsCount(4)
+                .withDispatchMode(UDPTransportConfig.DispatchMode.EVENT_LOOP)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(packetsCount);
+        AtomicInteger handledOffProtocolLoop = new AtomicInteger(0);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> {
+            if (!((EventExecutor) receiver.protocolExecutor()).inEventLoop()) {
+                handledOffProtocolLoop.incrementAndGet();
+            }
+            latch.countDown();
+        }).get();
+        assertNotNull(receiver.protocolExecutor());
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+        assertNull(transportLayer.protocolExecutor());
+
+        for (int i = 0; i < packetsCount; i++) {
+            transportLayer.send(new InetSocketAddress("127.0.0.1", receiverPort), new byte[]{(byte) i});
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "All the datagrams must be received");
+        assertEquals(0, handledOffProtocolLoop.get());
+
+        transportLayer.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void testExecutorDispatchWithConcurrencyLimit() throws Exception {
+        int senderPort = 9008;
+        int receiverPort = 9009;
+        int packetsCount = 20;
+
+        // a single message may be in flight, the handler blocks until all the packets are sent
+        ExecutorService dispatchExecutor = Executors.newFixedThreadPool(4);
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withDispatchExecutor(dispatchExecutor)
+                .withMaxConcurrentDispatches(1)
+                .build();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(1);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> {
+            try {
+                blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handled.countDown();
+        }).get();
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        for (int i = 0; i < packetsCount; i++) {
+            transportLayer.send(new InetSocketAddress("127.0.0.1", receiverPort), new byte[]{(byte) i});
+            Thread.sleep(5);
+        }
+        Thread.sleep(200);
+        blocked.countDown();
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS), "The first datagram must be handled");
+        System.out.println("rejected packets: " + receiver.getTotalPacketsRejected());
+        assertTrue(receiver.getTotalPacketsRejected() > 0, "Datagrams beyond the concurrency limit must be rejected");
+
+        transportLayer.stop();
+        receiver.stop();
+
+        // the executor supplied by the caller must be left running
+        assertFalse(dispatchExecutor.isShutdown());
+        dispatchExecutor.shutdown();
+    }
+
+    @Test
+    void testRingBufferDispatch() throws Exception {
+        int senderPort = 9010;
+        int receiverPort = 9011;
+        int packetsCount = 500;
+
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withDispatchMode(UDPTransportConfig.DispatchMode.RING_BUFFER)
+                .withRingBuffer(1024, 32)
+                .build();
+
+        CountDownLatch latch = new CountDownLatch(packetsCount);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> latch.countDown()).get();
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        for (int i = 0; i < packetsCount; i++) {
+            transportLayer.send(new InetSocketAddress("127.0.0.1", receiverPort), new byte[]{(byte) i});
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "All the datagrams must be drained from the ring buffer");
+        // a drain is recorded once its whole batch is handled
+        for (int i = 0; i < 100 && receiver.getReceiveRingBuffer().drainStatistics().totalPackets() < packetsCount; i++) {
+            Thread.sleep(10);
+        }
+        System.out.println("ring buffer drains: " + receiver.getReceiveRingBuffer().drainStatistics());
+        assertEquals(0, receiver.getReceiveRingBuffer().overflowCount());
+        assertEquals(packetsCount, receiver.getReceiveRingBuffer().drainStatistics().totalPackets());
+
+        transportLayer.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void testUrgentPacketsUseThePriorityLane() throws Exception {
+        int senderPort = 9012;
+        int receiverPort = 9013;
+        int packetsCount = 50;
+
+        CountDownLatch latch = new CountDownLatch(packetsCount * 2);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        receiver.start(receiverPort, (data, sender) -> latch.countDown()).get();
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        // acks are tagged as urgent, plain pings are not
+        for (int i = 0; i < packetsCount; i++) {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", receiverPort);
+            for (Message message : new Message[]{PingAckMessageBuilder.pingAckMessageForNode(1, 2, i), PingAckMessageBuilder.pingMessageForNode(1, 2, i)}) {
+                ByteBuf buffer = Unpooled.buffer();
+                Message.Serializer.serialize(message, buffer);
+                transportLayer.send(address, buffer);
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS), "All the datagrams must be received");
+        assertEquals(packetsCount, receiver.getTotalUrgentPacketsReceived());
+
+        transportLayer.stop();
+        receiver.stop();
+    }
+
+    @Test
+    void testUrgentPacketsHaveTheirOwnConcurrencyLimit() throws Exception {
+        int senderPort = 9016;
+        int receiverPort = 9017;
+        int packetsCount = 20;
+
+        // a quarter of the four permits, a single urgent message may be in flight
+        ExecutorService dispatchExecutor = Executors.newFixedThreadPool(8);
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withDispatchExecutor(dispatchExecutor)
+                .withMaxConcurrentDispatches(4)
+                .build();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(2);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> {
+            handled.countDown();
+            try {
+                blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).get();
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", receiverPort);
+        for (int i = 0; i < packetsCount; i++) {
+            ByteBuf buffer = Unpooled.buffer();
+            Message.Serializer.serialize(PingAckMessageBuilder.pingAckMessageForNode(1, 2, i), buffer);
+            transportLayer.send(address, buffer);
+            Thread.sleep(5);
+        }
+        // the urgent packets do not take the permits of the other packets
+        ByteBuf buffer = Unpooled.buffer();
+        Message.Serializer.serialize(PingAckMessageBuilder.pingMessageForNode(1, 2, packetsCount), buffer);
+        transportLayer.send(address, buffer);
+
+        assertTrue(handled.await(5, TimeUnit.SECONDS), "An urgent and a plain datagram must be handled");
+        blocked.countDown();
+        System.out.println("rejected urgent packets: " + receiver.getTotalUrgentPacketsRejected());
+        assertEquals(packetsCount - 1, receiver.getTotalUrgentPacketsRejected());
+        assertEquals(packetsCount - 1, receiver.getTotalPacketsRejected());
+
+        transportLayer.stop();
+        receiver.stop();
+        dispatchExecutor.shutdown();
+    }
+
+    @Test
+    void testSourceRateLimit() throws Exception {
+        int senderPort = 9014;
+        int receiverPort = 9015;
+        int packetsCount = 50;
+        int burst = 5;
+
+        UDPTransportConfig config = UDPTransportConfig.builder()
+                .withSourceRateLimit(1, burst)
+                .build();
+
+        AtomicInteger received = new AtomicInteger(0);
+        NettyUdpTransportLayer receiver = new NettyUdpTransportLayer(config);
+        receiver.start(receiverPort, (data, sender) -> received.incrementAndGet()).get();
+
+        transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());
+        transportLayer.start(senderPort, (data, sender) -> { }).get();
+
+        for (int i = 0; i < packetsCount; i++) {
+            transportLayer.send(new InetSocketAddress("127.0.0.1", receiverPort), new byte[]{(byte) i});
+        }
+        Thread.sleep(500);
+
+        System.out.println("received: " + received.get() + ", rate limited: " + receiver.getTotalRateLimitedPackets());
+        // only the burst (and at most one refilled token) gets through
+        assertTrue(received.get() >= burst && received.get() <= burst + 1);
+        assertEquals(packetsCount - received.get(), receiver.getTotalRateLimitedPackets());
+        assertEquals(packetsCount - received.get(), receiver.getRateLimitedPackets(new InetSocketAddress("127.0.0.1", senderPort)));
+
+        transportLayer.stop();
+        receiver.stop();
+    }
+
     @Test
     void testStartAndShutdown() throws Exception {
         transportLayer = new NettyUdpTransportLayer(UDPTransportConfig.withDefaults());